@@ -0,0 +1,74 @@
+package net.aionstudios.horae;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Measures the throughput of {@link CronDateTime#matches(CronInstant)} for a simple expression, an expression made of long lists and an
+ * expression made of ranges. Each call is checked against the next of a fixed set of {@link CronInstant}s spread over a year, so that
+ * both matching and non-matching times are covered. Run with -prof gc to confirm that matching does not allocate.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CronDateTimeMatchBenchmark {
+	
+	private static final int INSTANTS = 1024;
+	
+	@Param({"simple", "lists", "ranges"})
+	public String expression;
+	
+	private CronDateTime cdt;
+	private final CronInstant[] instants = new CronInstant[INSTANTS];
+	private int next = 0;
+	
+	@Setup
+	public void setup() {
+		if(expression.equals("simple")) {
+			cdt = CronDateTime.parse("30 12 * * *");
+		} else if(expression.equals("lists")) {
+			cdt = CronDateTime.parse("0,5,10,15,20,25,30,35,40,45,50,55 1,3,5,7,9,11,13,15,17,19,21,23 1,4,7,10,13,16,19,22,25,28 1,3,5,7,9,11 1,3,5");
+		} else if(expression.equals("ranges")) {
+			cdt = CronDateTime.parse("10-20,30-40,50-55 8-12,14-18 1-10,15-25 3-6,9-11 1-5");
+		} else {
+			throw new IllegalArgumentException("Unknown expression "+expression);
+		}
+		SteppedClock clock = new SteppedClock(ZoneId.of("UTC"), 0L);
+		DateTimeServices.setClock(clock);
+		long start = 1893456000000L;
+		for(int i = 0; i < INSTANTS; i++) {
+			//Steps of eight hours and a minute walk every field through most of a year.
+			clock.set(start+i*(8L*3600000L+60000L));
+			instants[i] = DateTimeServices.getCronInstant();
+		}
+	}
+	
+	@Benchmark
+	public boolean matches() {
+		CronInstant instant = instants[next];
+		next = (next+1)&(INSTANTS-1);
+		return cdt.matches(instant);
+	}
+
+}
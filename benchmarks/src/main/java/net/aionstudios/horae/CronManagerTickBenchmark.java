@@ -0,0 +1,107 @@
+package net.aionstudios.horae;
+
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Measures the full per-minute tick of the {@link PollingCronScheduler}, the engine {@link CronManager} uses by default, for 1k, 10k
+ * and 100k registered {@link CronJob}s. A tick reads the cron-functional time, applies queued changes, finds the due {@link CronJob}s
+ * and fans out to them; due {@link CronJob}s are counted rather than handed to a {@link CronExecutor}.
+ *
+ * Each {@link CronJob} runs once a day at a random hour and minute, so about one in 1440 of them is due each minute. With shared
+ * schedules, {@link CronJob}s at the same time of day share a {@link CronSchedule}. With distinct schedules, each {@link CronJob} is also
+ * given its own range of years around the simulated time, which leaves when it runs unchanged but gives almost every {@link CronJob} a
+ * {@link CronSchedule} of its own. With more than one zone, {@link CronJob}s are spread evenly over that many time zones, each of which
+ * the tick breaks the time down in once.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CronManagerTickBenchmark {
+	
+	/* 2030-01-01T00:00Z, so that every range of years below covers the simulated time. */
+	private static final long START_MILLIS = 1893456000000L;
+	
+	@Param({"1000", "10000", "100000"})
+	public int jobs;
+	
+	@Param({"shared", "distinct"})
+	public String schedules;
+	
+	@Param({"1", "16"})
+	public int zones;
+	
+	private SteppedClock clock;
+	private CountingScheduler scheduler;
+	private long minute;
+	
+	@Setup
+	public void setup() {
+		clock = new SteppedClock(ZoneId.of("UTC"), START_MILLIS);
+		DateTimeServices.setClock(clock);
+		scheduler = new CountingScheduler();
+		Random random = new Random(jobs);
+		boolean distinct = schedules.equals("distinct");
+		String[] zoneIds = ZoneId.getAvailableZoneIds().stream().sorted().limit(zones).toArray(String[]::new);
+		for(int i = 0; i < jobs; i++) {
+			String expression = random.nextInt(60)+" "+random.nextInt(24)+" * * *";
+			if(distinct) {
+				expression += " "+(2000+random.nextInt(31))+"-"+(2100+random.nextInt(901));
+			}
+			CronDateTime cdt = CronDateTime.parse(expression);
+			if(zones>1) {
+				cdt.setZone(ZoneId.of(zoneIds[i%zones]));
+			}
+			scheduler.jobAdded(new CronJob(cdt) {
+				@Override public void run() {}
+			});
+		}
+		minute = Math.floorDiv(START_MILLIS, 60000L);
+		scheduler.reset(minute-1);
+		scheduler.tick(DateTimeServices.getCronInstant());
+	}
+	
+	@Benchmark
+	public long tick() {
+		minute++;
+		clock.set(minute*60000L);
+		scheduler.tick(DateTimeServices.getCronInstant());
+		return scheduler.fired;
+	}
+	
+	/**
+	 * A {@link PollingCronScheduler} that counts due {@link CronJob}s instead of executing them.
+	 */
+	private static class CountingScheduler extends PollingCronScheduler {
+		
+		private long fired = 0;
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			fired++;
+		}
+	
+	}
+
+}
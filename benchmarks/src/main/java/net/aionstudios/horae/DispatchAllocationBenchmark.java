@@ -0,0 +1,101 @@
+package net.aionstudios.horae;
+
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Counts the bytes the cron thread allocates while it ticks and hands due {@link CronJob}s to a bounded {@link CronExecutor}, and fails
+ * if there are any. A {@link PollingCronScheduler} with 1,000 {@link CronJob}s due every minute is ticked directly, a simulated minute at
+ * a time, and the bytes allocated by the ticking thread are read from the {@link com.sun.management.ThreadMXBean} around each tick
+ * once the JIT has warmed up. Each tick waits for the previous minute's executions to finish first, as they would in a real minute,
+ * and the time is read before the tick, so that only the work of the scheduler itself is counted.
+ *
+ * Run with java -cp benchmarks/target/benchmarks.jar net.aionstudios.horae.DispatchAllocationBenchmark [jobs] [measured fires].
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class DispatchAllocationBenchmark {
+	
+	/* 2030-01-01T00:00Z */
+	private static final long START_MILLIS = 1893456000000L;
+	private static final int WARMUP_TICKS = 200;
+	
+	public static void main(String[] args) throws InterruptedException {
+		int size = args.length>0 ? Integer.parseInt(args[0]) : 1000;
+		int fires = args.length>1 ? Integer.parseInt(args[1]) : 10000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		SteppedClock clock = new SteppedClock(ZoneId.of("UTC"), START_MILLIS);
+		DateTimeServices.setClock(clock);
+		CronManager.setExecutor(new CronExecutor(2, size*2, CronSaturationPolicy.REJECT));
+		CronManager.startCron();
+		final AtomicLong finished = new AtomicLong();
+		PollingCronScheduler scheduler = new PollingCronScheduler();
+		CronPriority[] priorities = CronPriority.values();
+		CronJob[] jobs = new CronJob[size];
+		for(int i = 0; i < size; i++) {
+			//A handful of schedules that all match every minute, so that the due CronJobs are spread over several groups.
+			CronJob j = new CronJob("job-"+i, CronDateTime.parse("* * * * * "+(2000+i%8)+"-2100")) {
+				@Override public void run() {
+					finished.incrementAndGet();
+				}
+			};
+			j.setPriority(priorities[i%priorities.length]);
+			scheduler.jobAdded(j);
+			jobs[i] = j;
+		}
+		long minute = Math.floorDiv(START_MILLIS, 60000L);
+		scheduler.reset(minute-1);
+		int measuredTicks = (fires+size-1)/size;
+		long expected = 0;
+		long allocated = 0;
+		long measuredFires = 0;
+		//Reading the allocation counter can itself allocate, so the cost of an empty reading is taken off each tick.
+		long overhead = threads.getThreadAllocatedBytes(thread);
+		overhead = threads.getThreadAllocatedBytes(thread)-overhead;
+		for(int t = 0; t < WARMUP_TICKS+measuredTicks; t++) {
+			awaitIdle(jobs, finished, expected);
+			clock.set((minute+t)*60000L);
+			CronInstant now = DateTimeServices.getCronInstant();
+			long before = threads.getThreadAllocatedBytes(thread);
+			scheduler.tick(now);
+			long bytes = threads.getThreadAllocatedBytes(thread)-before-overhead;
+			expected += size;
+			if(t>=WARMUP_TICKS) {
+				allocated += bytes;
+				measuredFires += size;
+			}
+		}
+		awaitIdle(jobs, finished, expected);
+		CronManager.stopCron();
+		System.out.println("jobs\tfires\tbytes allocated\tbytes/fire");
+		System.out.println(size+"\t"+measuredFires+"\t"+allocated+"\t"+((double) allocated/measuredFires));
+		if(allocated>0) {
+			System.err.println("The dispatch path allocated "+allocated+" bytes over "+measuredFires+" fires!");
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Waits until every execution so far has run and been settled by its worker, which hands its task back to the {@link CronJob} for
+	 * the next execution only after the {@link CronJob} itself has returned.
+	 */
+	private static void awaitIdle(CronJob[] jobs, AtomicLong finished, long expected) throws InterruptedException {
+		while(finished.get()<expected) {
+			Thread.sleep(1);
+		}
+		for(CronJob j : jobs) {
+			while(j.isRunning()) {
+				Thread.sleep(1);
+			}
+		}
+		//The task is handed back just after the CronJob stops counting as running.
+		Thread.sleep(1);
+	}
+
+}
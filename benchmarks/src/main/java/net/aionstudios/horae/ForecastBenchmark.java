@@ -0,0 +1,99 @@
+package net.aionstudios.horae;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a {@link CronForecast} of 100,000 {@link CronJob}s over a week and over 30 days, with the {@link CronJob}s spread over a
+ * hundred or ten thousand distinct schedules and a third of them given a hashed window. Also compares stepping through a month of a
+ * {@link CronDateTime} that runs every minute with {@link CronDateTime#executionsBetween(long, long)} against calling
+ * {@link CronDateTime#nextExecutionAfter(ZonedDateTime)} once per execution.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastBenchmark {
+	
+	/* 2030-01-01T00:00Z */
+	private static final long START_MILLIS = 1893456000000L;
+	private static final int JOBS = 100000;
+	
+	@Param({"100", "10000"})
+	public int schedules;
+	
+	@Param({"7", "30"})
+	public int days;
+	
+	private CronJob[] jobs;
+	private CronDateTime everyMinute;
+	private ZoneId utc;
+	
+	@Setup
+	public void setup() {
+		utc = ZoneId.of("UTC");
+		String[] expressions = new String[schedules];
+		for(int i = 0; i < schedules; i++) {
+			//Minutes vary first, then the step of the hours, the days of the week and the years, so that every schedule is distinct.
+			int step = (i/60)%6;
+			expressions[i] = (i%60)+" "+(step==0 ? "*" : "*/"+(step+1))+" * * "+(1+(i/360)%7)+"-7 2030-"+(2031+i/2520);
+		}
+		jobs = new CronJob[JOBS];
+		for(int i = 0; i < JOBS; i++) {
+			CronDateTime cdt = CronDateTime.parse(expressions[i%schedules]);
+			if(i%3==0) {
+				cdt.setHashedWindow(5);
+			}
+			jobs[i] = new CronJob("job-"+i, cdt) {
+				@Override public void run() {}
+			};
+		}
+		everyMinute = CronDateTime.parse("* * * * *", utc);
+	}
+	
+	@Benchmark
+	public long forecast() {
+		return new CronForecast(jobs, START_MILLIS, START_MILLIS+days*86400000L, utc).getPeakFires();
+	}
+	
+	@Benchmark
+	public long streamEveryMinute() {
+		return everyMinute.executionsBetween(START_MILLIS, START_MILLIS+days*86400000L).sum();
+	}
+	
+	@Benchmark
+	public long nextExecutionEveryMinute() {
+		long end = START_MILLIS+days*86400000L;
+		long sum = 0;
+		ZonedDateTime t = ZonedDateTime.ofInstant(Instant.ofEpochMilli(START_MILLIS-1), utc);
+		while(true) {
+			Optional<ZonedDateTime> next = everyMinute.nextExecutionAfter(t);
+			if(!next.isPresent()||next.get().toInstant().toEpochMilli()>=end) {
+				return sum;
+			}
+			t = next.get();
+			sum += t.toInstant().toEpochMilli();
+		}
+	}
+
+}
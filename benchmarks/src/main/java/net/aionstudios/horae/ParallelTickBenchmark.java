@@ -0,0 +1,106 @@
+package net.aionstudios.horae;
+
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Measures a per-minute tick of the {@link PollingCronScheduler} in which every registered {@link CronJob} is due, on the cron thread
+ * alone and split across a {@link CronTickPool}. Each due {@link CronJob} costs a little work in place of being handed to a
+ * {@link CronExecutor}, roughly what dispatching it would.
+ *
+ * With shared schedules, every {@link CronJob} runs every minute under one {@link CronSchedule}, so the tick is all fan-out. With
+ * distinct schedules, each {@link CronJob} is also given a range of years around the simulated time, which spreads them over tens of
+ * thousands of {@link CronSchedule}s that must each be evaluated.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelTickBenchmark {
+	
+	/* 2030-01-01T00:00Z, so that every range of years below covers the simulated time. */
+	private static final long START_MILLIS = 1893456000000L;
+	
+	@Param({"10000", "500000"})
+	public int jobs;
+	
+	@Param({"shared", "distinct"})
+	public String schedules;
+	
+	@Param({"1", "4"})
+	public int parallelism;
+	
+	private SteppedClock clock;
+	private DispatchingScheduler scheduler;
+	private long minute;
+	
+	@Setup
+	public void setup() {
+		clock = new SteppedClock(ZoneId.of("UTC"), START_MILLIS);
+		DateTimeServices.setClock(clock);
+		scheduler = new DispatchingScheduler();
+		if(parallelism>1) {
+			scheduler.setTickPool(new CronTickPool(parallelism));
+		}
+		Random random = new Random(jobs);
+		boolean distinct = schedules.equals("distinct");
+		for(int i = 0; i < jobs; i++) {
+			String expression = "* * * * *";
+			if(distinct) {
+				expression += " "+(1970+random.nextInt(60))+"-"+(2031+random.nextInt(969));
+			}
+			scheduler.jobAdded(new CronJob(CronDateTime.parse(expression)) {
+				@Override public void run() {}
+			});
+		}
+		minute = Math.floorDiv(START_MILLIS, 60000L);
+		scheduler.reset(minute-1);
+		scheduler.tick(DateTimeServices.getCronInstant());
+	}
+	
+	@Benchmark
+	public long tick() {
+		minute++;
+		clock.set(minute*60000L);
+		scheduler.tick(DateTimeServices.getCronInstant());
+		return scheduler.fired.sum();
+	}
+	
+	/**
+	 * A {@link PollingCronScheduler} that spends a little time on each due {@link CronJob} and counts it instead of executing it.
+	 */
+	private static class DispatchingScheduler extends PollingCronScheduler {
+		
+		private final LongAdder fired = new LongAdder();
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			Blackhole.consumeCPU(64);
+			fired.increment();
+		}
+	
+	}
+
+}
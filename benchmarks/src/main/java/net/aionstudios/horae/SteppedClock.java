@@ -0,0 +1,53 @@
+package net.aionstudios.horae;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * A {@link Clock} that stands still until it is moved, so that benchmarks can drive the cron-functional time through
+ * {@link net.aionstudios.horae.service.DateTimeServices} minute by minute.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class SteppedClock extends Clock {
+	
+	private final ZoneId zone;
+	private volatile long millis;
+	
+	SteppedClock(ZoneId zone, long millis) {
+		this.zone = zone;
+		this.millis = millis;
+	}
+	
+	/**
+	 * Moves the clock to a new time.
+	 * 
+	 * @param millis The new time in epoch milliseconds.
+	 */
+	void set(long millis) {
+		this.millis = millis;
+	}
+	
+	@Override
+	public long millis() {
+		return millis;
+	}
+	
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(millis);
+	}
+	
+	@Override
+	public ZoneId getZone() {
+		return zone;
+	}
+	
+	@Override
+	public Clock withZone(ZoneId zone) {
+		return new SteppedClock(zone, millis);
+	}
+
+}
@@ -0,0 +1,103 @@
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the per-minute tick cost of the {@link TimingWheelCronScheduler} against the full scan over every registered {@link CronJob}
+ * performed by the {@link PollingCronScheduler}, for 10k, 100k and 1M registered {@link CronJob}s.
+ *
+ * Each {@link CronJob} runs once a day at a random hour and minute, so about one in 1440 of them is due each minute. The wheel is driven
+ * directly, a simulated day at a time, with due {@link CronJob}s counted rather than executed.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class TimingWheelBenchmark {
+	
+	private static final int MINUTES_PER_DAY = 1440;
+	
+	public static void main(String[] args) {
+		int[] sizes = args.length>0 ? parseSizes(args) : new int[] {10000, 100000, 1000000};
+		System.out.println("jobs\tinsert ns/job\twheel mean ns/tick\twheel max ns/tick\tscan mean ns/tick\twheel fires/tick\tscan matches/tick");
+		for(int size : sizes) {
+			run(size);
+		}
+	}
+	
+	private static void run(int size) {
+		List<CronJob> jobs = createJobs(size, new Random(size));
+		CountingWheel wheel = new CountingWheel();
+		long startMinute = Math.floorDiv(System.currentTimeMillis(), 60000L);
+		long t0 = System.nanoTime();
+		wheel.reset(startMinute);
+		for(CronJob j : jobs) {
+			wheel.schedule(j);
+		}
+		long insertNanos = System.nanoTime()-t0;
+
+		//One warm-up day, then one measured day.
+		wheel.advanceTo(startMinute+MINUTES_PER_DAY);
+		wheel.fired = 0;
+		long total = 0, max = 0;
+		for(int i = 1; i <= MINUTES_PER_DAY; i++) {
+			long tickStart = System.nanoTime();
+			wheel.advanceTo(startMinute+MINUTES_PER_DAY+i);
+			long tick = System.nanoTime()-tickStart;
+			total += tick;
+			max = Math.max(max, tick);
+		}
+
+		long scanTotal = 0, matched = 0;
+		int scanTicks = 60;
+		for(int i = 0; i < scanTicks; i++) {
+			long scanStart = System.nanoTime();
+			for(CronJob j : jobs) {
+				if(j.cronMatches(i, 12, 15, 6, 3, 2030)) {
+					matched++;
+				}
+			}
+			scanTotal += System.nanoTime()-scanStart;
+		}
+
+		System.out.println(size+"\t"+(insertNanos/size)+"\t"+(total/MINUTES_PER_DAY)+"\t"+max+"\t"+(scanTotal/scanTicks)+"\t"+(wheel.fired/MINUTES_PER_DAY)+"\t"+(matched/scanTicks));
+	}
+	
+	private static List<CronJob> createJobs(int size, Random random) {
+		List<CronJob> jobs = new ArrayList<CronJob>(size);
+		for(int i = 0; i < size; i++) {
+			CronDateTime cdt = new CronDateTime();
+			int minute = random.nextInt(60), hour = random.nextInt(24);
+			cdt.setMinuteRange(minute, minute);
+			cdt.setHourRange(hour, hour);
+			jobs.add(new CronJob(cdt) {
+				@Override public void run() {}
+			});
+		}
+		return jobs;
+	}
+	
+	private static int[] parseSizes(String[] args) {
+		int[] sizes = new int[args.length];
+		for(int i = 0; i < args.length; i++) {
+			sizes[i] = Integer.parseInt(args[i]);
+		}
+		return sizes;
+	}
+	
+	/**
+	 * A {@link TimingWheelCronScheduler} that counts due {@link CronJob}s instead of executing them.
+	 */
+	private static class CountingWheel extends TimingWheelCronScheduler {
+		
+		private long fired = 0;
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			fired++;
+		}
+	
+	}
+
+}
@@ -0,0 +1,94 @@
+package net.aionstudios.horae;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the platform thread {@link CronExecutor} with the virtual thread {@link CronExecutor} when 10k blocking {@link CronJob}s fall
+ * due at once, reporting how long each {@link CronJob} waited to start, how long the whole burst took, and the threads and heap it used.
+ *
+ * Each {@link CronJob} sleeps for 100ms to stand in for blocking I/O. Virtual threads need Java 21 or later; on older runtimes the
+ * virtual thread {@link CronExecutor} falls back to platform threads, which the output reports.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class VirtualThreadBurstBenchmark {
+	
+	private static final long BLOCK_MILLIS = 100;
+	
+	public static void main(String[] args) throws InterruptedException {
+		int size = args.length>0 ? Integer.parseInt(args[0]) : 10000;
+		System.out.println("executor\tvirtual\tjobs\tstart p50 us\tstart p99 us\tstart max us\tburst ms\tpeak threads\theap delta KiB");
+		//One warm-up burst of each, then one measured burst of each.
+		run("platform", new CronExecutor(), size, false);
+		run("virtual", CronExecutor.newVirtualThreadExecutor(0), size, false);
+		run("platform", new CronExecutor(), size, true);
+		run("virtual", CronExecutor.newVirtualThreadExecutor(0), size, true);
+	}
+	
+	private static void run(String name, CronExecutor executor, int size, boolean report) throws InterruptedException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		CountDownLatch done = new CountDownLatch(size);
+		BurstJob[] jobs = new BurstJob[size];
+		for(int i = 0; i < size; i++) {
+			jobs[i] = new BurstJob(done);
+		}
+		System.gc();
+		threads.resetPeakThreadCount();
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+		long burstStart = System.nanoTime();
+		long due = System.currentTimeMillis();
+		for(BurstJob j : jobs) {
+			j.dispatched = System.nanoTime();
+			executor.execute(j, due);
+		}
+		long heapAfter = memory.getHeapMemoryUsage().getUsed();
+		done.await();
+		long burstNanos = System.nanoTime()-burstStart;
+		executor.shutdown();
+		if(!report) {
+			return;
+		}
+		long[] waits = new long[size];
+		for(int i = 0; i < size; i++) {
+			waits[i] = jobs[i].started-jobs[i].dispatched;
+		}
+		Arrays.sort(waits);
+		System.out.println(name+"\t"+executor.isVirtual()+"\t"+size+"\t"+(waits[size/2]/1000)+"\t"+(waits[(int) (size*0.99)]/1000)+"\t"+(waits[size-1]/1000)
+				+"\t"+(burstNanos/1000000)+"\t"+threads.getPeakThreadCount()+"\t"+((heapAfter-heapBefore)/1024));
+	}
+	
+	/**
+	 * A {@link CronJob} that records when it started and then blocks.
+	 */
+	private static class BurstJob extends CronJob {
+		
+		private final CountDownLatch done;
+		private volatile long dispatched;
+		private volatile long started;
+		
+		private BurstJob(CountDownLatch done) {
+			super(new CronDateTime());
+			this.done = done;
+		}
+		
+		@Override
+		public void run() {
+			started = System.nanoTime();
+			try {
+				Thread.sleep(BLOCK_MILLIS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				done.countDown();
+			}
+		}
+	
+	}
+
+}
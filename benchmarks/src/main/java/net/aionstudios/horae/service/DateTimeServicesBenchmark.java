@@ -0,0 +1,63 @@
+package net.aionstudios.horae.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures {@link DateTimeServices} formatting and cron-functional time reads against the system clock with four threads calling at
+ * once, as happens when many cron jobs log or check the time together. Run with -t to change the number of threads.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DateTimeServicesBenchmark {
+	
+	@Benchmark
+	public String mysqlCompatibleDateTime() {
+		return DateTimeServices.getMysqlCompatibleDateTime();
+	}
+	
+	@Benchmark
+	public String formatDateTime() {
+		return DateTimeServices.formatDateTime(System.currentTimeMillis());
+	}
+	
+	@Benchmark
+	public long parseDateTime() {
+		return DateTimeServices.parseDateTime("2030-06-15 12:34:56");
+	}
+	
+	@Benchmark
+	public CronInstant cronInstant() {
+		return DateTimeServices.getCronInstant();
+	}
+	
+	@Benchmark
+	public int cronMinute() {
+		return DateTimeServices.getCronMinute();
+	}
+	
+	@Benchmark
+	public String cronNowString() {
+		return DateTimeServices.getCronNowString();
+	}
+
+}
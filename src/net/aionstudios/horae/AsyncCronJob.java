@@ -0,0 +1,171 @@
+package net.aionstudios.horae;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link CronJob} whose executions start work and return at once with a {@link CompletionStage} that completes once the work is done,
+ * for {@link CronJob}s that spend their time waiting on non-blocking I/O. The {@link CronExecutor} only holds a worker while
+ * {@link #runAsync()} is called, and counts the execution as running, for its {@link CronOverlapPolicy} and its duration, until the
+ * stage completes, so that a few workers can drive thousands of executions in flight at once.
+ *
+ * An execution that is still in flight once its timeout has passed is counted as failed and its stage is cancelled. Executions still
+ * in flight are also cancelled when this {@link AsyncCronJob} is disabled, when {@link CronOverlapPolicy#CANCEL_PREVIOUS} starts a new
+ * one and when the cron thread is stopped. A stage that cannot be cancelled from outside, such as one that is not backed by a
+ * {@link CompletableFuture}, is left to finish on its own, but no longer counts as running.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public abstract class AsyncCronJob extends CronJob {
+	
+	private final Set<CompletableFuture<Object>> inFlight = ConcurrentHashMap.newKeySet();
+	private volatile long timeoutMillis = 0;
+	
+	/**
+	 * Creates a new {@link AsyncCronJob} with an id generated from its class name.
+	 * 
+	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link AsyncCronJob}.
+	 */
+	public AsyncCronJob(CronDateTime cdt) {
+		super(cdt);
+	}
+	
+	/**
+	 * Creates a new {@link AsyncCronJob}.
+	 * 
+	 * @param id The id by which this {@link AsyncCronJob} is known to the {@link CronManager}, unique among registered {@link CronJob}s.
+	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link AsyncCronJob}.
+	 */
+	public AsyncCronJob(String id, CronDateTime cdt) {
+		super(id, cdt);
+	}
+	
+	/**
+	 * A method that is called in enabled {@link AsyncCronJob}s when the cron thread determines that the present system time warrants
+	 * execution of this {@link AsyncCronJob}. It should start its work and return without waiting for it.
+	 * 
+	 * @return A {@link CompletionStage} that completes once the execution is done, exceptionally if it failed.
+	 */
+	public abstract CompletionStage<?> runAsync();
+	
+	/**
+	 * Executes this {@link AsyncCronJob} and waits for it to complete, for callers that run it directly. The {@link CronExecutor}
+	 * calls {@link #runAsync()} instead and does not wait.
+	 */
+	@Override
+	public void run() {
+		begin().join();
+	}
+	
+	/**
+	 * Sets how long an execution may stay in flight before it is cancelled and counted as failed.
+	 * 
+	 * @param timeoutMillis The timeout in milliseconds, or 0 for none, which is the default.
+	 */
+	public void setTimeout(long timeoutMillis) {
+		if(timeoutMillis<0) {
+			throw new IllegalArgumentException("Timeout must not be negative");
+		}
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	/**
+	 * @return How long in milliseconds an execution may stay in flight before it is cancelled, or 0 if there is no limit.
+	 */
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+	
+	/**
+	 * @return The number of executions of this {@link AsyncCronJob} that have started and whose stages have not yet completed.
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+	
+	/**
+	 * Cancels every execution of this {@link AsyncCronJob} that is still in flight.
+	 */
+	public void cancel() {
+		for(CompletableFuture<Object> f : inFlight) {
+			f.cancel(true);
+		}
+	}
+	
+	/**
+	 * Disables this {@link AsyncCronJob}, cancelling every execution of it that is still in flight.
+	 */
+	@Override
+	public void disable() {
+		super.disable();
+		cancel();
+	}
+	
+	@Override
+	void cancelRunning() {
+		super.cancelRunning();
+		cancel();
+	}
+	
+	/**
+	 * Starts an execution, tracking it until it completes.
+	 * 
+	 * @return A future that completes with the stage returned by {@link #runAsync()}, exceptionally with a {@link TimeoutException} once the
+	 * timeout passes, with a {@link CancellationException} if the execution is cancelled, or with whatever {@link #runAsync()} threw.
+	 */
+	CompletableFuture<Object> begin() {
+		final CompletableFuture<Object> tracked = new CompletableFuture<Object>();
+		inFlight.add(tracked);
+		final CompletionStage<?> stage;
+		try {
+			stage = runAsync();
+			if(stage==null) {
+				throw new NullPointerException("Cron job "+getId()+" returned no stage");
+			}
+		} catch(RuntimeException e) {
+			inFlight.remove(tracked);
+			tracked.completeExceptionally(e);
+			return tracked;
+		}
+		stage.whenComplete(new BiConsumer<Object, Throwable>() {
+
+			@Override
+			public void accept(Object result, Throwable t) {
+				if(t!=null) {
+					tracked.completeExceptionally(t);
+				} else {
+					tracked.complete(result);
+				}
+			}
+
+		});
+		long timeout = timeoutMillis;
+		if(timeout>0) {
+			tracked.orTimeout(timeout, TimeUnit.MILLISECONDS);
+		}
+		tracked.whenComplete(new BiConsumer<Object, Throwable>() {
+
+			@Override
+			public void accept(Object result, Throwable t) {
+				inFlight.remove(tracked);
+				if(t instanceof TimeoutException||t instanceof CancellationException) {
+					try {
+						stage.toCompletableFuture().cancel(true);
+					} catch(UnsupportedOperationException e) {
+						//The stage cannot be cancelled from outside, so it is left to finish on its own.
+					}
+				}
+			}
+
+		});
+		return tracked;
+	}
+
+}
@@ -0,0 +1,232 @@
+package net.aionstudios.horae;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Shares the {@link CronJob}s of a {@link CronManager} running on several nodes between them, so that each execution happens on one
+ * node instead of on every node. Set one with {@link CronManager#setCluster(CronCluster)} before starting the cron thread.
+ *
+ * Every node registers every {@link CronJob} and evaluates every schedule as usual, but only dispatches the {@link CronJob}s it owns. A
+ * {@link CronJob} is owned by the node its id falls to on a consistent hash ring of the current members, as given by a
+ * {@link CronCoordinator} with which each node keeps renewing a lease. When a node joins, leaves or lets its lease run out, the
+ * {@link CronJob}s it gains or gives up move and no others do. A node that gains a {@link CronJob} from a member that is still
+ * live waits out a full lease first. By then the previous owner has either renewed, seen the change and stopped, or gone without
+ * renewing for so long that its own lease, and with it its right to dispatch, has run out, however long its renewals take. An
+ * execution of a moving {@link CronJob} that falls due in between is skipped rather than risk it running twice.
+ *
+ * A node stops dispatching once its lease runs out without being renewed, so a node that stalls past its lease does not execute
+ * {@link CronJob}s the rest of the cluster has since handed to another node. Nodes' clocks must agree to well within a lease for this
+ * to hold. Each execution is also given the membership epoch it was claimed under as a fencing token, see
+ * {@link CronJob#getFencingToken()}, so that a resource can refuse writes from a node that stalled mid-execution.
+ *
+ * Since ownership follows the id, every node must know each {@link CronJob} by the same id. The id generated for a {@link CronJob}
+ * created without one depends on the order {@link CronJob}s are created in, so {@link CronManager} refuses such {@link CronJob}s while
+ * a {@link CronCluster} is set, and each {@link CronJob} must be created with {@link CronJob#CronJob(String, CronDateTime)} instead.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronCluster implements Closeable {
+	
+	private static final int VIRTUAL_NODES = 128;
+	
+	private final CronCoordinator coordinator;
+	private final long leaseMillis;
+	private volatile Assignment assignment;
+	private volatile boolean running = false;
+	private Thread renewer;
+	
+	/**
+	 * Creates a {@link CronCluster} with a 15 second lease, renewed every 5 seconds.
+	 * 
+	 * @param coordinator The {@link CronCoordinator} that tracks the members of the cluster.
+	 */
+	public CronCluster(CronCoordinator coordinator) {
+		this(coordinator, 15000L);
+	}
+	
+	/**
+	 * Creates a {@link CronCluster}.
+	 * 
+	 * @param coordinator The {@link CronCoordinator} that tracks the members of the cluster.
+	 * @param leaseMillis How long, in milliseconds, a node remains a member without renewing. Leases are renewed every third of this.
+	 */
+	public CronCluster(CronCoordinator coordinator, long leaseMillis) {
+		if(leaseMillis<3) {
+			throw new IllegalArgumentException("A cron cluster lease must be at least 3 milliseconds");
+		}
+		this.coordinator = coordinator;
+		this.leaseMillis = leaseMillis;
+	}
+	
+	/**
+	 * @return The id of this node.
+	 */
+	public String getNodeId() {
+		return coordinator.getNodeId();
+	}
+	
+	/**
+	 * @return The members of the cluster as of the last renewal, or null if this node has not joined.
+	 */
+	public CronClusterView getView() {
+		Assignment a = assignment;
+		return a!=null ? a.view : null;
+	}
+	
+	/**
+	 * @param jobId The id of a {@link CronJob}.
+	 * @return True if the {@link CronJob} falls to this node under the current members, false otherwise.
+	 */
+	public boolean owns(String jobId) {
+		Assignment a = assignment;
+		return a!=null&&a.ring.ownerOf(CronHashRing.hash(jobId))==a.self;
+	}
+	
+	/**
+	 * Joins the cluster and starts renewing this node's lease.
+	 */
+	synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		renew();
+		renewer = new Thread("horae-cluster-"+getNodeId()) {
+			public void run() {
+				while(running) {
+					try {
+						Thread.sleep(leaseMillis/3);
+					} catch(InterruptedException e) {
+						if(running) {
+							System.err.println("Cron cluster thread was interrupted!");
+							e.printStackTrace();
+						}
+						continue;
+					}
+					renew();
+				}
+			}
+		};
+		renewer.setDaemon(true);
+		renewer.start();
+	}
+	
+	/**
+	 * Stops renewing and leaves the cluster, so that the other members take over this node's {@link CronJob}s straight away.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(running) {
+			running = false;
+			renewer.interrupt();
+		}
+		assignment = null;
+		coordinator.leave();
+	}
+	
+	/**
+	 * Claims a due execution for this node.
+	 * 
+	 * @param j The due {@link CronJob}.
+	 * @param now The current time in epoch milliseconds.
+	 * @return The fencing token to execute the {@link CronJob} under, or -1 if it belongs to another node or this node's lease has run out.
+	 */
+	long claim(CronJob j, long now) {
+		Assignment a = assignment;
+		if(a==null||now>=a.view.getExpiresMillis()||!a.owns(j.getRingPosition(), now)) {
+			return -1;
+		}
+		return a.view.getEpoch();
+	}
+	
+	/**
+	 * Renews this node's lease and takes up any change in the members, as the renewing thread does every third of a lease.
+	 */
+	void renew() {
+		try {
+			CronClusterView view = coordinator.renew(leaseMillis);
+			Assignment previous = assignment;
+			if(!running) {
+				return;
+			}
+			if(previous!=null&&previous.view.getMembers().equals(view.getMembers())) {
+				assignment = new Assignment(view, previous);
+			} else {
+				//The previous owner's lease was last renewed before the change, so it has run out a lease from now at the latest.
+				assignment = new Assignment(view, previous, getNodeId(), DateTimeServices.getClock().millis()+leaseMillis);
+			}
+		} catch(IOException e) {
+			System.err.println("Failed to renew the cron cluster lease of node "+getNodeId()+"!");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * The {@link CronJob}s owned by this node under one set of members, and those it is still waiting to take over from a live member.
+	 */
+	private static class Assignment {
+		
+		private final CronClusterView view;
+		private final CronHashRing ring;
+		private final int self;
+		/* The ring before the members last changed, and which of its members are still live and so may still be executing. */
+		private final CronHashRing handoffRing;
+		private final boolean[] handingOff;
+		private final long settledMillis;
+		
+		/**
+		 * An assignment for members that changed, or for the first renewal.
+		 */
+		private Assignment(CronClusterView view, Assignment previous, String nodeId, long settledMillis) {
+			List<String> members = view.getMembers();
+			this.view = view;
+			this.ring = new CronHashRing(members, VIRTUAL_NODES);
+			this.self = members.indexOf(nodeId);
+			if(previous!=null) {
+				this.handoffRing = previous.ring;
+			} else {
+				//Before this node joined, its share belonged to the others.
+				List<String> others = new ArrayList<String>(members);
+				others.remove(nodeId);
+				this.handoffRing = new CronHashRing(others, VIRTUAL_NODES);
+			}
+			List<String> before = handoffRing.getMembers();
+			this.handingOff = new boolean[before.size()];
+			for(int i = 0; i < handingOff.length; i++) {
+				handingOff[i] = !before.get(i).equals(nodeId)&&members.contains(before.get(i));
+			}
+			this.settledMillis = settledMillis;
+		}
+		
+		/**
+		 * An assignment for a renewal that left the members unchanged.
+		 */
+		private Assignment(CronClusterView view, Assignment previous) {
+			this.view = view;
+			this.ring = previous.ring;
+			this.self = previous.self;
+			this.handoffRing = previous.handoffRing;
+			this.handingOff = previous.handingOff;
+			this.settledMillis = previous.settledMillis;
+		}
+		
+		private boolean owns(long position, long now) {
+			if(ring.ownerOf(position)!=self) {
+				return false;
+			}
+			if(now>=settledMillis) {
+				return true;
+			}
+			int before = handoffRing.ownerOf(position);
+			return before<0||!handingOff[before];
+		}
+	
+	}
+
+}
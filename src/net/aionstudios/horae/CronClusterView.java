@@ -0,0 +1,59 @@
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The members of a {@link CronCluster} as seen by one node when it last renewed its lease with the {@link CronCoordinator}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronClusterView {
+	
+	private final long epoch;
+	private final List<String> members;
+	private final long expiresMillis;
+	
+	/**
+	 * @param epoch The membership epoch, which increases every time the set of members changes.
+	 * @param members The ids of the nodes in the cluster.
+	 * @param expiresMillis The time in epoch milliseconds at which the lease of the node that renewed runs out.
+	 */
+	public CronClusterView(long epoch, Collection<String> members, long expiresMillis) {
+		List<String> sorted = new ArrayList<String>(members);
+		Collections.sort(sorted);
+		this.epoch = epoch;
+		this.members = Collections.unmodifiableList(sorted);
+		this.expiresMillis = expiresMillis;
+	}
+	
+	/**
+	 * @return The membership epoch, which increases every time the set of members changes.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+	
+	/**
+	 * @return The ids of the nodes in the cluster, in order.
+	 */
+	public List<String> getMembers() {
+		return members;
+	}
+	
+	/**
+	 * @return The time in epoch milliseconds at which the lease of the node that renewed runs out.
+	 */
+	public long getExpiresMillis() {
+		return expiresMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return "epoch "+epoch+" "+members;
+	}
+
+}
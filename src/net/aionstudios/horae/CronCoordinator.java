@@ -0,0 +1,39 @@
+package net.aionstudios.horae;
+
+import java.io.IOException;
+
+/**
+ * Keeps track of which nodes belong to a {@link CronCluster}, so that the nodes can share out its {@link CronJob}s between them. Each
+ * node holds a lease on its membership that it must keep renewing; a node whose lease runs out is no longer a member. See
+ * {@link FileCronCoordinator} for an implementation over a shared directory.
+ *
+ * Implementations must keep an epoch that increases every time the set of members changes, by a node joining, leaving or letting its
+ * lease run out, and never otherwise. The epoch is handed to executions as their fencing token.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public interface CronCoordinator {
+	
+	/**
+	 * @return The id of this node, unique within the cluster.
+	 */
+	String getNodeId();
+	
+	/**
+	 * Joins the cluster, or renews this node's lease if it is already a member, and drops every member whose lease has run out.
+	 * 
+	 * @param leaseMillis How long, in milliseconds, this node remains a member without renewing again.
+	 * @return The members of the cluster as of the renewal, including this node.
+	 * @throws IOException If the cluster could not be reached, in which case the previous lease still stands until it runs out.
+	 */
+	CronClusterView renew(long leaseMillis) throws IOException;
+	
+	/**
+	 * Gives up this node's lease, so that the other members take over its {@link CronJob}s without waiting for the lease to run out.
+	 * 
+	 * @throws IOException If the cluster could not be reached.
+	 */
+	void leave() throws IOException;
+
+}
@@ -1,518 +1,544 @@
-package net.aionstudios.horae;
-
-import net.aionstudios.horae.service.DateTimeServices;
-
-/**
- * A class that helps to define timing for {@link CronJob}s.
- * @author Winter Roberts
- */
-public class CronDateTime {
-	
-	private String cronTime = "* * * * * *";
-	
-	public CronDateTime() {
-		
-	}
-	
-	//Has to be assembled, not pre-provided because I don't want to do the string processing.
-	
-	/**
-	 * Constructs a complete crontTime from the information provided.
-	 * @param minute A minute or minute range provided in the form of a string (ints).
-	 * @param hour An hour or hour range provided in the form of a string (ints).
-	 * @param day A day or day range provided in the form of a string (ints).
-	 * @param month A month or month range provided in the form of a string (ints).
-	 * @param dow A day of the week or day of the week range provided in the form of a string (ints).
-	 * @param year A year or year range provided in the form of a string (ints).
-	 */
-	private void constructCronString(String minute, String hour, String day, String month, String dow, String year) {
-		cronTime = minute+" "+hour+" "+day+" "+month+" "+dow+" "+year;
-	}
-	
-	/**
-	 * @return A string array containing each cron definition in separate parts. m h d m w y
-	 */
-	private String[] getCronTimes() {
-		return cronTime.split(" ");
-	}
-	
-	/**
-	 * Sets the exact or range of minutes for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid minutes (0-59)
-	 * @param end An integer representing the end of valid minutes (0-59)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setMinuteRange(int start, int end) {
-		if(start>=0&&start<60&&end>=start&&end<60) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(start+"-"+end, current[1], current[2], current[3], current[4], current[5]);
-			} else {
-				constructCronString(start+"", current[1], current[2], current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets the exact or range of hours for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid hours (0-23)
-	 * @param end An integer representing the end of valid hours (0-23)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setHourRange(int start, int end) {
-		if(start>=0&&start<24&&end>=start&&end<24) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(current[0], start+"-"+end, current[2], current[3], current[4], current[5]);
-			} else {
-				constructCronString(current[0], start+"", current[2], current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets the exact or range of days of the month for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid days (0-31)
-	 * @param end An integer representing the end of valid days (0-31)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setDayOfMonthRange(int start, int end) {
-		if(start>0&&start<32&&end>=start&&end<32) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(current[0], current[1], start+"-"+end, current[3], current[4], current[5]);
-			} else {
-				constructCronString(current[0], current[1], start+"", current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets the exact or range of months for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid months (1-12)
-	 * @param end An integer representing the end of valid months (1-12)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setMonthRange(int start, int end) {
-		if(start>0&&start<13&&end>=start&&end<13) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], start+"-"+end, current[4], current[5]);
-			} else {
-				constructCronString(current[0], current[1], current[2], start+"", current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets the exact or range of days of the week for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid days (1-7)
-	 * @param end An integer representing the end of valid days (1-7)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setDayOfWeekRange(int start, int end) {
-		if(start>0&&start<8&&end>=start&&end<8) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], current[3], start+"-"+end, current[5]);
-			} else {
-				constructCronString(current[0], current[1], current[2], current[3], start+"", current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets the exact or range of years for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid years (1900-2999)
-	 * @param end An integer representing the end of valid hours (1900-2999)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean setYearRange(int start, int end) {
-		if(start>1899&&start<3000&&end>=start&&end<3001) {
-			String[] current = getCronTimes();
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], current[3], current[4], start+"-"+end);
-			} else {
-				constructCronString(current[0], current[1], current[2], current[3], current[4], start+"");
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute for every minute.
-	 */
-	public void setAllMinuteRange() {
-		String[] current = getCronTimes();
-		constructCronString("*", current[1], current[2], current[3], current[4], current[5]);
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute for every hour.
-	 */
-	public void setAllHourRange() {
-		String[] current = getCronTimes();
-		constructCronString(current[0], "*", current[2], current[3], current[4], current[5]);
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every for day of the month.
-	 */
-	public void setAllDayOfMonthRange() {
-		String[] current = getCronTimes();
-		constructCronString(current[0], current[1], "*", current[3], current[4], current[5]);
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every for month.
-	 */
-	public void setAllMonthRange() {
-		String[] current = getCronTimes();
-		constructCronString(current[0], current[1], current[2], "*", current[4], current[5]);
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every day of the week.
-	 */
-	public void setAllDayOfWeekRange() {
-		String[] current = getCronTimes();
-		constructCronString(current[0], current[1], current[2], current[3], "*", current[5]);
-	}
-	
-	/**
-	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every year.
-	 */
-	public void setAllYearRange() {
-		String[] current = getCronTimes();
-		constructCronString(current[0], current[1], current[2], current[3], current[4], "*");
-	}
-	
-	/**
-	 * Appends an exact or range of minutes for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid minutes (0-59)
-	 * @param end An integer representing the end of valid minutes (0-59)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendMinuteRange(int start, int end) {
-		if(start>=0&&start<60&&end>=start&&end<60) {
-			String[] current = getCronTimes();
-			if(current[0].equals("*")) {
-				return setMinuteRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0]+","+start+"-"+end, current[1], current[2], current[3], current[4], current[5]);
-			} else {
-				constructCronString(current[0]+","+start+"", current[1], current[2], current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Appends an exact or range of hours for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid hours (0-23)
-	 * @param end An integer representing the end of valid hours (0-23)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendHourRange(int start, int end) {
-		if(start>=0&&start<24&&end>=start&&end<24) {
-			String[] current = getCronTimes();
-			if(current[1].equals("*")) {
-				return setHourRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0], current[1]+","+start+"-"+end, current[2], current[3], current[4], current[5]);
-			} else {
-				constructCronString(current[0], current[1]+","+start+"", current[2], current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Appends an exact or range of days of the month for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid days (0-31)
-	 * @param end An integer representing the end of valid days (0-31)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendDayOfMonthRange(int start, int end) {
-		if(start>0&&start<32&&end>=start&&end<32) {
-			String[] current = getCronTimes();
-			if(current[2].equals("*")) {
-				return setDayOfMonthRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2]+","+start+"-"+end, current[3], current[4], current[5]);
-			} else {
-				constructCronString(current[0], current[1], current[2]+","+start+"", current[3], current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Appends an exact or range of months for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid months (1-12)
-	 * @param end An integer representing the end of valid months (1-12)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendMonthRange(int start, int end) {
-		if(start>0&&start<13&&end>=start&&end<13) {
-			String[] current = getCronTimes();
-			if(current[3].equals("*")) {
-				return setMonthRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], current[3]+","+start+"-"+end, current[4], current[5]);
-			} else {
-				constructCronString(current[0], current[1], current[2], current[3]+","+start+"", current[4], current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Appends an exact or range of days of the week for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid days (1-7)
-	 * @param end An integer representing the end of valid days (1-7)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendDayOfWeekRange(int start, int end) {
-		if(start>0&&start<8&&end>=start&&end<8) {
-			String[] current = getCronTimes();
-			if(current[4].equals("*")) {
-				return setDayOfWeekRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], current[3], current[4]+","+start+"-"+end, current[5]);
-			} else {
-				constructCronString(current[0], current[1], current[2], current[3], current[4]+","+start+"", current[5]);
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Appends an exact or range of years for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
-	 * A note: start must always be less than or equal to end.
-	 * @param start	An integer representing the start of valid years (1900-2999)
-	 * @param end An integer representing the end of valid hours (1900-2999)
-	 * @return True if all inputs were valid and the changes were applied, false otherwise.
-	 */
-	public boolean appendYearRange(int start, int end) {
-		if(start>1899&&start<3000&&end>=start&&end<3001) {
-			String[] current = getCronTimes();
-			if(current[5].equals("*")) {
-				return setYearRange(start, end);
-			}
-			if(start!=end) {
-				constructCronString(current[0], current[1], current[2], current[3], current[4], current[5]+","+start+"-"+end);
-			} else {
-				constructCronString(current[0], current[1], current[2], current[3], current[4], current[5]+","+start+"");
-			}
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given minute.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasMinute(int match) {
-		String[] current = getCronTimes();
-		if(current[0].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[0].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given hour.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasHour(int match) {
-		String[] current = getCronTimes();
-		if(current[1].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[1].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given day of the month.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasDayOfMonth(int match) {
-		String[] current = getCronTimes();
-		if(current[2].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[2].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given month.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasMonth(int match) {
-		String[] current = getCronTimes();
-		if(current[3].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[3].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given day of the week.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasDayOfWeek(int match) {
-		String[] current = getCronTimes();
-		if(current[4].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[4].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Detects whether or not the {@link CronDateTime} supports an integer for a given year.
-	 * @param match An integer to match against.
-	 * @return True if the {@link CronDateTime} supports the provided integer.
-	 */
-	public boolean hasYear(int match) {
-		String[] current = getCronTimes();
-		if(current[5].contains("*")) {
-			return true;
-		}
-		for(String s1 : current[5].split(",")) {
-			String[] s2 = s1.split("-");
-			if(s2.length>1) {
-				if(Integer.parseInt(s2[0])<=match&&Integer.parseInt(s2[1])>=match) {
-					return true;
-				}
-			} else {
-				if(Integer.parseInt(s2[0])==match) {
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks this {@link CronDateTime} against the current time.
-	 * @return True if the present system time matches with the sets in this {@link CronDateTime}, false otherwise.
-	 */
-	public boolean matchesNow() {
-		return hasMinute(DateTimeServices.getCronMinute())&&hasHour(DateTimeServices.getCronHour())&&hasDayOfMonth(DateTimeServices.getCronDayOfMonth())&&hasMonth(DateTimeServices.getCronMonth())&&hasDayOfWeek(DateTimeServices.getCronDayOfWeek())&&hasYear(DateTimeServices.getCronYear());
-	}
-	
-	/**
-	 * Checks this {@link CronDateTime} against a provided time.
-	 * @param min The minute to check against.
-	 * @param hour The hour to check against.
-	 * @param dom The day of the month to check against.
-	 * @param month The month to check against.
-	 * @param dow The day of the week to check against.
-	 * @param year The year to check against.
-	 * @return True if the provided system time matches with the sets in this {@link CronDateTime}, false otherwise.
-	 */
-	public boolean matches(int min, int hour, int dom, int month, int dow, int year) {
-		return hasMinute(min)&&hasHour(hour)&&hasDayOfMonth(dom)&&hasMonth(month)&&hasDayOfWeek(dow)&&hasYear(year);
-	}
-
-}
-
+package net.aionstudios.horae;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A class that helps to define timing for {@link CronJob}s.
+ * 
+ * Times are read in the zone of the {@link DateTimeServices} clock unless a zone is set with {@link #setZone(ZoneId)}. Either way, each
+ * local time permitted runs once across daylight saving changes: a local time skipped when clocks go forward runs as far after the gap
+ * as it was into it, so 02:30 runs at 03:30 when clocks jump from 02:00 to 03:00, and a local time repeated when clocks go back runs only
+ * the first time it occurs, so even a {@link CronJob} that runs every minute pauses for the repeated hour.
+ * @author Winter Roberts
+ */
+public class CronDateTime {
+	
+	private CronSchedule schedule;
+	private int hashedWindow = 0;
+	
+	public CronDateTime() {
+		this.schedule = CronSchedule.EVERY_MINUTE;
+	}
+	
+	CronDateTime(CronSchedule schedule) {
+		this.schedule = schedule;
+	}
+	
+	/**
+	 * Compiles a cron expression into a new {@link CronDateTime}. Expressions are compiled once and the compiled form is shared by every
+	 * {@link CronDateTime} parsed from the same text, so any number of {@link CronJob}s may share a schedule at little cost.
+	 * 
+	 * The expression has five, six or seven whitespace separated fields: "m h d m w", "m h d m w y" as used throughout Horae, or "s m h d m w y".
+	 * Each field is a comma separated list of terms, where a term is a value, a range "a-b", either of those or "*" followed by a step "/n",
+	 * or "*" alone. A range whose end is before its start wraps around, so "22-2" in the hour field permits 22, 23, 0, 1 and 2. Months may be
+	 * written JAN-DEC and days of the week MON-SUN, where Monday is 1 and Sunday is 7 or 0. "?" may stand in for "*" in either day field.
+	 * 
+	 * The day of the month field also accepts "L" for the last day of the month, "L-n" for the nth day before it, "LW" for the last weekday
+	 * and "nW" for the weekday nearest to day n within the same month. The day of the week field also accepts "nL" for the last such day of
+	 * the month and "n#k" for the kth such day of the month. As with the range methods, a day must satisfy both day fields.
+	 * 
+	 * @param expression The cron expression.
+	 * @return A new {@link CronDateTime} for the expression, which may be changed without affecting any other.
+	 * @throws IllegalArgumentException If the expression is not valid.
+	 */
+	public static CronDateTime parse(String expression) {
+		return new CronDateTime(CronSchedule.compile(expression));
+	}
+	
+	/**
+	 * Compiles a cron expression into a new {@link CronDateTime} read in a time zone of its own. As with {@link #parse(String)}, the
+	 * compiled form is shared by every {@link CronDateTime} parsed from the same text in the same time zone.
+	 * 
+	 * @param expression The cron expression, as accepted by {@link #parse(String)}.
+	 * @param zone The time zone in which the expression is read.
+	 * @return A new {@link CronDateTime} for the expression, which may be changed without affecting any other.
+	 * @throws IllegalArgumentException If the expression is not valid.
+	 */
+	public static CronDateTime parse(String expression, ZoneId zone) {
+		return new CronDateTime(CronSchedule.compile(expression, zone));
+	}
+	
+	/**
+	 * @return The compiled form of this {@link CronDateTime}, which is replaced rather than changed whenever this {@link CronDateTime} is.
+	 */
+	CronSchedule getSchedule() {
+		return schedule;
+	}
+	
+	/**
+	 * Sets the time zone in which this {@link CronDateTime} is read, so that {@link CronJob}s in different zones can share one {@link CronManager}.
+	 * 
+	 * @param zone The time zone, or null to follow the zone of the {@link DateTimeServices} clock.
+	 */
+	public void setZone(ZoneId zone) {
+		schedule = schedule.withZone(zone);
+	}
+	
+	/**
+	 * @return The time zone in which this {@link CronDateTime} is read, or null if it follows the zone of the {@link DateTimeServices} clock.
+	 */
+	public ZoneId getZone() {
+		return schedule.getZone();
+	}
+	
+	/**
+	 * Spreads the {@link CronJob}s using this {@link CronDateTime} across a window following each time it permits, like H in Jenkins, so
+	 * that thousands of {@link CronJob}s due at the same moment do not all start at once. Each {@link CronJob} starts at an offset into
+	 * the window taken from a hash of its id. The offset stays the same from one execution to the next, and across restarts and nodes
+	 * only for {@link CronJob}s created with an id of their own, as a generated id depends on the order {@link CronJob}s are created in.
+	 * A note: the window should be shorter than the time between permitted times, or executions start while earlier ones are still waiting.
+	 * @param minutes An integer representing the length of the window in minutes (0-1440), where 0 starts {@link CronJob}s as soon as they are due.
+	 * @return True if the input was valid and the change was applied, false otherwise.
+	 */
+	public boolean setHashedWindow(int minutes) {
+		if(minutes>=0&&minutes<=1440) {
+			hashedWindow = minutes;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The length in minutes of the window across which {@link CronJob}s using this {@link CronDateTime} are spread, or 0 if they start as soon as they are due.
+	 */
+	public int getHashedWindow() {
+		return hashedWindow;
+	}
+	
+	/**
+	 * @param j A {@link CronJob} using this {@link CronDateTime}.
+	 * @return How many milliseconds after each permitted time the {@link CronJob} starts.
+	 */
+	long hashedOffsetOf(CronJob j) {
+		int window = hashedWindow;
+		return window==0 ? 0L : Math.floorMod(j.getRingPosition(), window*60000L);
+	}
+	
+	/**
+	 * Sets the exact or range of seconds within each permitted minute at which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * Until this is set a {@link CronJob} executes once a minute, at second 0.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid seconds (0-59)
+	 * @param end An integer representing the end of valid seconds (0-59)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setSecondRange(int start, int end) {
+		if(start>=0&&start<60&&end>=start&&end<60) {
+			schedule = schedule.withRange(CronSchedule.SECOND, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of minutes for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid minutes (0-59)
+	 * @param end An integer representing the end of valid minutes (0-59)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setMinuteRange(int start, int end) {
+		if(start>=0&&start<60&&end>=start&&end<60) {
+			schedule = schedule.withRange(CronSchedule.MINUTE, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of hours for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid hours (0-23)
+	 * @param end An integer representing the end of valid hours (0-23)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setHourRange(int start, int end) {
+		if(start>=0&&start<24&&end>=start&&end<24) {
+			schedule = schedule.withRange(CronSchedule.HOUR, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of days of the month for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid days (0-31)
+	 * @param end An integer representing the end of valid days (0-31)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setDayOfMonthRange(int start, int end) {
+		if(start>0&&start<32&&end>=start&&end<32) {
+			schedule = schedule.withRange(CronSchedule.DAY_OF_MONTH, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of months for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid months (1-12)
+	 * @param end An integer representing the end of valid months (1-12)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setMonthRange(int start, int end) {
+		if(start>0&&start<13&&end>=start&&end<13) {
+			schedule = schedule.withRange(CronSchedule.MONTH, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of days of the week for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid days (1-7)
+	 * @param end An integer representing the end of valid days (1-7)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setDayOfWeekRange(int start, int end) {
+		if(start>0&&start<8&&end>=start&&end<8) {
+			schedule = schedule.withRange(CronSchedule.DAY_OF_WEEK, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets the exact or range of years for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid years (1900-2999)
+	 * @param end An integer representing the end of valid hours (1900-2999)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean setYearRange(int start, int end) {
+		if(start>1899&&start<3000&&end>=start&&end<3001) {
+			schedule = schedule.withRange(CronSchedule.YEAR, start, end, false);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute for every second.
+	 */
+	public void setAllSecondRange() {
+		schedule = schedule.withAll(CronSchedule.SECOND);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute for every minute.
+	 */
+	public void setAllMinuteRange() {
+		schedule = schedule.withAll(CronSchedule.MINUTE);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute for every hour.
+	 */
+	public void setAllHourRange() {
+		schedule = schedule.withAll(CronSchedule.HOUR);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every for day of the month.
+	 */
+	public void setAllDayOfMonthRange() {
+		schedule = schedule.withAll(CronSchedule.DAY_OF_MONTH);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every for month.
+	 */
+	public void setAllMonthRange() {
+		schedule = schedule.withAll(CronSchedule.MONTH);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every day of the week.
+	 */
+	public void setAllDayOfWeekRange() {
+		schedule = schedule.withAll(CronSchedule.DAY_OF_WEEK);
+	}
+	
+	/**
+	 * Sets as that this {@link CronDateTime} will permit a {@link CronJob} to execute every year.
+	 */
+	public void setAllYearRange() {
+		schedule = schedule.withAll(CronSchedule.YEAR);
+	}
+	
+	/**
+	 * Appends an exact or range of seconds within each permitted minute at which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid seconds (0-59)
+	 * @param end An integer representing the end of valid seconds (0-59)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendSecondRange(int start, int end) {
+		if(start>=0&&start<60&&end>=start&&end<60) {
+			schedule = schedule.withRange(CronSchedule.SECOND, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of minutes for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid minutes (0-59)
+	 * @param end An integer representing the end of valid minutes (0-59)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendMinuteRange(int start, int end) {
+		if(start>=0&&start<60&&end>=start&&end<60) {
+			schedule = schedule.withRange(CronSchedule.MINUTE, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of hours for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid hours (0-23)
+	 * @param end An integer representing the end of valid hours (0-23)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendHourRange(int start, int end) {
+		if(start>=0&&start<24&&end>=start&&end<24) {
+			schedule = schedule.withRange(CronSchedule.HOUR, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of days of the month for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid days (0-31)
+	 * @param end An integer representing the end of valid days (0-31)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendDayOfMonthRange(int start, int end) {
+		if(start>0&&start<32&&end>=start&&end<32) {
+			schedule = schedule.withRange(CronSchedule.DAY_OF_MONTH, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of months for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid months (1-12)
+	 * @param end An integer representing the end of valid months (1-12)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendMonthRange(int start, int end) {
+		if(start>0&&start<13&&end>=start&&end<13) {
+			schedule = schedule.withRange(CronSchedule.MONTH, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of days of the week for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid days (1-7)
+	 * @param end An integer representing the end of valid days (1-7)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendDayOfWeekRange(int start, int end) {
+		if(start>0&&start<8&&end>=start&&end<8) {
+			schedule = schedule.withRange(CronSchedule.DAY_OF_WEEK, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Appends an exact or range of years for which this {@link CronDateTime} will permit a {@link CronJob} to execute.
+	 * A note: start must always be less than or equal to end.
+	 * @param start	An integer representing the start of valid years (1900-2999)
+	 * @param end An integer representing the end of valid hours (1900-2999)
+	 * @return True if all inputs were valid and the changes were applied, false otherwise.
+	 */
+	public boolean appendYearRange(int start, int end) {
+		if(start>1899&&start<3000&&end>=start&&end<3001) {
+			schedule = schedule.withRange(CronSchedule.YEAR, start, end, true);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return True if this {@link CronDateTime} only permits second 0 of each minute, so that minute-level scheduling is enough for it, false otherwise.
+	 */
+	boolean isMinuteLevel() {
+		return schedule.getSecondMask()==1L;
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given second.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasSecond(int match) {
+		return schedule.hasSecond(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given minute.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasMinute(int match) {
+		return schedule.hasMinute(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given hour.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasHour(int match) {
+		return schedule.hasHour(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given day of the month.
+	 * Rules that depend on the month, such as "L", "W" and "#", are not considered.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasDayOfMonth(int match) {
+		return schedule.hasDayOfMonth(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given month.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasMonth(int match) {
+		return schedule.hasMonth(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given day of the week.
+	 * Rules that depend on the month, such as "L", "W" and "#", are not considered.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasDayOfWeek(int match) {
+		return schedule.hasDayOfWeek(match);
+	}
+	
+	/**
+	 * Detects whether or not the {@link CronDateTime} supports an integer for a given year.
+	 * @param match An integer to match against.
+	 * @return True if the {@link CronDateTime} supports the provided integer.
+	 */
+	public boolean hasYear(int match) {
+		return schedule.hasYear(match);
+	}
+	
+	/**
+	 * Checks this {@link CronDateTime} against the current time.
+	 * @return True if the present system time matches with the sets in this {@link CronDateTime}, false otherwise.
+	 */
+	public boolean matchesNow() {
+		ZoneId zone = schedule.getZone();
+		return matches(zone!=null ? DateTimeServices.getCronInstant(zone) : DateTimeServices.getCronInstant());
+	}
+	
+	/**
+	 * Checks this {@link CronDateTime} against a single reading of the clock.
+	 * @param instant The {@link CronInstant} to check against.
+	 * @return True if the provided time matches with the sets in this {@link CronDateTime}, false otherwise.
+	 */
+	public boolean matches(CronInstant instant) {
+		return matches(instant.getMinute(), instant.getHour(), instant.getDayOfMonth(), instant.getMonth(), instant.getDayOfWeek(), instant.getYear());
+	}
+	
+	/**
+	 * Checks this {@link CronDateTime} against a single reading of the clock, down to the second.
+	 * @param sec The second within the minute of the {@link CronInstant} to check against.
+	 * @param instant The {@link CronInstant} to check against.
+	 * @return True if the provided time matches with the sets in this {@link CronDateTime}, false otherwise.
+	 */
+	public boolean matches(int sec, CronInstant instant) {
+		return hasSecond(sec)&&matches(instant);
+	}
+	
+	/**
+	 * Checks this {@link CronDateTime} against a provided time.
+	 * @param min The minute to check against.
+	 * @param hour The hour to check against.
+	 * @param dom The day of the month to check against.
+	 * @param month The month to check against.
+	 * @param dow The day of the week to check against.
+	 * @param year The year to check against.
+	 * @return True if the provided system time matches with the sets in this {@link CronDateTime}, false otherwise.
+	 */
+	public boolean matches(int min, int hour, int dom, int month, int dow, int year) {
+		return schedule.matches(min, hour, dom, month, dow, year);
+	}
+	
+	/**
+	 * Finds the first time strictly after the provided time at which this {@link CronDateTime} would permit a {@link CronJob} to execute.
+	 * Fields are resolved from the year down to the second, so sparse expressions are skipped over rather than walked second by second.
+	 * @param after The time to search forward from, the zone of which is used to interpret this {@link CronDateTime} unless it has a zone of its own.
+	 * @return The next matching time, or empty if this {@link CronDateTime} can never match again.
+	 */
+	public Optional<ZonedDateTime> nextExecutionAfter(ZonedDateTime after) {
+		return schedule.nextExecutionAfter(after);
+	}
+	
+	/**
+	 * Finds the last time strictly before the provided time at which this {@link CronDateTime} would have permitted a {@link CronJob} to execute.
+	 * Fields are resolved from the year down to the second, so sparse expressions are skipped over rather than walked second by second.
+	 * @param before The time to search backward from, the zone of which is used to interpret this {@link CronDateTime} unless it has a zone of its own.
+	 * @return The previous matching time, or empty if this {@link CronDateTime} never matched before it.
+	 */
+	public Optional<ZonedDateTime> previousExecutionBefore(ZonedDateTime before) {
+		return schedule.previousExecutionBefore(before);
+	}
+	
+	/**
+	 * Lists the times from one time up to another at which this {@link CronDateTime} would permit a {@link CronJob} to execute, without
+	 * regard to any hashed window. Times are found lazily as the stream is consumed, jumping straight from each to the next, so a long
+	 * range costs nothing until it is read and a stream that is only partly read stops early. Later changes to this {@link CronDateTime}
+	 * do not affect a stream already returned.
+	 * @param fromMillis The time in epoch milliseconds from which to list times, inclusive.
+	 * @param toMillis The time in epoch milliseconds up to which to list times, exclusive.
+	 * @return The permitted times in epoch milliseconds, in ascending order.
+	 */
+	public LongStream executionsBetween(long fromMillis, long toMillis) {
+		PrimitiveIterator.OfLong it = schedule.executionsBetween(fromMillis, toMillis, DateTimeServices.getClock().getZone());
+		return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED|Spliterator.SORTED|Spliterator.DISTINCT
+				|Spliterator.NONNULL|Spliterator.IMMUTABLE), false);
+	}
+	
+	/**
+	 * @return The expression this {@link CronDateTime} permits, in the form accepted by {@link #parse(String)}. The seconds field is only included when it permits more than second 0.
+	 */
+	@Override
+	public String toString() {
+		return schedule.toString();
+	}
+
+}
@@ -0,0 +1,197 @@
+package net.aionstudios.horae;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Holds executions that have fallen due but are to start later, because of a {@link CronDateTime#setHashedWindow(int) hashed window}
+ * or the {@link CronManager#setDispatchRateLimit(int) dispatch rate limit}, and hands each back to the {@link CronManager} at its
+ * time. Held executions are released in order of time, and in the order they were held when their times are equal, by a thread of
+ * their own that is only started once the first execution is held. The same thread runs executions handed over by a saturated
+ * {@link CronExecutor} under {@link CronSaturationPolicy#CALLER_RUNS}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronDispatchQueue {
+	
+	private final PriorityQueue<Held> queue = new PriorityQueue<Held>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition headChanged = lock.newCondition();
+	private long sequence = 0;
+	private Thread releaseThread;
+	/* An execution handed over by the CALLER_RUNS saturation policy, set until it has finished running. */
+	private Runnable handedOver;
+	
+	/**
+	 * Holds an execution until a later time.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param releaseMillis The time in epoch milliseconds at which to release the execution.
+	 * @param metered True if the execution already holds a slot from the dispatch rate limit, false otherwise.
+	 */
+	void hold(CronJob j, long dueMillis, long releaseMillis, boolean metered) {
+		lock.lock();
+		try {
+			Held head = queue.peek();
+			queue.add(new Held(j, dueMillis, releaseMillis, metered, sequence++));
+			if(releaseThread==null) {
+				start();
+			} else if(head==null||releaseMillis<head.releaseMillis) {
+				headChanged.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Hands an execution that a saturated {@link CronExecutor} could not queue over to the release thread, to run ahead of the held
+	 * executions, so that it does not hold up the thread that dispatched it. Only one may be handed over at a time.
+	 * 
+	 * @param task The execution to run.
+	 * @return True if the execution was handed over, false if the release thread is still busy with an earlier one.
+	 */
+	boolean handOver(Runnable task) {
+		lock.lock();
+		try {
+			if(handedOver!=null) {
+				return false;
+			}
+			handedOver = task;
+			if(releaseThread==null) {
+				start();
+			} else {
+				headChanged.signal();
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return True if the calling thread is the one that releases held executions, false otherwise.
+	 */
+	boolean isReleaseThread() {
+		return Thread.currentThread()==releaseThread;
+	}
+	
+	/**
+	 * Drops every execution being held.
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			queue.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return The number of executions being held.
+	 */
+	int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Starts the thread that releases held executions. Must be called while holding the lock.
+	 */
+	private void start() {
+		releaseThread = new Thread() {
+			public void run() {
+				lock.lock();
+				try {
+					while(true) {
+						Runnable task = handedOver;
+						if(task!=null) {
+							lock.unlock();
+							try {
+								task.run();
+							} catch(RuntimeException e) {
+								System.err.println("Failed to run a cron job handed to the dispatch thread!");
+								e.printStackTrace();
+							} finally {
+								//The execution may have been cancelled by CANCEL_PREVIOUS, which must not stop this thread.
+								Thread.interrupted();
+								lock.lock();
+								handedOver = null;
+							}
+							continue;
+						}
+						Held head = queue.peek();
+						if(head==null) {
+							headChanged.await();
+							continue;
+						}
+						long wait = head.releaseMillis-DateTimeServices.getClock().millis();
+						if(wait>0) {
+							headChanged.awaitNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+							continue;
+						}
+						queue.poll();
+						lock.unlock();
+						try {
+							CronManager.release(head.job, head.dueMillis, head.metered);
+						} catch(RuntimeException e) {
+							System.err.println("Failed to release held cron job '"+head.job.getId()+"'!");
+							e.printStackTrace();
+						} finally {
+							//A saturated executor may have run the execution on this thread, see CronSaturationPolicy.CALLER_RUNS.
+							Thread.interrupted();
+							lock.lock();
+						}
+					}
+				} catch(InterruptedException e) {
+					System.err.println("Cron dispatch thread was interrupted!");
+					e.printStackTrace();
+				} finally {
+					lock.unlock();
+				}
+			}
+		};
+		releaseThread.setName("horae-dispatch");
+		releaseThread.setDaemon(true);
+		releaseThread.start();
+	}
+	
+	/**
+	 * An execution waiting to be released.
+	 */
+	private static class Held implements Comparable<Held> {
+		
+		private final CronJob job;
+		private final long dueMillis;
+		private final long releaseMillis;
+		private final boolean metered;
+		private final long sequence;
+		
+		private Held(CronJob job, long dueMillis, long releaseMillis, boolean metered, long sequence) {
+			this.job = job;
+			this.dueMillis = dueMillis;
+			this.releaseMillis = releaseMillis;
+			this.metered = metered;
+			this.sequence = sequence;
+		}
+		
+		@Override
+		public int compareTo(Held o) {
+			int c = Long.compare(releaseMillis, o.releaseMillis);
+			return c!=0 ? c : Long.compare(sequence, o.sequence);
+		}
+	
+	}
+
+}
@@ -0,0 +1,475 @@
+package net.aionstudios.horae;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import jdk.jfr.EventType;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Executes due {@link CronJob}s for the {@link CronManager}, applying each {@link CronJob}'s {@link CronOverlapPolicy} and, when bounded,
+ * a {@link CronSaturationPolicy} once every worker is busy and the queue is full.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronExecutor {
+	
+	private static final AtomicInteger executorCount = new AtomicInteger();
+	private static final EventType EXECUTION_EVENT = EventType.getEventType(CronJobExecutionEvent.class);
+	
+	private final ExecutorService workers;
+	private final CronSaturationPolicy saturationPolicy;
+	private final boolean virtual;
+	/* Caps the number of CronJobs running at once on virtual threads, or null for no cap. */
+	private final Semaphore permits;
+	/* Executions held aside by the COALESCE policy, at most one per job, until a worker frees up. */
+	private final Queue<Run> coalesced = new ConcurrentLinkedQueue<Run>();
+	/* The stages of AsyncCronJob executions that have started and not yet completed, so that they can be cancelled on shutdown. */
+	private final Set<CompletableFuture<Object>> inFlight = ConcurrentHashMap.newKeySet();
+	private volatile CronSaturationListener saturationListener;
+	
+	/**
+	 * Creates an unbounded {@link CronExecutor} that starts a new thread whenever every existing one is busy, as the {@link CronManager} always has.
+	 */
+	public CronExecutor() {
+		this(Executors.newCachedThreadPool(newThreadFactory()), false, 0);
+	}
+	
+	private CronExecutor(ExecutorService workers, boolean virtual, int maxConcurrency) {
+		this.workers = workers;
+		this.saturationPolicy = CronSaturationPolicy.REJECT;
+		this.virtual = virtual;
+		this.permits = maxConcurrency>0 ? new Semaphore(maxConcurrency) : null;
+	}
+	
+	/**
+	 * Creates a bounded {@link CronExecutor}.
+	 * 
+	 * @param poolSize The number of worker threads.
+	 * @param queueCapacity The number of due {@link CronJob}s that may wait for a worker before the executor is saturated.
+	 * @param saturationPolicy What to do with a due {@link CronJob} once the executor is saturated.
+	 */
+	public CronExecutor(int poolSize, int queueCapacity, CronSaturationPolicy saturationPolicy) {
+		if(poolSize<1||queueCapacity<1) {
+			throw new IllegalArgumentException("A bounded CronExecutor needs at least one worker and one queue slot");
+		}
+		this.workers = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), newThreadFactory()) {
+			@Override
+			protected void afterExecute(Runnable r, Throwable t) {
+				drainCoalesced();
+			}
+		};
+		this.saturationPolicy = saturationPolicy;
+		this.virtual = false;
+		this.permits = null;
+	}
+	
+	/**
+	 * Creates a {@link CronExecutor} that starts every execution on its own virtual thread, so that blocking {@link CronJob}s do not each hold an OS thread.
+	 * Virtual threads need Java 21 or later; on older runtimes this falls back to a pool of platform threads, with as many threads as
+	 * the limit allows and the rest waiting in an unbounded queue, or a thread for every waiting {@link CronJob} if there is no limit.
+	 * 
+	 * @param maxConcurrency The most {@link CronJob}s allowed to run at once, with the rest waiting their turn, or 0 for no limit.
+	 * @return The new {@link CronExecutor}.
+	 */
+	public static CronExecutor newVirtualThreadExecutor(int maxConcurrency) {
+		ExecutorService workers = newVirtualThreadPerTaskExecutor();
+		if(workers==null) {
+			if(maxConcurrency<=0) {
+				return new CronExecutor(Executors.newCachedThreadPool(newThreadFactory()), false, 0);
+			}
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory());
+			pool.allowCoreThreadTimeOut(true);
+			//The pool itself holds the limit, so no permits are needed on top of it.
+			return new CronExecutor(pool, false, 0);
+		}
+		return new CronExecutor(workers, true, maxConcurrency);
+	}
+	
+	/**
+	 * @return True if this {@link CronExecutor} runs {@link CronJob}s on virtual threads, false if it uses platform threads.
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+	
+	/**
+	 * Sets the callback notified whenever a due {@link CronJob} could not be queued.
+	 * 
+	 * @param saturationListener The {@link CronSaturationListener} to notify, or null for none.
+	 */
+	public void setSaturationListener(CronSaturationListener saturationListener) {
+		this.saturationListener = saturationListener;
+	}
+	
+	/**
+	 * @return The number of due {@link CronJob}s waiting for a worker, including any held aside by the {@link CronSaturationPolicy#COALESCE} policy.
+	 */
+	public int getQueueDepth() {
+		int depth = coalesced.size();
+		if(workers instanceof ThreadPoolExecutor) {
+			depth += ((ThreadPoolExecutor) workers).getQueue().size();
+		}
+		return depth;
+	}
+	
+	/**
+	 * Executes a due {@link CronJob}, subject to its {@link CronOverlapPolicy}.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due, from which its start lag is measured.
+	 */
+	void execute(CronJob j, long dueMillis) {
+		execute(j, dueMillis, dueMillis);
+	}
+	
+	/**
+	 * Executes a due {@link CronJob} that was meant to start some time after it fell due, subject to its {@link CronOverlapPolicy}.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param startMillis The time in epoch milliseconds at which the execution was meant to start, from which its start lag is measured.
+	 */
+	void execute(CronJob j, long dueMillis, long startMillis) {
+		execute(j, dueMillis, startMillis, 0L);
+	}
+	
+	/**
+	 * Executes a due {@link CronJob} claimed in a {@link CronCluster}, subject to its {@link CronOverlapPolicy}.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param startMillis The time in epoch milliseconds at which the execution was meant to start, from which its start lag is measured.
+	 * @param fencingToken The fencing token the execution was claimed under, see {@link CronJob#getFencingToken()}, or 0 for none.
+	 */
+	void execute(CronJob j, long dueMillis, long startMillis, long fencingToken) {
+		if(!j.acquireRun(dueMillis, fencingToken)) {
+			return;
+		}
+		submit(runFor(j, dueMillis, startMillis, fencingToken));
+	}
+	
+	/**
+	 * Prepares the task for an execution, reusing the one left by the last execution of the {@link CronJob} on this {@link CronExecutor}
+	 * when it has finished, so that a {@link CronJob} that finishes before it falls due again is executed without allocating.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param startMillis The time in epoch milliseconds at which the execution was meant to start.
+	 * @param fencingToken The fencing token the execution was claimed under.
+	 * @return The task, ready to submit.
+	 */
+	private Run runFor(CronJob j, long dueMillis, long startMillis, long fencingToken) {
+		Runnable spare = j.takeSpareTask();
+		Run r = spare instanceof Run&&((Run) spare).getExecutor()==this ? (Run) spare : new Run(j);
+		r.reset(dueMillis, startMillis, fencingToken);
+		return r;
+	}
+	
+	/**
+	 * @return The number of executions of {@link AsyncCronJob}s that have started and whose stages have not yet completed.
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+	
+	/**
+	 * Stops accepting {@link CronJob}s. Executions that have already started are left to finish, except those of {@link AsyncCronJob}s
+	 * still in flight, which are cancelled.
+	 */
+	void shutdown() {
+		workers.shutdown();
+		for(CompletableFuture<Object> stage : inFlight) {
+			stage.cancel(true);
+		}
+	}
+	
+	private void submit(Run r) {
+		try {
+			workers.execute(r);
+		} catch(RejectedExecutionException e) {
+			if(workers.isShutdown()) {
+				drop(r);
+				return;
+			}
+			saturated(r);
+		}
+	}
+	
+	private void saturated(Run r) {
+		CronSaturationListener listener = saturationListener;
+		if(listener!=null) {
+			listener.onSaturated(r.job, saturationPolicy);
+		}
+		switch(saturationPolicy) {
+		case CALLER_RUNS:
+			if(CronManager.isDispatchThread()) {
+				r.run(false);
+			} else if(!CronManager.handOver(r)) {
+				drop(r);
+			}
+			break;
+		case COALESCE:
+			if(r.job.markCoalesced()) {
+				coalesced.add(r);
+				//A worker may have freed up between the rejection and the job being held aside.
+				drainCoalesced();
+			} else {
+				drop(r);
+			}
+			break;
+		default:
+			drop(r);
+		}
+	}
+	
+	/**
+	 * Settles a claimed execution that will not be started.
+	 */
+	private void drop(Run r) {
+		CronMetrics.recordSkip(r.job);
+		r.job.releaseRun();
+		r.job.putSpareTask(r);
+	}
+	
+	/**
+	 * Moves coalesced executions onto the workers while there is room for them.
+	 */
+	private void drainCoalesced() {
+		Run r;
+		while((r = coalesced.peek())!=null) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) workers;
+			if(pool.getQueue().remainingCapacity()==0||!coalesced.remove(r)) {
+				return;
+			}
+			r.job.clearCoalesced();
+			try {
+				pool.execute(r);
+			} catch(RejectedExecutionException e) {
+				if(pool.isShutdown()) {
+					drop(r);
+					return;
+				}
+				r.job.markCoalesced();
+				coalesced.add(r);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Looks up the Java 21 virtual thread API reflectively so that the rest of Horae still runs on older runtimes.
+	 * 
+	 * @return An executor that starts a new virtual thread per task, or null if virtual threads are not available.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "horae-"+executorCount.incrementAndGet()+"-virtual-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	private static ThreadFactory newThreadFactory() {
+		final int executor = executorCount.incrementAndGet();
+		return new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "horae-"+executor+"-worker-"+threadCount.incrementAndGet());
+			}
+		};
+	}
+	
+	/**
+	 * An execution of a {@link CronJob}, which records its metrics and settles the {@link CronJob}'s overlap state once it finishes.
+	 * An execution of an {@link AsyncCronJob} finishes once its stage completes rather than once the worker returns. Once finished, the
+	 * task is handed back to the {@link CronJob} to be reset and submitted again for its next execution.
+	 */
+	private class Run implements Runnable {
+		
+		private final CronJob job;
+		private final CronJob.Runner runner;
+		private long dueMillis;
+		private long fencingToken;
+		/* The System.nanoTime at which the execution was meant to start, for measuring start lag more finely than the clock allows. */
+		private long dueNanos;
+		/* The System.nanoTime at which the execution was handed over, for measuring how long it waited for a worker. */
+		private long submittedNanos;
+		
+		private Run(CronJob job) {
+			this.job = job;
+			this.runner = new CronJob.Runner(job);
+		}
+		
+		/**
+		 * Prepares this task for a new execution. Must only be called before the task is submitted.
+		 * 
+		 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+		 * @param startMillis The time in epoch milliseconds at which the execution was meant to start.
+		 * @param fencingToken The fencing token the execution was claimed under.
+		 */
+		private void reset(long dueMillis, long startMillis, long fencingToken) {
+			this.dueMillis = dueMillis;
+			this.fencingToken = fencingToken;
+			this.submittedNanos = System.nanoTime();
+			this.dueNanos = submittedNanos-TimeUnit.MILLISECONDS.toNanos(DateTimeServices.getClock().millis()-startMillis);
+		}
+		
+		/**
+		 * @return The {@link CronExecutor} this task submits itself to.
+		 */
+		private CronExecutor getExecutor() {
+			return CronExecutor.this;
+		}
+		
+		@Override
+		public void run() {
+			run(true);
+		}
+		
+		/**
+		 * Runs this execution.
+		 * 
+		 * @param worker True if the execution was handed to a thread of its own, false if it runs inline on the thread that dispatched it.
+		 */
+		private void run(boolean worker) {
+			boolean permitted = false;
+			boolean failed = true;
+			long started = 0;
+			CronJobExecutionEvent event = EXECUTION_EVENT.isEnabled() ? new CronJobExecutionEvent() : null;
+			CompletableFuture<Object> stage = null;
+			try {
+				if(permits!=null) {
+					permits.acquire();
+				}
+				permitted = true;
+				runner.begin(fencingToken);
+				job.setRunner(runner);
+				CronManager.recordStart(job, dueMillis);
+				started = System.nanoTime();
+				CronMetrics.recordStart(job, started-dueNanos, started-submittedNanos);
+				if(event!=null) {
+					event.begin();
+				}
+				if(job instanceof AsyncCronJob) {
+					stage = ((AsyncCronJob) job).begin();
+				} else {
+					job.start();
+				}
+				failed = false;
+			} catch(InterruptedException e) {
+				//Interrupted while waiting for a permit, so this execution never started.
+				CronMetrics.recordSkip(job);
+			} catch(RuntimeException e) {
+				System.err.println("Cron job "+job.getId()+" failed!");
+				e.printStackTrace();
+			} finally {
+				if(permitted&&permits!=null) {
+					permits.release();
+				}
+				runner.end();
+				job.clearRunner(runner);
+				if(worker) {
+					//Clear any interrupt from CANCEL_PREVIOUS so it cannot leak into the next task on this worker.
+					Thread.interrupted();
+				}
+				if(stage==null) {
+					if(permitted) {
+						finish(started, event, failed);
+					}
+					settle();
+				}
+			}
+			if(stage!=null) {
+				await(stage, started, event);
+			}
+		}
+		
+		/**
+		 * Finishes this execution once the stage of an {@link AsyncCronJob} completes, without holding the worker until then.
+		 */
+		private void await(final CompletableFuture<Object> stage, final long started, final CronJobExecutionEvent event) {
+			inFlight.add(stage);
+			if(workers.isShutdown()) {
+				//Shut down while the stage was being started, possibly after the executions in flight were cancelled.
+				stage.cancel(true);
+			}
+			stage.whenComplete(new BiConsumer<Object, Throwable>() {
+				
+				@Override
+				public void accept(Object result, Throwable t) {
+					inFlight.remove(stage);
+					Throwable cause = t instanceof CompletionException&&t.getCause()!=null ? t.getCause() : t;
+					if(cause instanceof TimeoutException) {
+						System.err.println("Cron job "+job.getId()+" timed out!");
+					} else if(cause!=null&&!(cause instanceof CancellationException)) {
+						System.err.println("Cron job "+job.getId()+" failed!");
+						cause.printStackTrace();
+					}
+					finish(started, event, t!=null);
+					settle();
+				}
+				
+			});
+		}
+		
+		/**
+		 * Records the metrics and outcome of this execution once it is done.
+		 */
+		private void finish(long started, CronJobExecutionEvent event, boolean failed) {
+			CronMetrics.recordFinish(job, System.nanoTime()-started, failed);
+			if(event!=null) {
+				event.end();
+				if(event.shouldCommit()) {
+					event.jobId = job.getId();
+					event.lag = started-dueNanos;
+					event.queueWait = started-submittedNanos;
+					event.priority = job.getPriority().name();
+					event.failed = failed;
+					event.commit();
+				}
+			}
+			CronManager.recordOutcome(job, dueMillis, failed);
+		}
+		
+		/**
+		 * Settles the {@link CronJob}'s overlap state, submitting the execution queued behind this one if there is one.
+		 */
+		private void settle() {
+			if(job.finishRun()) {
+				long queued = job.getQueuedDueMillis();
+				reset(queued, queued+job.getCronDateTime().hashedOffsetOf(job), job.getQueuedFencingToken());
+				submit(this);
+			} else {
+				job.putSpareTask(this);
+			}
+		}
+	
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.aionstudios.horae;
+
+/**
+ * The outcome of the last execution of a {@link CronJob} recorded in a {@link CronJournal}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronFireOutcome {
+	
+	/**
+	 * The execution was started but no outcome was recorded, because it is still running or the process stopped before it finished.
+	 */
+	FIRED,
+	
+	/**
+	 * The execution finished normally.
+	 */
+	SUCCEEDED,
+	
+	/**
+	 * The execution threw.
+	 */
+	FAILED
+
+}
@@ -0,0 +1,47 @@
+package net.aionstudios.horae;
+
+/**
+ * The last execution of a {@link CronJob} recorded in a {@link CronJournal}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronFireRecord {
+	
+	private final String jobId;
+	private final long dueMillis;
+	private final CronFireOutcome outcome;
+	
+	CronFireRecord(String jobId, long dueMillis, CronFireOutcome outcome) {
+		this.jobId = jobId;
+		this.dueMillis = dueMillis;
+		this.outcome = outcome;
+	}
+	
+	/**
+	 * @return The id of the {@link CronJob}.
+	 */
+	public String getJobId() {
+		return jobId;
+	}
+	
+	/**
+	 * @return The time in epoch milliseconds at which the execution fell due.
+	 */
+	public long getDueMillis() {
+		return dueMillis;
+	}
+	
+	/**
+	 * @return The outcome of the execution.
+	 */
+	public CronFireOutcome getOutcome() {
+		return outcome;
+	}
+	
+	@Override
+	public String toString() {
+		return jobId+" due "+dueMillis+" "+outcome;
+	}
+
+}
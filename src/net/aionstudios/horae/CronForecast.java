@@ -0,0 +1,225 @@
+package net.aionstudios.horae;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+/**
+ * How many {@link CronJob}s are due to start in each minute of a stretch of time, and how many are expected to be running, as made by
+ * {@link CronManager#forecast(long, long)}. {@link CronJob}s that share a schedule are counted together and each schedule jumps
+ * straight from one permitted time to the next, so a forecast costs time in proportion to the number of distinct schedules and the
+ * number of times they permit rather than the number of {@link CronJob}s or minutes.
+ *
+ * Executions are placed at their offset into any {@link CronDateTime#setHashedWindow(int) hashed window}, but not held back by the
+ * {@link CronManager#setDispatchRateLimit(int) dispatch rate limit}. Each is expected to run for the mean duration of that
+ * {@link CronJob}'s executions so far, or for less than a minute if it has not finished one yet.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronForecast {
+	
+	private final long startMillis;
+	private final long[] fires;
+	private final long[] running;
+	private final long total;
+	
+	/**
+	 * @param jobs The {@link CronJob}s to forecast. Disabled {@link CronJob}s are left out.
+	 * @param fromMillis The time in epoch milliseconds from which to forecast, inclusive.
+	 * @param toMillis The time in epoch milliseconds up to which to forecast, exclusive.
+	 * @param clockZone The time zone {@link CronJob}s without a zone of their own are read in.
+	 */
+	CronForecast(CronJob[] jobs, long fromMillis, long toMillis, ZoneId clockZone) {
+		if(toMillis<=fromMillis) {
+			throw new IllegalArgumentException("Forecast must end after it starts");
+		}
+		startMillis = Math.floorDiv(fromMillis, 60000L)*60000L;
+		long minutes = Math.floorDiv(toMillis-startMillis+59999L, 60000L);
+		if(minutes>Integer.MAX_VALUE-1) {
+			throw new IllegalArgumentException("Forecast is too long");
+		}
+		fires = new long[(int) minutes];
+		long[] changes = new long[fires.length+1];
+		//Count each schedule's CronJobs by their offset into its hashed window, to the second, and by how many minutes they run for.
+		Map<CronSchedule, Map<Long, long[]>> loads = new HashMap<CronSchedule, Map<Long, long[]>>();
+		for(CronJob j : jobs) {
+			if(!j.isEnabled()) {
+				continue;
+			}
+			CronDateTime cdt = j.getCronDateTime();
+			Map<Long, long[]> load = loads.get(cdt.getSchedule());
+			if(load==null) {
+				load = new HashMap<Long, long[]>();
+				loads.put(cdt.getSchedule(), load);
+			}
+			long offsetSeconds = cdt.hashedOffsetOf(j)/1000L;
+			long runMinutes = Math.min(fires.length, Math.max(1L, (j.getMetrics().getMeanDuration()+59999999999L)/60000000000L));
+			Long key = offsetSeconds<<32|runMinutes;
+			long[] count = load.get(key);
+			if(count==null) {
+				load.put(key, new long[] {1L});
+			} else {
+				count[0]++;
+			}
+		}
+		long sum = 0;
+		for(Map.Entry<CronSchedule, Map<Long, long[]>> e : loads.entrySet()) {
+			int n = e.getValue().size();
+			long[] offsets = new long[n];
+			int[] runs = new int[n];
+			long[] counts = new long[n];
+			long maxOffset = 0;
+			int i = 0;
+			for(Map.Entry<Long, long[]> load : e.getValue().entrySet()) {
+				offsets[i] = (load.getKey()>>>32)*1000L;
+				runs[i] = (int) (load.getKey()&0xFFFFFFFFL);
+				counts[i] = load.getValue()[0];
+				maxOffset = Math.max(maxOffset, offsets[i]);
+				i++;
+			}
+			PrimitiveIterator.OfLong times = e.getKey().executionsBetween(fromMillis-maxOffset, toMillis, clockZone);
+			while(times.hasNext()) {
+				long t = times.nextLong();
+				for(i = 0; i < n; i++) {
+					long at = t+offsets[i];
+					if(at>=fromMillis&&at<toMillis) {
+						int minute = (int) ((at-startMillis)/60000L);
+						fires[minute] += counts[i];
+						changes[minute] += counts[i];
+						changes[Math.min(minute+runs[i], fires.length)] -= counts[i];
+						sum += counts[i];
+					}
+				}
+			}
+		}
+		running = new long[fires.length];
+		long r = 0;
+		for(int i = 0; i < running.length; i++) {
+			r += changes[i];
+			running[i] = r;
+		}
+		total = sum;
+	}
+	
+	/**
+	 * @return The time in epoch milliseconds at which the first minute of this forecast begins.
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+	
+	/**
+	 * @return The number of minutes this forecast covers.
+	 */
+	public int getMinutes() {
+		return fires.length;
+	}
+	
+	/**
+	 * @return The number of executions due to start across the whole forecast.
+	 */
+	public long getTotalFires() {
+		return total;
+	}
+	
+	/**
+	 * @param minute A minute of this forecast, counted from 0.
+	 * @return The number of executions due to start in that minute.
+	 */
+	public long getFires(int minute) {
+		return fires[minute];
+	}
+	
+	/**
+	 * @param millis A time in epoch milliseconds.
+	 * @return The number of executions due to start in the minute containing that time, or 0 if it is outside this forecast.
+	 */
+	public long getFiresAt(long millis) {
+		long minute = Math.floorDiv(millis-startMillis, 60000L);
+		return minute>=0&&minute<fires.length ? fires[(int) minute] : 0L;
+	}
+	
+	/**
+	 * @return The number of executions due to start in each minute of this forecast. The array is a copy and may be changed freely.
+	 */
+	public long[] getFiresPerMinute() {
+		return fires.clone();
+	}
+	
+	/**
+	 * @param minute A minute of this forecast, counted from 0.
+	 * @return The number of executions expected to be running at some point in that minute.
+	 */
+	public long getRunning(int minute) {
+		return running[minute];
+	}
+	
+	/**
+	 * @return The most executions due to start in any one minute. {@link CronJob}s that are not scheduled to the second and have no hashed
+	 * window all start on the same instant at the top of the minute.
+	 */
+	public long getPeakFires() {
+		long peak = 0;
+		for(long f : fires) {
+			peak = Math.max(peak, f);
+		}
+		return peak;
+	}
+	
+	/**
+	 * @return The most executions expected to be running at once in any one minute, which is the number of workers the
+	 * {@link CronExecutor} needs to start every {@link CronJob} on time.
+	 */
+	public long getPeakConcurrency() {
+		long peak = 0;
+		for(long r : running) {
+			peak = Math.max(peak, r);
+		}
+		return peak;
+	}
+	
+	/**
+	 * @param count The number of minutes to return.
+	 * @return The times in epoch milliseconds at which the busiest minutes with any executions begin, busiest first, and in order of
+	 * time among minutes that are equally busy.
+	 */
+	public long[] getHotMinutes(int count) {
+		PriorityQueue<Integer> hottest = new PriorityQueue<Integer>(Math.max(1, count), new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = Long.compare(fires[a], fires[b]);
+				return c!=0 ? c : Integer.compare(b, a);
+			}
+
+		});
+		for(int i = 0; i < fires.length&&count>0; i++) {
+			if(fires[i]==0) {
+				continue;
+			}
+			if(hottest.size()<count) {
+				hottest.add(i);
+			} else if(hottest.comparator().compare(i, hottest.peek())>0) {
+				hottest.poll();
+				hottest.add(i);
+			}
+		}
+		long[] hot = new long[hottest.size()];
+		for(int i = hot.length-1; i >= 0; i--) {
+			hot[i] = startMillis+hottest.poll()*60000L;
+		}
+		return hot;
+	}
+	
+	@Override
+	public String toString() {
+		long[] hot = getHotMinutes(5);
+		return "minutes="+fires.length+" fires="+total+" peakFires="+getPeakFires()+" peakConcurrency="+getPeakConcurrency()+" hot="+Arrays.toString(hot);
+	}
+
+}
@@ -0,0 +1,90 @@
+package net.aionstudios.horae;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring over the members of a {@link CronCluster}. Each member is placed at many points on the ring and each
+ * {@link CronJob} belongs to the member at the first point at or after its own position, so that a member joining or leaving moves
+ * only the {@link CronJob}s that it takes on or gives up.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronHashRing {
+	
+	private final List<String> members;
+	private final long[] points;
+	private final int[] owners;
+	
+	/**
+	 * @param members The ids of the members.
+	 * @param virtualNodes The number of points each member is placed at.
+	 */
+	CronHashRing(List<String> members, int virtualNodes) {
+		Map<Long, Integer> ring = new TreeMap<Long, Integer>();
+		for(int m = 0; m < members.size(); m++) {
+			for(int v = 0; v < virtualNodes; v++) {
+				ring.put(hash(members.get(m)+"#"+v), m);
+			}
+		}
+		this.members = members;
+		this.points = new long[ring.size()];
+		this.owners = new int[ring.size()];
+		int i = 0;
+		for(Map.Entry<Long, Integer> point : ring.entrySet()) {
+			points[i] = point.getKey();
+			owners[i] = point.getValue();
+			i++;
+		}
+	}
+	
+	/**
+	 * @param position A position on the ring, as given by {@link #hash(String)}.
+	 * @return The index among the members of the member that owns the position, or -1 if there are no members.
+	 */
+	int ownerOf(long position) {
+		if(points.length==0) {
+			return -1;
+		}
+		int low = 0;
+		int high = points.length;
+		while(low<high) {
+			int mid = (low+high)>>>1;
+			if(points[mid]<position) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		return owners[low==points.length ? 0 : low];
+	}
+	
+	/**
+	 * @return The ids of the members, in the order their indices refer to.
+	 */
+	List<String> getMembers() {
+		return members;
+	}
+	
+	/**
+	 * @param key A {@link CronJob} or member id.
+	 * @return The position of the key on the ring.
+	 */
+	static long hash(String key) {
+		//FNV-1a, then the MurmurHash3 finalizer to spread ids that differ only in their last characters.
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h>>>33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h>>>33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h>>>33;
+		return h;
+	}
+
+}
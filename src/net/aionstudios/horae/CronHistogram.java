@@ -0,0 +1,116 @@
+package net.aionstudios.horae;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative durations in nanoseconds, or of other non-negative values in a unit of their own. Values are counted in log-linear buckets: each power of two is split
+ * into 2^precisionBits buckets of equal width, so that every recorded value is known to within a fixed fraction of itself, however
+ * large it is. Recording is a handful of uncontended atomic increments and never allocates.
+ * 
+ * @author Winter Roberts
+ *
+ */
+final class CronHistogram {
+	
+	/* The highest power of two with buckets of its own; larger values are counted in the last bucket. */
+	private static final int MAX_EXPONENT = 62;
+	
+	private final int precisionBits;
+	private final String unit;
+	private final AtomicLongArray counts;
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * @param precisionBits The number of bits of each value that are kept, from 0 for one bucket per power of two to 6 for 64.
+	 */
+	CronHistogram(int precisionBits) {
+		this(precisionBits, "ns");
+	}
+	
+	/**
+	 * @param precisionBits The number of bits of each value that are kept, from 0 for one bucket per power of two to 6 for 64.
+	 * @param unit The unit of the recorded values, as shown after each of them.
+	 */
+	CronHistogram(int precisionBits, String unit) {
+		this.precisionBits = precisionBits;
+		this.unit = unit;
+		this.counts = new AtomicLongArray(bucketCount(precisionBits));
+	}
+	
+	/**
+	 * @param nanos The duration to record, with negative values counted as 0.
+	 */
+	void record(long nanos) {
+		if(nanos<0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketOf(nanos, precisionBits));
+		sum.add(nanos);
+		long m;
+		while(nanos>(m = max.get())&&!max.compareAndSet(m, nanos)) {
+			//Lost a race with another thread raising the maximum; check again against its value.
+		}
+	}
+	
+	/**
+	 * @return The sum of every value recorded so far.
+	 */
+	long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * @return A copy of the counts recorded so far. Values recorded while the copy is taken may or may not be included.
+	 */
+	CronHistogramSnapshot snapshot() {
+		long[] copy = new long[counts.length()];
+		long count = 0;
+		for(int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		return new CronHistogramSnapshot(precisionBits, unit, copy, count, sum.sum(), max.get());
+	}
+	
+	/**
+	 * @param precisionBits The number of bits of each value that are kept.
+	 * @return The number of buckets needed to count every non-negative long at that precision.
+	 */
+	static int bucketCount(int precisionBits) {
+		return (MAX_EXPONENT-precisionBits+2)<<precisionBits;
+	}
+	
+	/**
+	 * @param value A non-negative value.
+	 * @param precisionBits The number of bits of each value that are kept.
+	 * @return The bucket the value is counted in.
+	 */
+	static int bucketOf(long value, int precisionBits) {
+		int subBuckets = 1<<precisionBits;
+		if(value<subBuckets) {
+			return (int) value;
+		}
+		int shift = Math.min(63-Long.numberOfLeadingZeros(value), MAX_EXPONENT)-precisionBits;
+		int sub = (int) Math.min(value>>>shift, 2*subBuckets-1)-subBuckets;
+		return ((shift+1)<<precisionBits)+sub;
+	}
+	
+	/**
+	 * @param bucket A bucket index.
+	 * @param precisionBits The number of bits of each value that are kept.
+	 * @return The highest value counted in the bucket.
+	 */
+	static long highestValueIn(int bucket, int precisionBits) {
+		int subBuckets = 1<<precisionBits;
+		if(bucket<subBuckets) {
+			return bucket;
+		}
+		int shift = (bucket>>>precisionBits)-1;
+		long next = (long) (subBuckets+(bucket&(subBuckets-1))+1)<<shift;
+		return next<=0 ? Long.MAX_VALUE : next-1;
+	}
+
+}
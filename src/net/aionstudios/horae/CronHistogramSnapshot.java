@@ -0,0 +1,106 @@
+package net.aionstudios.horae;
+
+/**
+ * A point-in-time copy of a histogram of durations kept by {@link CronMetrics}. Every duration is in nanoseconds, and percentiles are
+ * accurate to within the width of the bucket they fall in, which is at most an eighth of the value. A single {@link CronJob} only keeps
+ * the count and mean of its durations, so its percentiles and maximum read 0. The one histogram that is not of durations,
+ * {@link CronMetricsSnapshot#getFiresPerSecond()}, counts executions instead of nanoseconds but is otherwise read the same way.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronHistogramSnapshot {
+	
+	private final int precisionBits;
+	private final String unit;
+	private final long[] counts;
+	private final long count;
+	private final long sum;
+	private final long max;
+	
+	CronHistogramSnapshot(int precisionBits, String unit, long[] counts, long count, long sum, long max) {
+		this.precisionBits = precisionBits;
+		this.unit = unit;
+		this.counts = counts;
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+	}
+	
+	/**
+	 * @param count The number of durations recorded.
+	 * @param sum The sum of the recorded durations in nanoseconds.
+	 * @return A copy of a count and mean kept without a histogram, with no percentiles or maximum.
+	 */
+	static CronHistogramSnapshot ofMean(long count, long sum) {
+		return new CronHistogramSnapshot(0, "ns", new long[0], count, sum, 0L);
+	}
+	
+	/**
+	 * @return The number of durations recorded.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * @return The mean of the recorded durations in nanoseconds, or 0 if none have been recorded.
+	 */
+	public long getMean() {
+		return count==0 ? 0 : sum/count;
+	}
+	
+	/**
+	 * @return The longest recorded duration in nanoseconds, or 0 if none have been recorded or only the mean was kept.
+	 */
+	public long getMax() {
+		return max;
+	}
+	
+	/**
+	 * @return The median recorded duration in nanoseconds.
+	 */
+	public long getP50() {
+		return getValueAtPercentile(50.0);
+	}
+	
+	/**
+	 * @return The 90th percentile of the recorded durations in nanoseconds.
+	 */
+	public long getP90() {
+		return getValueAtPercentile(90.0);
+	}
+	
+	/**
+	 * @return The 99th percentile of the recorded durations in nanoseconds.
+	 */
+	public long getP99() {
+		return getValueAtPercentile(99.0);
+	}
+	
+	/**
+	 * @param percentile A percentile from 0 to 100.
+	 * @return The duration in nanoseconds that the given percentage of recorded durations are at or below, or 0 if none have been recorded
+	 * or only the mean was kept.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if(count==0||counts.length==0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile))/100.0*count));
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen>=rank) {
+				return Math.min(CronHistogram.highestValueIn(i, precisionBits), max);
+			}
+		}
+		return max;
+	}
+	
+	@Override
+	public String toString() {
+		return "count="+count+" mean="+getMean()+unit+" p50="+getP50()+unit+" p99="+getP99()+unit+" max="+max+unit;
+	}
+
+}
@@ -1,92 +1,526 @@
-package net.aionstudios.horae;
-
-/**
- * A class containing a method to be run at times specified by a {@link CronDateTime}.
- * 
- * @author Winter Roberts
- *
- */
-public abstract class CronJob {
-	
-	private CronDateTime cdt;
-	private boolean enabled = true;
-	
-	/**
-	 * Creates a new {@link CronJob}.
-	 * 
-	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link CronJob}.
-	 */
-	public CronJob(CronDateTime cdt) {
-		this.cdt = cdt;
-	}
-	
-	/**
-	 * Sets the {@link CronDateTime} of this {@link CronJob}
-	 * 
-	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link CronJob}.
-	 */
-	public void setCronDateTime(CronDateTime cdt) {
-		this.cdt = cdt;
-	}
-	
-	/**
-	 * @return The {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob}.
-	 */
-	public CronDateTime getCronDateTime() {
-		return cdt;
-	}
-	
-	/**
-	 * @return True if the {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob} matches the current system time, false otherwise.
-	 */
-	public boolean cronMatchesNow() {
-		return cdt.matchesNow();
-	}
-	
-	/**
-	 * @param min The minute to check against.
-	 * @param hour The hour to check against.
-	 * @param dom The day of the month to check against.
-	 * @param month The month to check against.
-	 * @param dow The day of the week to check against.
-	 * @param year The year to check against.
-	 * @return True if the provided system time matches with the sets in the {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob}, false otherwise.
-	 */
-	public boolean cronMatches(int min, int hour, int dom, int month, int dow, int year) {
-		return cdt.matches(min, hour, dom, month, dow, year);
-	}
-	
-	/**
-	 * Starts this {@link CronJob} so that it can execute on the schedule as defined by its associated {@link CronDateTime}.
-	 */
-	public void start() {
-		run();
-	}
-	
-	/**
-	 * A method that is called in enabled {@link CronJob}s when the cron thread determines that the present system time warrants execution of this {@link CronJob}.
-	 */
-	public abstract void run();
-	
-	/**
-	 * Enables this {@link CronJob}.
-	 */
-	public void enable() {
-		enabled = true;
-	}
-	
-	/**
-	 * Disables this {@link CronJob}.
-	 */
-	public void disable() {
-		enabled = false;
-	}
-	
-	/**
-	 * @return True if this {@link CronJob} is enabled, false otherwise.
-	 */
-	public boolean isEnabled() {
-		return enabled;
-	}
-
-}
+package net.aionstudios.horae;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import net.aionstudios.horae.service.CronInstant;
+
+/**
+ * A class containing a method to be run at times specified by a {@link CronDateTime}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public abstract class CronJob {
+	
+	private static final AtomicLong sequence = new AtomicLong();
+	/* The run state packs the number of executions started but not finished with two flags. */
+	private static final int QUEUED = 1<<30;
+	private static final int COALESCED = 1<<29;
+	private static final int RUN_COUNT = COALESCED-1;
+	private static final AtomicReferenceFieldUpdater<CronJob, Runnable> SPARE_TASK =
+			AtomicReferenceFieldUpdater.newUpdater(CronJob.class, Runnable.class, "spareTask");
+	/* The execution running on each thread, from which it reads its own fencing token. */
+	private static final ThreadLocal<Runner> CURRENT_RUNNER = new ThreadLocal<Runner>();
+	
+	private final String id;
+	/* True if the id was made up from the class name, and so may differ from one JVM to the next. */
+	private final boolean generatedId;
+	/* Where the id falls on a CronHashRing, worked out once so that claiming an execution in a CronCluster does not hash the id. */
+	private final long ringPosition;
+	private volatile CronDateTime cdt;
+	private volatile boolean enabled = true;
+	private volatile boolean registered = false;
+	private volatile CronOverlapPolicy overlapPolicy = CronOverlapPolicy.ALLOW_CONCURRENT;
+	private volatile CronMisfirePolicy misfirePolicy = CronMisfirePolicy.FIRE_ONCE_NOW;
+	private volatile CronPriority priority = CronPriority.NORMAL;
+	private volatile int maxMissedExecutions = 60;
+	private final AtomicInteger runState = new AtomicInteger();
+	/* The latest execution to start, which CANCEL_PREVIOUS interrupts. */
+	private final AtomicReference<Runner> runner = new AtomicReference<Runner>();
+	/* When the execution held by QUEUE_ONE fell due, in epoch milliseconds, and the fencing token it was claimed under. */
+	private volatile long queuedDueMillis;
+	private volatile long queuedFencingToken;
+	/* Executions due before this time, in epoch milliseconds, were already handled before a restart. */
+	private volatile long resumeMillis = Long.MIN_VALUE;
+	/* The task of an execution that has finished, kept so that the CronExecutor can submit it again rather than allocate a new one. */
+	private volatile Runnable spareTask;
+	private final CronJobMetrics metrics = new CronJobMetrics();
+	
+	/**
+	 * Creates a new {@link CronJob} with an id generated from its class name and the order in which {@link CronJob}s are created. Such
+	 * an id may differ between runs and nodes, so a {@link CronJob} shared by a {@link CronCluster} must be given an id of its own.
+	 * 
+	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link CronJob}.
+	 */
+	public CronJob(CronDateTime cdt) {
+		this.id = getClass().getName()+"#"+sequence.incrementAndGet();
+		this.generatedId = true;
+		this.ringPosition = CronHashRing.hash(id);
+		this.cdt = cdt;
+	}
+	
+	/**
+	 * Creates a new {@link CronJob}.
+	 * 
+	 * @param id The id by which this {@link CronJob} is known to the {@link CronManager}, unique among registered {@link CronJob}s.
+	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link CronJob}.
+	 */
+	public CronJob(String id, CronDateTime cdt) {
+		this.id = id;
+		this.generatedId = false;
+		this.ringPosition = CronHashRing.hash(id);
+		this.cdt = cdt;
+	}
+	
+	/**
+	 * @return The id by which this {@link CronJob} is known to the {@link CronManager}.
+	 */
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * Sets the {@link CronDateTime} of this {@link CronJob}, rescheduling it with the {@link CronManager} if it has been registered.
+	 * Changes made directly to a {@link CronDateTime} that is already in use take effect once it is set again through this method.
+	 * 
+	 * @param cdt The {@link CronDateTime} to define scheduling for the execution of this {@link CronJob}.
+	 */
+	public void setCronDateTime(CronDateTime cdt) {
+		this.cdt = cdt;
+		if(registered) {
+			CronManager.rescheduleJob(this);
+		}
+	}
+	
+	/**
+	 * @return The {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob}.
+	 */
+	public CronDateTime getCronDateTime() {
+		return cdt;
+	}
+	
+	/**
+	 * @return True if the {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob} matches the current system time, false otherwise.
+	 */
+	public boolean cronMatchesNow() {
+		return cdt.matchesNow();
+	}
+	
+	/**
+	 * @param min The minute to check against.
+	 * @param hour The hour to check against.
+	 * @param dom The day of the month to check against.
+	 * @param month The month to check against.
+	 * @param dow The day of the week to check against.
+	 * @param year The year to check against.
+	 * @return True if the provided system time matches with the sets in the {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob}, false otherwise.
+	 */
+	public boolean cronMatches(int min, int hour, int dom, int month, int dow, int year) {
+		return cdt.matches(min, hour, dom, month, dow, year);
+	}
+	
+	/**
+	 * @param instant The {@link CronInstant} to check against.
+	 * @return True if the provided time matches with the sets in the {@link CronDateTime} that defines scheduling for the execution of this {@link CronJob}, false otherwise.
+	 */
+	public boolean cronMatches(CronInstant instant) {
+		return cdt.matches(instant);
+	}
+	
+	/**
+	 * Starts this {@link CronJob} so that it can execute on the schedule as defined by its associated {@link CronDateTime}.
+	 */
+	public void start() {
+		run();
+	}
+	
+	/**
+	 * A method that is called in enabled {@link CronJob}s when the cron thread determines that the present system time warrants execution of this {@link CronJob}.
+	 */
+	public abstract void run();
+	
+	/**
+	 * Marks whether this {@link CronJob} has been registered with the {@link CronManager}.
+	 * 
+	 * @param registered True if this {@link CronJob} is registered, false otherwise.
+	 */
+	void setRegistered(boolean registered) {
+		this.registered = registered;
+	}
+	
+	/**
+	 * Sets what happens when this {@link CronJob} falls due while a previous execution of it is still running.
+	 * 
+	 * @param overlapPolicy The {@link CronOverlapPolicy} to apply.
+	 */
+	public void setOverlapPolicy(CronOverlapPolicy overlapPolicy) {
+		this.overlapPolicy = overlapPolicy;
+	}
+	
+	/**
+	 * @return What happens when this {@link CronJob} falls due while a previous execution of it is still running.
+	 */
+	public CronOverlapPolicy getOverlapPolicy() {
+		return overlapPolicy;
+	}
+	
+	/**
+	 * Sets how urgently this {@link CronJob} is executed relative to others due at the same time, regrouping it with the
+	 * {@link CronManager} if it has been registered.
+	 * 
+	 * @param priority The {@link CronPriority} to execute this {@link CronJob} at.
+	 */
+	public void setPriority(CronPriority priority) {
+		if(priority==null) {
+			throw new IllegalArgumentException("Priority must not be null");
+		}
+		if(this.priority==priority) {
+			return;
+		}
+		this.priority = priority;
+		if(registered) {
+			CronManager.rescheduleJob(this);
+		}
+	}
+	
+	/**
+	 * @return How urgently this {@link CronJob} is executed relative to others due at the same time.
+	 */
+	public CronPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Sets what happens when the {@link CronManager} finds that this {@link CronJob} missed executions because the cron thread was held up.
+	 * 
+	 * @param misfirePolicy The {@link CronMisfirePolicy} to apply.
+	 */
+	public void setMisfirePolicy(CronMisfirePolicy misfirePolicy) {
+		this.misfirePolicy = misfirePolicy;
+	}
+	
+	/**
+	 * @return What happens when the {@link CronManager} finds that this {@link CronJob} missed executions because the cron thread was held up.
+	 */
+	public CronMisfirePolicy getMisfirePolicy() {
+		return misfirePolicy;
+	}
+	
+	/**
+	 * Sets the most missed executions that are replayed at once under the {@link CronMisfirePolicy#FIRE_ALL_MISSED} policy. Any beyond this are dropped.
+	 * 
+	 * @param maxMissedExecutions The most missed executions to replay, at least 1.
+	 */
+	public void setMaxMissedExecutions(int maxMissedExecutions) {
+		if(maxMissedExecutions<1) {
+			throw new IllegalArgumentException("At least one missed execution must be replayed");
+		}
+		this.maxMissedExecutions = maxMissedExecutions;
+	}
+	
+	/**
+	 * @return The most missed executions that are replayed at once under the {@link CronMisfirePolicy#FIRE_ALL_MISSED} policy.
+	 */
+	public int getMaxMissedExecutions() {
+		return maxMissedExecutions;
+	}
+	
+	/**
+	 * @return True if an execution of this {@link CronJob} has been started or queued and has not yet finished, false otherwise.
+	 */
+	public boolean isRunning() {
+		return (runState.get()&RUN_COUNT)!=0;
+	}
+	
+	/**
+	 * Claims a new execution of this {@link CronJob} according to its {@link CronOverlapPolicy}.
+	 * 
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param fencingToken The fencing token the execution was claimed under, kept with it if it is queued.
+	 * @return True if the execution should be submitted now, false if it was dropped or queued behind the running one.
+	 */
+	boolean acquireRun(long dueMillis, long fencingToken) {
+		switch(overlapPolicy) {
+		case SKIP_IF_RUNNING:
+			if(runState.compareAndSet(0, 1)) {
+				return true;
+			}
+			CronMetrics.recordSkip(this);
+			return false;
+		case QUEUE_ONE:
+			while(true) {
+				int s = runState.get();
+				if(s==0) {
+					if(runState.compareAndSet(0, 1)) {
+						return true;
+					}
+				} else if((s&QUEUED)==0) {
+					//Written before the flag, so that whoever clears the flag sees it.
+					queuedDueMillis = dueMillis;
+					queuedFencingToken = fencingToken;
+					if(runState.compareAndSet(s, s|QUEUED)) {
+						return false;
+					}
+				} else {
+					CronMetrics.recordSkip(this);
+					return false;
+				}
+			}
+		case CANCEL_PREVIOUS:
+			cancelRunning();
+			runState.incrementAndGet();
+			return true;
+		default:
+			runState.incrementAndGet();
+			return true;
+		}
+	}
+	
+	/**
+	 * Stops the execution of this {@link CronJob} that is running, if any, for {@link CronOverlapPolicy#CANCEL_PREVIOUS}.
+	 */
+	void cancelRunning() {
+		Runner previous = runner.get();
+		if(previous!=null) {
+			previous.interrupt();
+		}
+	}
+	
+	/**
+	 * @return When the execution held behind the running one by {@link CronOverlapPolicy#QUEUE_ONE} fell due, in epoch milliseconds.
+	 */
+	long getQueuedDueMillis() {
+		return queuedDueMillis;
+	}
+	
+	/**
+	 * @return The fencing token the execution held behind the running one by {@link CronOverlapPolicy#QUEUE_ONE} was claimed under.
+	 */
+	long getQueuedFencingToken() {
+		return queuedFencingToken;
+	}
+	
+	/**
+	 * Marks executions due before a time as already handled, so that they are not dispatched again after a restart.
+	 * 
+	 * @param resumeMillis The time in epoch milliseconds from which executions are dispatched.
+	 */
+	void setResumeMillis(long resumeMillis) {
+		this.resumeMillis = resumeMillis;
+	}
+	
+	/**
+	 * @return The time in epoch milliseconds before which due executions were already handled before a restart.
+	 */
+	long getResumeMillis() {
+		return resumeMillis;
+	}
+	
+	/**
+	 * Settles the state of an execution of this {@link CronJob} that has finished.
+	 * 
+	 * @return True if an execution was queued behind this one and should be submitted now, false otherwise.
+	 */
+	boolean finishRun() {
+		while(true) {
+			int s = runState.get();
+			if((s&QUEUED)!=0) {
+				if(runState.compareAndSet(s, s&~QUEUED)) {
+					return true;
+				}
+			} else if(runState.compareAndSet(s, s-1)) {
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Settles the state of an execution of this {@link CronJob} that was claimed but could not be started, dropping any queued behind it.
+	 */
+	void releaseRun() {
+		while(true) {
+			int s = runState.get();
+			if(runState.compareAndSet(s, (s&~QUEUED)-1)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @return True if this {@link CronJob} was not already held aside by a saturated {@link CronExecutor} and now is, false otherwise.
+	 */
+	boolean markCoalesced() {
+		while(true) {
+			int s = runState.get();
+			if((s&COALESCED)!=0) {
+				return false;
+			}
+			if(runState.compareAndSet(s, s|COALESCED)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Marks this {@link CronJob} as no longer held aside by a saturated {@link CronExecutor}.
+	 */
+	void clearCoalesced() {
+		while(true) {
+			int s = runState.get();
+			if(runState.compareAndSet(s, s&~COALESCED)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Takes the task left by an execution of this {@link CronJob} that has finished, so that only one execution can reuse it.
+	 * 
+	 * @return The task, or null if there is none because this {@link CronJob} has not finished an execution yet or every task it had is in use.
+	 */
+	Runnable takeSpareTask() {
+		return SPARE_TASK.getAndSet(this, null);
+	}
+	
+	/**
+	 * Keeps the task of an execution that has finished for the next execution to reuse, in place of any already kept.
+	 * 
+	 * @param task The task, which must no longer be in use.
+	 */
+	void putSpareTask(Runnable task) {
+		spareTask = task;
+	}
+	
+	/**
+	 * In a {@link CronCluster}, the membership epoch under which this node claimed the execution of this {@link CronJob} that is running
+	 * on the calling thread. The token only ever increases across the cluster, so a resource that remembers the highest token it has seen
+	 * can refuse writes carrying a lower one, which come from a node that has since lost this {@link CronJob} to another. Each execution
+	 * keeps the token it was claimed under, however many others have been claimed since, so it must be read from within {@link #run()},
+	 * or from {@link AsyncCronJob#runAsync()} before it returns and carried into the stage from there.
+	 * 
+	 * @return The fencing token of the execution running on the calling thread, or 0 if this {@link CronJob} is not being executed on it
+	 * or was not claimed in a {@link CronCluster}.
+	 */
+	public long getFencingToken() {
+		Runner r = CURRENT_RUNNER.get();
+		return r!=null&&r.job==this ? r.fencingToken : 0L;
+	}
+	
+	/**
+	 * @return True if the id of this {@link CronJob} was generated rather than given, and so may differ between runs and nodes.
+	 */
+	boolean hasGeneratedId() {
+		return generatedId;
+	}
+	
+	/**
+	 * @return Where the id of this {@link CronJob} falls on a {@link CronHashRing}.
+	 */
+	long getRingPosition() {
+		return ringPosition;
+	}
+	
+	/**
+	 * @return The counters {@link CronMetrics} keeps for this {@link CronJob}.
+	 */
+	CronJobMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @param runner The {@link Runner} of the execution of this {@link CronJob} that has just started.
+	 */
+	void setRunner(Runner runner) {
+		this.runner.set(runner);
+	}
+	
+	/**
+	 * Forgets the {@link Runner} of an execution of this {@link CronJob} that has finished, unless a newer execution has started since.
+	 * 
+	 * @param runner The {@link Runner} of the execution that has finished.
+	 */
+	void clearRunner(Runner runner) {
+		this.runner.compareAndSet(runner, null);
+	}
+	
+	/**
+	 * Enables this {@link CronJob}.
+	 */
+	public void enable() {
+		enabled = true;
+	}
+	
+	/**
+	 * Disables this {@link CronJob}.
+	 */
+	public void disable() {
+		enabled = false;
+	}
+	
+	/**
+	 * @return True if this {@link CronJob} is enabled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Tracks the thread running an execution of a {@link CronJob}, so that {@link CronOverlapPolicy#CANCEL_PREVIOUS} interrupts the
+	 * thread only while it is still running that execution, and never whatever the thread goes on to run next.
+	 */
+	static final class Runner {
+		
+		private final CronJob job;
+		private Thread thread;
+		private long fencingToken;
+		/* The Runner this one was started inside of on the same thread, put back once it ends. */
+		private Runner outer;
+		
+		/**
+		 * @param job The {@link CronJob} whose executions this {@link Runner} runs.
+		 */
+		Runner(CronJob job) {
+			this.job = job;
+		}
+		
+		/**
+		 * Marks the execution as started on the calling thread, which it is current on until it ends.
+		 * 
+		 * @param fencingToken The fencing token the execution was claimed under.
+		 */
+		synchronized void begin(long fencingToken) {
+			this.thread = Thread.currentThread();
+			this.fencingToken = fencingToken;
+			outer = CURRENT_RUNNER.get();
+			CURRENT_RUNNER.set(this);
+		}
+		
+		/**
+		 * Marks the execution as finished. An interrupt can no longer arrive through this {@link Runner} once this returns, so the
+		 * thread may clear its interrupted status before it runs anything else. Must be called from the thread that began it, and does
+		 * nothing if the execution never began.
+		 */
+		synchronized void end() {
+			if(thread==null) {
+				return;
+			}
+			thread = null;
+			CURRENT_RUNNER.set(outer);
+			outer = null;
+		}
+		
+		/**
+		 * Interrupts the thread running the execution, if it has not finished.
+		 */
+		synchronized void interrupt() {
+			if(thread!=null) {
+				thread.interrupt();
+			}
+		}
+		
+	}
+
+}
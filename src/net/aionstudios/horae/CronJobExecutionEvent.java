@@ -0,0 +1,43 @@
+package net.aionstudios.horae;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event spanning one execution of a {@link CronJob}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@Name("net.aionstudios.horae.JobExecution")
+@Label("Cron Job Execution")
+@Category("Horae")
+@Description("One execution of a cron job on the executor")
+@StackTrace(false)
+class CronJobExecutionEvent extends Event {
+	
+	@Label("Job Id")
+	String jobId;
+	
+	@Label("Start Lag")
+	@Description("How long after it was due the execution started")
+	@Timespan(Timespan.NANOSECONDS)
+	long lag;
+	
+	@Label("Queue Wait")
+	@Description("How long the execution waited for a worker after being handed to the executor")
+	@Timespan(Timespan.NANOSECONDS)
+	long queueWait;
+	
+	@Label("Priority")
+	String priority;
+	
+	@Label("Failed")
+	boolean failed;
+
+}
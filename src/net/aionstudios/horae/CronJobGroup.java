@@ -0,0 +1,70 @@
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The registered {@link CronJob}s that share one {@link CronSchedule}, so that a {@link CronScheduler} evaluates the schedule once and
+ * fans out to every {@link CronJob} in the group when it matches. The {@link CronJob}s are kept in order of {@link CronPriority}, highest
+ * first, so that handing them over in the order of the list hands over the most urgent first.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronJobGroup {
+	
+	private final CronSchedule schedule;
+	private final List<CronJob> jobs = new ArrayList<CronJob>();
+	/* The index just past the last CronJob of each priority, by ordinal. */
+	private final int[] ends = new int[CronPriority.LEVELS];
+	
+	CronJobGroup(CronSchedule schedule) {
+		this.schedule = schedule;
+	}
+	
+	/**
+	 * @return The {@link CronSchedule} every {@link CronJob} in this group shares.
+	 */
+	CronSchedule getSchedule() {
+		return schedule;
+	}
+	
+	/**
+	 * @return The {@link CronJob}s in this group. Owned by the {@link CronJobGroups} that made this group and not to be changed elsewhere.
+	 */
+	List<CronJob> getJobs() {
+		return jobs;
+	}
+	
+	/**
+	 * @return The index just past the last {@link CronJob} of each {@link CronPriority} in {@link #getJobs()}, by ordinal. Owned by the
+	 * {@link CronJobGroups} that made this group and not to be changed elsewhere.
+	 */
+	int[] getEnds() {
+		return ends;
+	}
+	
+	/**
+	 * @param priority The ordinal of a {@link CronPriority}.
+	 * @return The index in {@link #getJobs()} of the first {@link CronJob} of that priority.
+	 */
+	int start(int priority) {
+		return priority==0 ? 0 : ends[priority-1];
+	}
+	
+	/**
+	 * @param priority The ordinal of a {@link CronPriority}.
+	 * @return The index in {@link #getJobs()} just past the last {@link CronJob} of that priority.
+	 */
+	int end(int priority) {
+		return ends[priority];
+	}
+	
+	/**
+	 * @return True if this group has no {@link CronJob}s left, false otherwise.
+	 */
+	boolean isEmpty() {
+		return jobs.isEmpty();
+	}
+
+}
@@ -0,0 +1,141 @@
+package net.aionstudios.horae;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorts {@link CronJob}s into {@link CronJobGroup}s by the {@link CronSchedule} of their {@link CronDateTime}s, so that every
+ * {@link CronJob} with an equal schedule, however it was written, lands in the same group. Within a group, {@link CronJob}s are kept
+ * together by {@link CronPriority}, and joining or leaving moves at most one {@link CronJob} of each priority, so both are constant time.
+ *
+ * Not thread-safe; each {@link CronScheduler} keeps its own, guarded the same way as the rest of its state.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronJobGroups {
+	
+	private final Map<CronSchedule, CronJobGroup> bySchedule = new HashMap<CronSchedule, CronJobGroup>();
+	/* Where each job sits, so that it can leave its group without a search. */
+	private final Map<CronJob, Membership> memberships = new IdentityHashMap<CronJob, Membership>();
+	
+	/**
+	 * Adds a {@link CronJob} to the group for its current {@link CronSchedule}. The {@link CronJob} must not already be in a group.
+	 * 
+	 * @param j The {@link CronJob} to add.
+	 * @return The group the {@link CronJob} joined, which holds only that {@link CronJob} if the group is new.
+	 */
+	CronJobGroup add(CronJob j) {
+		CronSchedule schedule = j.getCronDateTime().getSchedule();
+		CronJobGroup g = bySchedule.get(schedule);
+		if(g==null) {
+			g = new CronJobGroup(schedule);
+			bySchedule.put(schedule, g);
+		}
+		List<CronJob> jobs = g.getJobs();
+		int[] ends = g.getEnds();
+		int priority = j.getPriority().ordinal();
+		//Open a gap at the end and walk it up to the priority joined, moving the first CronJob of each lower priority to the end of its own.
+		jobs.add(null);
+		int gap = jobs.size()-1;
+		for(int p = ends.length-1; p > priority; p--) {
+			int first = ends[p-1];
+			if(first!=gap) {
+				move(jobs, first, gap);
+			}
+			gap = first;
+			ends[p]++;
+		}
+		jobs.set(gap, j);
+		ends[priority]++;
+		memberships.put(j, new Membership(g, gap, priority));
+		return g;
+	}
+	
+	/**
+	 * Removes a {@link CronJob} from its group.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 * @return The group the {@link CronJob} left, which is empty if it was the last {@link CronJob} in it, or null if the {@link CronJob} was not in a group.
+	 */
+	CronJobGroup remove(CronJob j) {
+		Membership m = memberships.remove(j);
+		if(m==null) {
+			return null;
+		}
+		List<CronJob> jobs = m.group.getJobs();
+		int[] ends = m.group.getEnds();
+		//Fill the gap with the last CronJob of the same priority, then walk it down, filling it with the last CronJob of each lower priority.
+		int gap = m.index;
+		for(int p = m.priority; p < ends.length; p++) {
+			int last = ends[p]-1;
+			if(last!=gap) {
+				move(jobs, last, gap);
+			}
+			gap = last;
+			ends[p]--;
+		}
+		jobs.remove(gap);
+		if(jobs.isEmpty()) {
+			bySchedule.remove(m.group.getSchedule());
+		}
+		return m.group;
+	}
+	
+	/**
+	 * Moves a {@link CronJob} within its group's list, overwriting whatever was at the destination.
+	 * 
+	 * @param jobs The list of the group.
+	 * @param from The index of the {@link CronJob} to move.
+	 * @param to The index to move it to.
+	 */
+	private void move(List<CronJob> jobs, int from, int to) {
+		CronJob moved = jobs.get(from);
+		jobs.set(to, moved);
+		memberships.get(moved).index = to;
+	}
+	
+	/**
+	 * @return Every group with at least one {@link CronJob}.
+	 */
+	Collection<CronJobGroup> groups() {
+		return bySchedule.values();
+	}
+	
+	/**
+	 * Removes every {@link CronJob} from every group.
+	 */
+	void clear() {
+		bySchedule.clear();
+		memberships.clear();
+	}
+	
+	/**
+	 * @return True if no {@link CronJob}s are grouped, false otherwise.
+	 */
+	boolean isEmpty() {
+		return memberships.isEmpty();
+	}
+	
+	/**
+	 * The group a {@link CronJob} belongs to, its position within it and the priority it joined at.
+	 */
+	private static class Membership {
+		
+		private final CronJobGroup group;
+		private int index;
+		/* Kept rather than read from the CronJob, whose priority may have changed since it joined. */
+		private final int priority;
+		
+		private Membership(CronJobGroup group, int index, int priority) {
+			this.group = group;
+			this.index = index;
+			this.priority = priority;
+		}
+	
+	}
+
+}
@@ -0,0 +1,133 @@
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An inverted index of {@link CronJobGroup}s keyed on the minutes and hours permitted by their {@link CronSchedule}s, so that a tick only
+ * evaluates the schedules that could match the current minute and hour, each once however many {@link CronJob}s share it.
+ *
+ * Groups whose schedules permit some minutes and some hours are filed under each permitted minute and each permitted hour, and a tick walks
+ * whichever of the two buckets is smaller. Groups that permit every hour are filed by minute alone, those that permit every minute by hour
+ * alone, and those that permit both are kept in a separate list that every tick evaluates.
+ *
+ * The index is not thread-safe and belongs to the cron thread of its {@link PollingCronScheduler}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronJobIndex {
+	
+	private final List<List<CronJobGroup>> byMinute = newBuckets(60);
+	private final List<List<CronJobGroup>> byHour = newBuckets(24);
+	private final List<List<CronJobGroup>> byMinuteOnly = newBuckets(60);
+	private final List<List<CronJobGroup>> byHourOnly = newBuckets(24);
+	private final List<CronJobGroup> everyMinute = new ArrayList<CronJobGroup>();
+	
+	/**
+	 * Files a {@link CronJobGroup} under its {@link CronSchedule}.
+	 * 
+	 * @param g The {@link CronJobGroup} to file, which must not already be filed.
+	 */
+	void add(CronJobGroup g) {
+		file(g, true);
+	}
+	
+	/**
+	 * Removes a {@link CronJobGroup} from the index.
+	 * 
+	 * @param g The {@link CronJobGroup} to remove.
+	 */
+	void remove(CronJobGroup g) {
+		file(g, false);
+	}
+	
+	/**
+	 * Collects every indexed {@link CronJobGroup} whose {@link CronSchedule} matches the provided time.
+	 * 
+	 * @param min The minute to check against.
+	 * @param hour The hour to check against.
+	 * @param dom The day of the month to check against.
+	 * @param month The month to check against.
+	 * @param dow The day of the week to check against.
+	 * @param year The year to check against.
+	 * @param due The list to which matching {@link CronJobGroup}s are added.
+	 * @param pool The {@link CronTickPool} across which to split large buckets, or null to evaluate every bucket on the calling thread.
+	 */
+	void match(int min, int hour, int dom, int month, int dow, int year, List<CronJobGroup> due, CronTickPool pool) {
+		List<CronJobGroup> minuteBucket = byMinute.get(min);
+		List<CronJobGroup> hourBucket = byHour.get(hour);
+		collect(minuteBucket.size()<=hourBucket.size() ? minuteBucket : hourBucket, min, hour, dom, month, dow, year, due, pool);
+		collect(byMinuteOnly.get(min), min, hour, dom, month, dow, year, due, pool);
+		collect(byHourOnly.get(hour), min, hour, dom, month, dow, year, due, pool);
+		collect(everyMinute, min, hour, dom, month, dow, year, due, pool);
+	}
+	
+	private static void collect(List<CronJobGroup> candidates, int min, int hour, int dom, int month, int dow, int year, List<CronJobGroup> due, CronTickPool pool) {
+		if(pool!=null&&candidates.size()>=CronTickPool.SEQUENTIAL_THRESHOLD) {
+			pool.collect(candidates, min, hour, dom, month, dow, year, due);
+			return;
+		}
+		for(int i = 0; i < candidates.size(); i++) {
+			CronJobGroup g = candidates.get(i);
+			if(g.getSchedule().matches(min, hour, dom, month, dow, year)) {
+				due.add(g);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a {@link CronJobGroup} to, or removes it from, every bucket its {@link CronSchedule} belongs in.
+	 * 
+	 * @param g The {@link CronJobGroup} to file.
+	 * @param add True to add the {@link CronJobGroup}, false to remove it.
+	 */
+	private void file(CronJobGroup g, boolean add) {
+		long minutes = g.getSchedule().getMinuteMask();
+		int hours = g.getSchedule().getHourMask();
+		boolean everyMinute = minutes==CronSchedule.ALL_MINUTES;
+		boolean everyHour = hours==CronSchedule.ALL_HOURS;
+		if(everyMinute&&everyHour) {
+			update(this.everyMinute, g, add);
+		} else if(everyHour) {
+			fileByBit(byMinuteOnly, minutes, g, add);
+		} else if(everyMinute) {
+			fileByBit(byHourOnly, hours, g, add);
+		} else {
+			fileByBit(byMinute, minutes, g, add);
+			fileByBit(byHour, hours, g, add);
+		}
+	}
+	
+	private static void fileByBit(List<List<CronJobGroup>> buckets, long mask, CronJobGroup g, boolean add) {
+		for(int i = 0; i < buckets.size(); i++) {
+			if((mask&(1L<<i))!=0) {
+				update(buckets.get(i), g, add);
+			}
+		}
+	}
+	
+	private static void update(List<CronJobGroup> bucket, CronJobGroup g, boolean add) {
+		if(add) {
+			bucket.add(g);
+			return;
+		}
+		for(int i = bucket.size()-1; i >= 0; i--) {
+			if(bucket.get(i)==g) {
+				int last = bucket.size()-1;
+				bucket.set(i, bucket.get(last));
+				bucket.remove(last);
+				return;
+			}
+		}
+	}
+	
+	private static List<List<CronJobGroup>> newBuckets(int size) {
+		List<List<CronJobGroup>> buckets = new ArrayList<List<CronJobGroup>>(size);
+		for(int i = 0; i < size; i++) {
+			buckets.add(new ArrayList<CronJobGroup>());
+		}
+		return buckets;
+	}
+
+}
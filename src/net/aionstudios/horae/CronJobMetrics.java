@@ -0,0 +1,163 @@
+package net.aionstudios.horae;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters {@link CronMetrics} keeps for one {@link CronJob}, or for every {@link CronJob} together. Counters are {@link LongAdder}s,
+ * so threads recording at once do not contend. Totals keep histograms, created once the first duration is recorded, but a single
+ * {@link CronJob} only keeps the count and sum of its lags and durations, so that registering a great many {@link CronJob}s costs a few
+ * counters each rather than a few kilobytes of buckets.
+ * 
+ * @author Winter Roberts
+ *
+ */
+final class CronJobMetrics {
+	
+	private static final AtomicReferenceFieldUpdater<CronJobMetrics, CronHistogram> LAG =
+			AtomicReferenceFieldUpdater.newUpdater(CronJobMetrics.class, CronHistogram.class, "lag");
+	private static final AtomicReferenceFieldUpdater<CronJobMetrics, CronHistogram> DURATION =
+			AtomicReferenceFieldUpdater.newUpdater(CronJobMetrics.class, CronHistogram.class, "duration");
+	private static final AtomicReferenceFieldUpdater<CronJobMetrics, CronHistogram> QUEUE_WAIT =
+			AtomicReferenceFieldUpdater.newUpdater(CronJobMetrics.class, CronHistogram.class, "queueWait");
+	
+	/* The precision of the histograms, or -1 to keep only the means. */
+	private final int precisionBits;
+	private final LongAdder fires = new LongAdder();
+	private final LongAdder completions = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+	private final LongAdder misfires = new LongAdder();
+	private final LongAdder starts = new LongAdder();
+	private final LongAdder lagSum = new LongAdder();
+	private final LongAdder durationSum = new LongAdder();
+	private volatile CronHistogram lag;
+	private volatile CronHistogram duration;
+	private volatile CronHistogram queueWait;
+	
+	/**
+	 * Creates the counters for a single {@link CronJob}, which keep the mean lag and duration without histograms.
+	 */
+	CronJobMetrics() {
+		this(-1);
+	}
+	
+	/**
+	 * @param precisionBits The precision of the histograms, see {@link CronHistogram#CronHistogram(int)}, or -1 to keep only the means.
+	 */
+	CronJobMetrics(int precisionBits) {
+		this.precisionBits = precisionBits;
+	}
+	
+	void fired() {
+		fires.increment();
+	}
+	
+	void skipped() {
+		skipped.increment();
+	}
+	
+	void misfired() {
+		misfires.increment();
+	}
+	
+	/**
+	 * @param lagNanos How long after it was due the execution started.
+	 */
+	void started(long lagNanos) {
+		starts.increment();
+		lagSum.add(Math.max(lagNanos, 0L));
+		if(precisionBits>=0) {
+			histogram(LAG).record(lagNanos);
+		}
+	}
+	
+	/**
+	 * @param queueWaitNanos How long the execution waited between being handed to a {@link CronExecutor} and starting.
+	 */
+	void waited(long queueWaitNanos) {
+		if(precisionBits>=0) {
+			histogram(QUEUE_WAIT).record(queueWaitNanos);
+		}
+	}
+	
+	/**
+	 * @param durationNanos How long the execution ran for.
+	 * @param failed True if the execution threw, false otherwise.
+	 */
+	void finished(long durationNanos, boolean failed) {
+		durationSum.add(Math.max(durationNanos, 0L));
+		if(precisionBits>=0) {
+			histogram(DURATION).record(durationNanos);
+		}
+		completions.increment();
+		if(failed) {
+			failures.increment();
+		}
+	}
+	
+	long getFires() {
+		return fires.sum();
+	}
+	
+	long getCompletions() {
+		return completions.sum();
+	}
+	
+	long getFailures() {
+		return failures.sum();
+	}
+	
+	long getSkipped() {
+		return skipped.sum();
+	}
+	
+	long getMisfires() {
+		return misfires.sum();
+	}
+	
+	/**
+	 * @return The mean duration in nanoseconds of the executions that have finished, or 0 if none have, read without taking a snapshot.
+	 */
+	long getMeanDuration() {
+		long n = completions.sum();
+		return n>0 ? durationSum.sum()/n : 0L;
+	}
+	
+	CronHistogramSnapshot getLag() {
+		return precisionBits>=0 ? snapshotOf(lag) : CronHistogramSnapshot.ofMean(starts.sum(), lagSum.sum());
+	}
+	
+	CronHistogramSnapshot getDuration() {
+		return precisionBits>=0 ? snapshotOf(duration) : CronHistogramSnapshot.ofMean(completions.sum(), durationSum.sum());
+	}
+	
+	CronHistogramSnapshot getQueueWait() {
+		return snapshotOf(queueWait);
+	}
+	
+	/**
+	 * @param tick A histogram of tick times to include, or null for none.
+	 * @param firesPerSecond A histogram of fires per second to include, or null for none.
+	 * @param queueDepth The executor queue depth to include.
+	 * @return A copy of these counters.
+	 */
+	CronMetricsSnapshot snapshot(CronHistogram tick, CronHistogram firesPerSecond, int queueDepth) {
+		return new CronMetricsSnapshot(getFires(), getCompletions(), getFailures(), getSkipped(), getMisfires(), getLag(), getDuration(),
+				getQueueWait(), snapshotOf(tick), snapshotOf(firesPerSecond), queueDepth);
+	}
+	
+	private CronHistogramSnapshot snapshotOf(CronHistogram h) {
+		return h!=null ? h.snapshot() : new CronHistogram(0).snapshot();
+	}
+	
+	private CronHistogram histogram(AtomicReferenceFieldUpdater<CronJobMetrics, CronHistogram> field) {
+		CronHistogram h = field.get(this);
+		if(h==null) {
+			field.compareAndSet(this, null, new CronHistogram(precisionBits));
+			h = field.get(this);
+		}
+		return h;
+	}
+
+}
@@ -0,0 +1,100 @@
+package net.aionstudios.horae;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The set of {@link CronJob}s registered with the {@link CronManager}, keyed by id. Registering, replacing and removing {@link CronJob}s
+ * never blocks, and readers that need every registered {@link CronJob} at once take a snapshot array that is only rebuilt after a change.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronJobRegistry {
+	
+	private static final CronJob[] NO_JOBS = new CronJob[0];
+	
+	private final ConcurrentMap<String, CronJob> jobs = new ConcurrentHashMap<String, CronJob>();
+	private final AtomicLong version = new AtomicLong();
+	private volatile Snapshot snapshot = new Snapshot(0L, NO_JOBS);
+	
+	/**
+	 * @param j The {@link CronJob} to register.
+	 * @return True if the {@link CronJob} was registered, false if a {@link CronJob} with the same id already is.
+	 */
+	boolean add(CronJob j) {
+		if(jobs.putIfAbsent(j.getId(), j)!=null) {
+			return false;
+		}
+		version.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * @param j The {@link CronJob} to register in place of any {@link CronJob} with the same id.
+	 * @return The {@link CronJob} that was replaced, or null if there was none.
+	 */
+	CronJob replace(CronJob j) {
+		CronJob previous = jobs.put(j.getId(), j);
+		version.incrementAndGet();
+		return previous;
+	}
+	
+	/**
+	 * @param j The {@link CronJob} to remove.
+	 * @return True if the {@link CronJob} was registered and has been removed, false otherwise.
+	 */
+	boolean remove(CronJob j) {
+		if(!jobs.remove(j.getId(), j)) {
+			return false;
+		}
+		version.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * @param id The id of a registered {@link CronJob}.
+	 * @return The registered {@link CronJob} with the provided id, or null if there is none.
+	 */
+	CronJob get(String id) {
+		return jobs.get(id);
+	}
+	
+	/**
+	 * @return The number of registered {@link CronJob}s.
+	 */
+	int size() {
+		return jobs.size();
+	}
+	
+	/**
+	 * @return Every registered {@link CronJob}. The array is shared between callers and must not be modified.
+	 */
+	CronJob[] snapshot() {
+		Snapshot current = snapshot;
+		long v = version.get();
+		if(current.version==v) {
+			return current.jobs;
+		}
+		current = new Snapshot(v, jobs.values().toArray(NO_JOBS));
+		snapshot = current;
+		return current.jobs;
+	}
+	
+	/**
+	 * The registered {@link CronJob}s as of a given registry version.
+	 */
+	private static class Snapshot {
+		
+		private final long version;
+		private final CronJob[] jobs;
+		
+		private Snapshot(long version, CronJob[] jobs) {
+			this.version = version;
+			this.jobs = jobs;
+		}
+		
+	}
+
+}
@@ -0,0 +1,389 @@
+package net.aionstudios.horae;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent record of when each {@link CronJob} last fell due and how that execution went, so that a restarted {@link CronManager}
+ * neither repeats executions that already happened nor loses ones that were missed while it was down. Set one with
+ * {@link CronManager#setJournal(CronJournal)} before starting the cron thread; executions missed since each {@link CronJob}'s last
+ * recorded one are then handed to its {@link CronMisfirePolicy}, and executions that already happened are not dispatched again.
+ *
+ * Records are appended to a memory-mapped file, so recording an execution is a buffer write rather than a write to disk. The
+ * operating system writes the mapped file out in the background, so records survive the process stopping, but only those written
+ * before the last {@link #force()} or compaction are certain to survive the machine stopping. Once the mapped file fills up, it is
+ * compacted into a new file holding one record per {@link CronJob} and swapped in place of the old one. Recording takes no lock that
+ * spans the journal: each record reserves its place in the mapped file with an atomic cursor, and only compaction locks the journal.
+ * A record still being written when the process stops ends the journal there, so any written after it count as missed as well.
+ *
+ * An execution is recorded once a worker starts it, so executions dropped by a {@link CronOverlapPolicy} or a
+ * {@link CronSaturationPolicy}, or still waiting for a worker when the process stops, count as missed rather than as having happened.
+ * Records are kept by {@link CronJob} id, so only {@link CronJob}s created with an id of their own, see
+ * {@link CronJob#CronJob(String, CronDateTime)}, are matched to their records after a restart; a generated id depends on the order
+ * {@link CronJob}s are created in.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronJournal implements Closeable {
+	
+	/* "HORAEJ01" */
+	private static final long MAGIC = 0x484F5241454A3031L;
+	private static final int HEADER_LENGTH = 8;
+	/* A type byte, the due time and the length of the id, followed by the id itself. */
+	private static final int RECORD_OVERHEAD = 13;
+	private static final int MIN_CAPACITY = 1<<20;
+	private static final byte END = 0;
+	private static final byte FIRED = 1;
+	private static final byte SUCCEEDED = 2;
+	private static final byte FAILED = 3;
+	private static final byte FORGOTTEN = 4;
+	
+	private final Path file;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private volatile Segment segment;
+	private volatile boolean closed = false;
+	
+	/**
+	 * Opens a journal, reading every record already in it and compacting it.
+	 * 
+	 * @param file The journal file, which is created if it does not exist.
+	 * @throws IOException If the file could not be read or written, or is not a journal.
+	 */
+	public CronJournal(Path file) throws IOException {
+		this.file = file;
+		if(Files.exists(file)) {
+			replay();
+		}
+		compact();
+	}
+	
+	/**
+	 * @param jobId The id of a {@link CronJob}.
+	 * @return The last execution of that {@link CronJob} recorded in this journal, or null if there is none.
+	 */
+	public CronFireRecord getLastFire(String jobId) {
+		Entry e = entries.get(jobId);
+		if(e==null) {
+			return null;
+		}
+		long state = e.state;
+		return new CronFireRecord(jobId, dueOf(state), outcomeOf(typeOf(state)));
+	}
+	
+	/**
+	 * Rewrites the journal with one record per {@link CronJob}. This happens on its own whenever the journal fills up.
+	 * 
+	 * @throws IOException If the new journal could not be written.
+	 */
+	public synchronized void compact() throws IOException {
+		if(closed) {
+			throw new IOException("Cron journal "+file+" is closed");
+		}
+		Segment previous = segment;
+		if(previous!=null) {
+			//Records reserved from here on go to the compacted file, which holds every entry as it is once the old one is sealed.
+			previous.seal();
+		}
+		List<Entry> snapshot = new ArrayList<Entry>(entries.values());
+		int live = HEADER_LENGTH;
+		for(Entry e : snapshot) {
+			live += RECORD_OVERHEAD+e.id.length;
+		}
+		int capacity = MIN_CAPACITY;
+		while(capacity<live*4L&&capacity<(1<<30)) {
+			capacity <<= 1;
+		}
+		Path compacted = file.resolveSibling(file.getFileName()+".compact");
+		FileChannel next = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer mapped;
+		try {
+			mapped = next.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, live));
+			mapped.putLong(0, MAGIC);
+			int position = HEADER_LENGTH;
+			for(Entry e : snapshot) {
+				long state = e.state;
+				write(mapped, position, typeOf(state), dueOf(state), e.id);
+				position += RECORD_OVERHEAD+e.id.length;
+			}
+			mapped.force();
+			Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			next.close();
+			throw e;
+		}
+		segment = new Segment(next, mapped, live);
+		if(previous!=null) {
+			previous.channel.close();
+		}
+	}
+	
+	/**
+	 * Writes every record made so far out to disk.
+	 */
+	public synchronized void force() {
+		if(!closed) {
+			segment.buffer.force();
+		}
+	}
+	
+	/**
+	 * Writes every record made so far out to disk and stops recording. A closed journal can still be read.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			segment.buffer.force();
+			segment.channel.close();
+		}
+	}
+	
+	/**
+	 * Records that an execution of a {@link CronJob} was started by the {@link CronExecutor}.
+	 * 
+	 * @param j The {@link CronJob}.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 */
+	void fired(CronJob j, long dueMillis) {
+		Entry e = entries.get(j.getId());
+		if(e==null) {
+			Entry created = new Entry(j.getId().getBytes(StandardCharsets.UTF_8));
+			e = entries.putIfAbsent(j.getId(), created);
+			if(e==null) {
+				e = created;
+			}
+		}
+		synchronized(e) {
+			e.state = stateOf(dueMillis, FIRED);
+		}
+		append(e, false);
+	}
+	
+	/**
+	 * Records the outcome of an execution, unless a later execution of the same {@link CronJob} has already been recorded.
+	 * 
+	 * @param j The {@link CronJob}.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param failed True if the execution threw, false otherwise.
+	 */
+	void finished(CronJob j, long dueMillis, boolean failed) {
+		Entry e = entries.get(j.getId());
+		if(e==null) {
+			return;
+		}
+		synchronized(e) {
+			if(dueOf(e.state)!=dueMillis) {
+				return;
+			}
+			e.state = stateOf(dueMillis, failed ? FAILED : SUCCEEDED);
+		}
+		append(e, false);
+	}
+	
+	/**
+	 * Drops every record of a {@link CronJob}.
+	 * 
+	 * @param jobId The id of the {@link CronJob}.
+	 */
+	void forget(String jobId) {
+		Entry e = entries.remove(jobId);
+		if(e!=null) {
+			append(e, true);
+		}
+	}
+	
+	/**
+	 * Appends a record of an entry as it is when its place is reserved, so that the last record of each entry is always its latest
+	 * state however the threads recording it interleave. Must be called after the entry has been updated.
+	 * 
+	 * @param e The entry to record.
+	 * @param forgotten True to record that the entry was dropped instead.
+	 */
+	private void append(Entry e, boolean forgotten) {
+		int length = RECORD_OVERHEAD+e.id.length;
+		while(!closed) {
+			Segment s = segment;
+			long state;
+			long start;
+			synchronized(e) {
+				state = e.state;
+				start = s.reserve(length);
+			}
+			if(start>=0) {
+				write(s.buffer, (int) start, forgotten ? FORGOTTEN : typeOf(state), dueOf(state), e.id);
+				return;
+			}
+			if(rollOver(s)) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Compacts the journal once a record finds no room left in it. Compaction writes out every entry as it is now, so the record is
+	 * not needed afterwards, unless the journal was already compacted by another record in the meantime.
+	 * 
+	 * @param full The segment that had no room left.
+	 * @return True if the record is no longer needed, false if it must be appended to the new segment instead.
+	 */
+	private synchronized boolean rollOver(Segment full) {
+		if(closed) {
+			return true;
+		}
+		if(segment!=full) {
+			return false;
+		}
+		try {
+			compact();
+		} catch(IOException e) {
+			System.err.println("Failed to compact cron journal "+file+", no longer recording executions!");
+			e.printStackTrace();
+			closed = true;
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes a record at a position in a buffer. The type goes in last, so that a record cut short by the process stopping reads as the end of the journal.
+	 */
+	private static void write(ByteBuffer buffer, int start, byte type, long dueMillis, byte[] id) {
+		buffer.putLong(start+1, dueMillis);
+		buffer.putInt(start+9, id.length);
+		for(int i = 0; i < id.length; i++) {
+			buffer.put(start+RECORD_OVERHEAD+i, id[i]);
+		}
+		buffer.put(start, type);
+	}
+	
+	/**
+	 * Reads every record in the journal file into the entries. Must be called before the journal is mapped for writing.
+	 */
+	private void replay() throws IOException {
+		try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = in.size();
+			if(size==0) {
+				return;
+			}
+			if(size<HEADER_LENGTH||size>Integer.MAX_VALUE) {
+				throw new IOException(file+" is not a cron journal");
+			}
+			MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(records.getLong()!=MAGIC) {
+				throw new IOException(file+" is not a cron journal");
+			}
+			while(records.remaining()>=RECORD_OVERHEAD) {
+				byte type = records.get();
+				long dueMillis = records.getLong();
+				int length = records.getInt();
+				if(type==END||type>FORGOTTEN||length<0||length>records.remaining()) {
+					break;
+				}
+				byte[] id = new byte[length];
+				records.get(id);
+				apply(new String(id, StandardCharsets.UTF_8), id, type, dueMillis);
+			}
+		}
+	}
+	
+	private void apply(String jobId, byte[] id, byte type, long dueMillis) {
+		if(type==FORGOTTEN) {
+			entries.remove(jobId);
+			return;
+		}
+		Entry e = entries.get(jobId);
+		if(e==null) {
+			e = new Entry(id);
+			entries.put(jobId, e);
+		} else if(type!=FIRED&&dueOf(e.state)!=dueMillis) {
+			//The outcome of an execution overtaken by a later one.
+			return;
+		}
+		e.state = stateOf(dueMillis, type);
+	}
+	
+	private static long stateOf(long dueMillis, byte type) {
+		return dueMillis<<3|type;
+	}
+	
+	private static long dueOf(long state) {
+		return state>>3;
+	}
+	
+	private static byte typeOf(long state) {
+		return (byte) (state&7);
+	}
+	
+	private static CronFireOutcome outcomeOf(byte type) {
+		switch(type) {
+		case SUCCEEDED:
+			return CronFireOutcome.SUCCEEDED;
+		case FAILED:
+			return CronFireOutcome.FAILED;
+		default:
+			return CronFireOutcome.FIRED;
+		}
+	}
+	
+	/**
+	 * The last recorded execution of a {@link CronJob}, with its id kept encoded so that recording does not allocate.
+	 */
+	private static class Entry {
+		
+		private final byte[] id;
+		/* The due time shifted left by three bits, with the type of the last record in the low bits, so that both change together. */
+		private volatile long state;
+		
+		private Entry(byte[] id) {
+			this.id = id;
+		}
+	
+	}
+	
+	/**
+	 * A mapped journal file, with a cursor from which each record reserves its place.
+	 */
+	private static class Segment {
+		
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final AtomicLong cursor;
+		
+		private Segment(FileChannel channel, MappedByteBuffer buffer, int end) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.cursor = new AtomicLong(end);
+		}
+		
+		/**
+		 * @param length The length of a record.
+		 * @return The position reserved for the record, or -1 if there is no room left for it.
+		 */
+		private long reserve(int length) {
+			long start = cursor.getAndAdd(length);
+			return start+length<=buffer.capacity() ? start : -1;
+		}
+		
+		/**
+		 * Leaves no room for any further record.
+		 */
+		private void seal() {
+			cursor.set(buffer.capacity());
+		}
+	
+	}
+
+}
@@ -1,68 +1,566 @@
-package net.aionstudios.horae;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import net.aionstudios.horae.service.DateTimeServices;
-
-/**
- * A class that accumulates {@link CronJob}s on the {@link APIServer} so that they can be executed by the cron thread on a schedule as defined by their associated {@link CronDateTime}s.
- * 
- * @author Winter Roberts
- *
- */
-public class CronManager {
-	
-	private static List<CronJob> jobs = new ArrayList<CronJob>();
-	private static boolean cronStarted = false;
-	private static Thread cronThread;
-	private static ExecutorService jobExecutor;
-	
-	/**
-	 * Starts the cron thread and periodically checks if each enabled {@link CronJob} should be executed.
-	 */
-	public static void startCron() {
-		if(!cronStarted) {
-			cronStarted = true;
-			jobExecutor = Executors.newCachedThreadPool();
-			cronThread = new Thread() {
-			    public void run() {
-			    	int min = DateTimeServices.getCronMinute()-1;
-			    	int hour, dom, month, dow, year = 0;
-			    	while(cronStarted) {
-			    		if(min!=DateTimeServices.getCronMinute()) {
-			    			min = DateTimeServices.getCronMinute();
-			    			hour = DateTimeServices.getCronHour();
-			    			dom = DateTimeServices.getCronDayOfMonth();
-			    			month = DateTimeServices.getCronMonth();
-			    			dow = DateTimeServices.getCronDayOfWeek();
-			    			year = DateTimeServices.getCronYear();
-			    			for(CronJob j : jobs) {
-			    				if(j.cronMatches(min, hour, dom, month, dow, year)) {
-			    					jobExecutor.submit(new Runnable() {
-										@Override public void run() {j.start();}
-			    					});
-			    				}
-			    			}
-			    		}
-			    		try {
-				            Thread.sleep(1000);
-				        } catch(InterruptedException e) {
-				            System.err.println("Cron thread was interrupted!");
-				            e.printStackTrace();
-				        }
-			    	}
-			    }  
-			};
-
-			cronThread.start();
-		}
-	}
-	
-	public static void addJob(CronJob j) {
-		jobs.add(j);
-	}
-
-}
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A class that accumulates {@link CronJob}s on the {@link APIServer} so that they can be executed by the cron thread on a schedule as defined by their associated {@link CronDateTime}s.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronManager {
+	
+	private static final CronJobRegistry jobs = new CronJobRegistry();
+	private static volatile boolean cronStarted = false;
+	private static CronSchedulerMode schedulerMode = CronSchedulerMode.POLLING;
+	private static volatile CronScheduler scheduler;
+	/* Runs alongside the scheduler above for CronJobs that permit seconds other than second 0. */
+	private static volatile CronScheduler secondScheduler;
+	private static volatile CronExecutor jobExecutor;
+	/* The executor lane for each priority, by ordinal, with null for priorities that share the job executor. */
+	private static final CronExecutor[] lanes = new CronExecutor[CronPriority.LEVELS];
+	private static volatile CronJournal journal;
+	private static volatile CronCluster cluster;
+	private static volatile CronRateLimiter rateLimiter;
+	/* Executions waiting out a hashed window or the dispatch rate limit. */
+	private static final CronDispatchQueue held = new CronDispatchQueue();
+	private static int tickParallelism = 1;
+	
+	/**
+	 * Starts the cron thread and periodically checks if each enabled {@link CronJob} should be executed.
+	 * {@link CronJob}s scheduled to the second are handled by a second thread that only wakes while any of them are registered.
+	 * With a {@link CronJournal}, each {@link CronJob} first catches up on the executions it missed since its last recorded one.
+	 * With a {@link CronCluster}, this node joins the cluster first and only executes the {@link CronJob}s that fall to it.
+	 */
+	public static synchronized void startCron() {
+		if(!cronStarted) {
+			if(jobExecutor==null) {
+				jobExecutor = new CronExecutor();
+			}
+			switch(schedulerMode) {
+			case DEADLINE:
+				scheduler = new DeadlineCronScheduler();
+				break;
+			case TIMING_WHEEL:
+				scheduler = new TimingWheelCronScheduler();
+				break;
+			default:
+				scheduler = new PollingCronScheduler();
+			}
+			if(tickParallelism>1) {
+				scheduler.setTickPool(new CronTickPool(tickParallelism));
+			}
+			secondScheduler = new SecondCronScheduler();
+			cronStarted = true;
+			if(cluster!=null) {
+				cluster.start();
+			}
+			List<CronJob> minuteJobs = new ArrayList<CronJob>();
+			List<CronJob> secondJobs = new ArrayList<CronJob>();
+			for(CronJob j : jobs.snapshot()) {
+				(j.getCronDateTime().isMinuteLevel() ? minuteJobs : secondJobs).add(j);
+			}
+			if(journal!=null) {
+				recover(minuteJobs);
+				recover(secondJobs);
+			}
+			scheduler.start(minuteJobs);
+			secondScheduler.start(secondJobs);
+			CronMetrics.registerMBean();
+		}
+	}
+	
+	/**
+	 * Stops the cron threads and shuts down the {@link CronExecutor}. Executions already running are left to finish, except those of
+	 * {@link AsyncCronJob}s still in flight, which are cancelled, and executions held back by a hashed window or the dispatch rate limit
+	 * are dropped. {@link CronJob}s stay registered, so the cron thread may be started again, but a {@link CronExecutor} set with
+	 * {@link #setExecutor(CronExecutor)} cannot be reused and must be replaced first, and lanes set with
+	 * {@link #setLaneExecutor(CronPriority, CronExecutor)} are removed and must be set again. A {@link CronJournal} or {@link CronCluster} is
+	 * left open for the caller to close.
+	 */
+	public static synchronized void stopCron() {
+		if(cronStarted) {
+			cronStarted = false;
+			scheduler.stop();
+			secondScheduler.stop();
+			CronTickPool pool = scheduler.getTickPool();
+			if(pool!=null) {
+				pool.shutdown();
+			}
+			held.clear();
+			jobExecutor.shutdown();
+			jobExecutor = null;
+			for(int i = 0; i < lanes.length; i++) {
+				if(lanes[i]!=null) {
+					lanes[i].shutdown();
+					lanes[i] = null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets the strategy the cron thread uses to decide when {@link CronJob}s are due. This must be done before the cron thread is started.
+	 * 
+	 * @param mode The {@link CronSchedulerMode} to use.
+	 * @return True if the mode was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setSchedulerMode(CronSchedulerMode mode) {
+		if(cronStarted) {
+			return false;
+		}
+		schedulerMode = mode;
+		return true;
+	}
+	
+	/**
+	 * Sets the number of threads across which the cron thread splits a tick that has very many {@link CronJob}s to evaluate or hand to
+	 * the {@link CronExecutor}, so that the last of them is not held up behind the rest. Ticks with only a few thousand are still run on
+	 * the cron thread alone. This must be done before the cron thread is started.
+	 * 
+	 * @param parallelism The number of threads, or 1 to run every tick on the cron thread alone, which is the default.
+	 * @return True if the parallelism was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setTickParallelism(int parallelism) {
+		if(parallelism<1) {
+			throw new IllegalArgumentException("Tick parallelism must be at least 1");
+		}
+		if(cronStarted) {
+			return false;
+		}
+		tickParallelism = parallelism;
+		return true;
+	}
+	
+	/**
+	 * @return The number of threads across which the cron thread splits a large tick.
+	 */
+	public static int getTickParallelism() {
+		return tickParallelism;
+	}
+	
+	/**
+	 * Sets the {@link CronExecutor} on which due {@link CronJob}s are executed. This must be done before the cron thread is started.
+	 * Without one, an unbounded {@link CronExecutor} is used.
+	 * 
+	 * @param executor The {@link CronExecutor} to use.
+	 * @return True if the executor was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setExecutor(CronExecutor executor) {
+		if(cronStarted) {
+			return false;
+		}
+		jobExecutor = executor;
+		return true;
+	}
+	
+	/**
+	 * Gives the {@link CronJob}s of one {@link CronPriority} an executor lane of their own, with its own workers, queue and
+	 * {@link CronSaturationPolicy}, so that they never wait behind {@link CronJob}s of other priorities for a worker. Priorities without
+	 * a lane share the {@link CronExecutor} set with {@link #setExecutor(CronExecutor)}, and several priorities may share one lane.
+	 * This must be done before the cron thread is started.
+	 * 
+	 * @param priority The {@link CronPriority} whose {@link CronJob}s the lane executes.
+	 * @param executor The {@link CronExecutor} to use for the lane, or null to share the job executor, which is the default.
+	 * @return True if the lane was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setLaneExecutor(CronPriority priority, CronExecutor executor) {
+		if(cronStarted) {
+			return false;
+		}
+		lanes[priority.ordinal()] = executor;
+		return true;
+	}
+	
+	/**
+	 * @param priority A {@link CronPriority}.
+	 * @return The {@link CronExecutor} of that priority's own lane, or null if its {@link CronJob}s share the job executor.
+	 */
+	public static synchronized CronExecutor getLaneExecutor(CronPriority priority) {
+		return lanes[priority.ordinal()];
+	}
+	
+	/**
+	 * Sets the {@link CronJournal} in which executions are recorded and from which missed executions are recovered when the cron thread
+	 * starts. This must be done before the cron thread is started. Without one, nothing is recorded. Only {@link CronJob}s created with
+	 * an id of their own are matched to their records after a restart, see {@link CronJournal}.
+	 * 
+	 * @param journal The {@link CronJournal} to use, or null for none.
+	 * @return True if the journal was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setJournal(CronJournal journal) {
+		if(cronStarted) {
+			return false;
+		}
+		CronManager.journal = journal;
+		return true;
+	}
+	
+	/**
+	 * Sets the {@link CronCluster} with which this node shares out {@link CronJob}s, so that each execution happens on only one node.
+	 * This must be done before the cron thread is started. Without one, every registered {@link CronJob} is executed here. Every
+	 * {@link CronJob} shared by a {@link CronCluster} must be created with an id of its own, see {@link CronJob#CronJob(String, CronDateTime)}.
+	 * 
+	 * @param cluster The {@link CronCluster} to join, or null for none.
+	 * @return True if the cluster was applied, false if the cron thread has already been started.
+	 * @throws IllegalArgumentException If a registered {@link CronJob} has a generated id.
+	 */
+	public static synchronized boolean setCluster(CronCluster cluster) {
+		if(cronStarted) {
+			return false;
+		}
+		if(cluster!=null) {
+			for(CronJob j : jobs.snapshot()) {
+				checkClusterId(j, cluster);
+			}
+		}
+		CronManager.cluster = cluster;
+		return true;
+	}
+	
+	/**
+	 * Limits how many due {@link CronJob}s are handed to the {@link CronExecutor} each second, so that thousands of {@link CronJob}s
+	 * due at the same moment are metered out evenly instead of all starting at once. Executions over the limit are held back until
+	 * their turn rather than skipped, and are released in the order they fell due, after any {@link CronDateTime#setHashedWindow(int)
+	 * hashed window}. {@link CronPriority#CRITICAL} {@link CronJob}s are not limited. This must be done before the cron thread is started.
+	 * 
+	 * @param perSecond The number of executions to hand over each second, or 0 for no limit, which is the default.
+	 * @return True if the limit was applied, false if the cron thread has already been started.
+	 */
+	public static synchronized boolean setDispatchRateLimit(int perSecond) {
+		if(perSecond<0) {
+			throw new IllegalArgumentException("Dispatch rate limit must not be negative");
+		}
+		if(cronStarted) {
+			return false;
+		}
+		rateLimiter = perSecond>0 ? new CronRateLimiter(perSecond) : null;
+		return true;
+	}
+	
+	/**
+	 * @return The number of executions handed to the {@link CronExecutor} each second, or 0 if there is no limit.
+	 */
+	public static int getDispatchRateLimit() {
+		CronRateLimiter limiter = rateLimiter;
+		return limiter!=null ? limiter.getRate() : 0;
+	}
+	
+	/**
+	 * @return The {@link CronExecutor} on which due {@link CronJob}s are executed, or null if none has been set and the cron thread has not been started.
+	 */
+	static CronExecutor getExecutor() {
+		return jobExecutor;
+	}
+	
+	/**
+	 * @param priority A {@link CronPriority}.
+	 * @return The number of due {@link CronJob}s waiting for a worker in that priority's lane, or 0 if it has none.
+	 */
+	static int getQueueDepth(CronPriority priority) {
+		CronExecutor lane = lanes[priority.ordinal()];
+		return lane!=null ? lane.getQueueDepth() : 0;
+	}
+	
+	/**
+	 * @return The number of due {@link CronJob}s waiting for a worker in the job executor and every lane, counting a lane shared by
+	 * several priorities once.
+	 */
+	static int getQueueDepth() {
+		CronExecutor executor = jobExecutor;
+		int depth = executor!=null ? executor.getQueueDepth() : 0;
+		for(int i = 0; i < lanes.length; i++) {
+			CronExecutor lane = lanes[i];
+			if(lane!=null&&lane!=executor&&!sharesLane(i)) {
+				depth += lane.getQueueDepth();
+			}
+		}
+		return depth;
+	}
+	
+	/**
+	 * @param priority The ordinal of a {@link CronPriority} with a lane.
+	 * @return True if a higher priority has the same lane, false otherwise.
+	 */
+	private static boolean sharesLane(int priority) {
+		for(int i = 0; i < priority; i++) {
+			if(lanes[i]==lanes[priority]) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The strategy the cron thread uses to decide when {@link CronJob}s are due.
+	 */
+	public static CronSchedulerMode getSchedulerMode() {
+		return schedulerMode;
+	}
+	
+	/**
+	 * Registers a {@link CronJob} so that it is executed on the schedule defined by its {@link CronDateTime}. Safe to call while the cron thread is running.
+	 * 
+	 * @param j The {@link CronJob} to register.
+	 * @return True if the {@link CronJob} was registered, false if a {@link CronJob} with the same id is already registered.
+	 * @throws IllegalArgumentException If a {@link CronCluster} is set and the {@link CronJob} has a generated id.
+	 */
+	public static boolean addJob(CronJob j) {
+		checkClusterId(j, cluster);
+		if(!jobs.add(j)) {
+			return false;
+		}
+		j.setRegistered(true);
+		if(cronStarted) {
+			schedulerFor(j).jobAdded(j);
+		}
+		return true;
+	}
+	
+	/**
+	 * Registers a {@link CronJob} in place of any registered {@link CronJob} with the same id. Safe to call while the cron thread is running.
+	 * 
+	 * @param j The {@link CronJob} to register.
+	 * @return The {@link CronJob} that was replaced, or null if there was none.
+	 * @throws IllegalArgumentException If a {@link CronCluster} is set and the {@link CronJob} has a generated id.
+	 */
+	public static CronJob replaceJob(CronJob j) {
+		checkClusterId(j, cluster);
+		CronJob previous = jobs.replace(j);
+		if(previous==j) {
+			return previous;
+		}
+		if(previous!=null) {
+			previous.setRegistered(false);
+			if(cronStarted) {
+				scheduler.jobRemoved(previous);
+				secondScheduler.jobRemoved(previous);
+			}
+		}
+		j.setRegistered(true);
+		if(cronStarted) {
+			schedulerFor(j).jobAdded(j);
+		}
+		return previous;
+	}
+	
+	/**
+	 * Refuses a {@link CronJob} with a generated id while there is a {@link CronCluster}, as its id, and so the node it falls to, could
+	 * differ from one node to the next.
+	 * 
+	 * @param j The {@link CronJob} about to be registered or shared.
+	 * @param c The {@link CronCluster}, or null for none.
+	 */
+	private static void checkClusterId(CronJob j, CronCluster c) {
+		if(c!=null&&j.hasGeneratedId()) {
+			throw new IllegalArgumentException("Cron job "+j.getId()+" must be given an id to be shared by a cron cluster");
+		}
+	}
+	
+	/**
+	 * Removes a registered {@link CronJob} so that it is no longer executed. Safe to call while the cron thread is running.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 * @return True if the {@link CronJob} was registered and has been removed, false otherwise.
+	 */
+	public static boolean removeJob(CronJob j) {
+		if(!jobs.remove(j)) {
+			return false;
+		}
+		j.setRegistered(false);
+		if(cronStarted) {
+			scheduler.jobRemoved(j);
+			secondScheduler.jobRemoved(j);
+		}
+		CronJournal jrnl = journal;
+		if(jrnl!=null) {
+			jrnl.forget(j.getId());
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes the registered {@link CronJob} with the provided id so that it is no longer executed. Safe to call while the cron thread is running.
+	 * 
+	 * @param id The id of the {@link CronJob} to remove.
+	 * @return The {@link CronJob} that was removed, or null if none was registered with that id.
+	 */
+	public static CronJob removeJob(String id) {
+		CronJob j = jobs.get(id);
+		return j!=null&&removeJob(j) ? j : null;
+	}
+	
+	/**
+	 * @param id The id of a registered {@link CronJob}.
+	 * @return The registered {@link CronJob} with the provided id, or null if there is none.
+	 */
+	public static CronJob getJob(String id) {
+		return jobs.get(id);
+	}
+	
+	/**
+	 * @return The number of registered {@link CronJob}s.
+	 */
+	public static int getJobCount() {
+		return jobs.size();
+	}
+	
+	/**
+	 * Forecasts how many of the registered {@link CronJob}s will start in each minute of a stretch of time, for planning capacity ahead
+	 * of the load. The forecast is worked out on the calling thread and does not need the cron thread to be running.
+	 * 
+	 * @param fromMillis The time in epoch milliseconds from which to forecast, inclusive.
+	 * @param toMillis The time in epoch milliseconds up to which to forecast, exclusive.
+	 * @return A {@link CronForecast} of the enabled {@link CronJob}s registered when it was made.
+	 * @throws IllegalArgumentException If the forecast ends before it starts.
+	 */
+	public static CronForecast forecast(long fromMillis, long toMillis) {
+		return new CronForecast(jobs.snapshot(), fromMillis, toMillis, DateTimeServices.getClock().getZone());
+	}
+	
+	/**
+	 * Informs the cron thread that a registered {@link CronJob} has been given a new {@link CronDateTime} or {@link CronPriority}.
+	 * 
+	 * @param j The {@link CronJob} whose schedule or priority has changed.
+	 */
+	static void rescheduleJob(CronJob j) {
+		if(cronStarted) {
+			//The new schedule may have moved the job between minute-level and second-level scheduling.
+			CronScheduler target = schedulerFor(j);
+			(target==scheduler ? secondScheduler : scheduler).jobRemoved(j);
+			target.jobRescheduled(j);
+		}
+	}
+	
+	/**
+	 * @param j A {@link CronJob}.
+	 * @return The {@link CronScheduler} responsible for the {@link CronJob} under its current {@link CronDateTime}.
+	 */
+	private static CronScheduler schedulerFor(CronJob j) {
+		return j.getCronDateTime().isMinuteLevel() ? scheduler : secondScheduler;
+	}
+	
+	/**
+	 * Executes a due {@link CronJob} on the lane for its {@link CronPriority} or the job executor, unless it has been disabled or belongs to another node of the {@link CronCluster}.
+	 * An execution with a hashed window or over the dispatch rate limit is held back and executed later.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the {@link CronJob} fell due.
+	 */
+	static void dispatch(CronJob j, long dueMillis) {
+		if(dueMillis<j.getResumeMillis()) {
+			//Already handled before a restart, as recorded in the journal.
+			return;
+		}
+		long offset = j.getCronDateTime().hashedOffsetOf(j);
+		if(offset>0) {
+			held.hold(j, dueMillis, dueMillis+offset, false);
+			return;
+		}
+		release(j, dueMillis, false);
+	}
+	
+	/**
+	 * Executes a {@link CronJob} whose hashed window, if any, has passed, holding it back again if it is over the dispatch rate limit.
+	 * 
+	 * @param j The {@link CronJob} to execute.
+	 * @param dueMillis The time in epoch milliseconds at which the {@link CronJob} fell due.
+	 * @param metered True if the execution already holds a slot from the dispatch rate limit, false otherwise.
+	 */
+	static void release(CronJob j, long dueMillis, boolean metered) {
+		CronRateLimiter limiter = rateLimiter;
+		if(limiter!=null&&!metered&&j.getPriority()!=CronPriority.CRITICAL) {
+			long now = DateTimeServices.getClock().millis();
+			long slot = limiter.reserve(now);
+			if(slot>now) {
+				held.hold(j, dueMillis, slot, true);
+				return;
+			}
+		}
+		CronExecutor executor = lanes[j.getPriority().ordinal()];
+		if(executor==null) {
+			executor = jobExecutor;
+		}
+		if(executor==null) {
+			//The cron thread was stopped after this execution fell due.
+			return;
+		}
+		if(!j.isEnabled()) {
+			CronMetrics.recordSkip(j);
+			return;
+		}
+		long token = 0L;
+		CronCluster c = cluster;
+		if(c!=null) {
+			token = c.claim(j, DateTimeServices.getClock().millis());
+			if(token<0) {
+				return;
+			}
+		}
+		CronMetrics.recordFire(j);
+		executor.execute(j, dueMillis, dueMillis+j.getCronDateTime().hashedOffsetOf(j), token);
+	}
+	
+	/**
+	 * Hands an execution that a saturated {@link CronExecutor} could not queue over to the dispatch thread, see {@link CronSaturationPolicy#CALLER_RUNS}.
+	 * 
+	 * @param task The execution to run.
+	 * @return True if the execution was handed over, false if the dispatch thread is still busy with an earlier one.
+	 */
+	static boolean handOver(Runnable task) {
+		return held.handOver(task);
+	}
+	
+	/**
+	 * @return True if the calling thread is the dispatch thread, which releases held executions, false otherwise.
+	 */
+	static boolean isDispatchThread() {
+		return held.isReleaseThread();
+	}
+	
+	/**
+	 * Records that an execution has started in the {@link CronJournal}, if there is one.
+	 * 
+	 * @param j The {@link CronJob} being executed.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 */
+	static void recordStart(CronJob j, long dueMillis) {
+		CronJournal jrnl = journal;
+		if(jrnl!=null) {
+			jrnl.fired(j, dueMillis);
+		}
+	}
+	
+	/**
+	 * Records the outcome of an execution in the {@link CronJournal}, if there is one.
+	 * 
+	 * @param j The {@link CronJob} that was executed.
+	 * @param dueMillis The time in epoch milliseconds at which the execution fell due.
+	 * @param failed True if the execution threw, false otherwise.
+	 */
+	static void recordOutcome(CronJob j, long dueMillis, boolean failed) {
+		CronJournal jrnl = journal;
+		if(jrnl!=null) {
+			jrnl.finished(j, dueMillis, failed);
+		}
+	}
+	
+	/**
+	 * Hands each {@link CronJob} with an execution recorded in the {@link CronJournal} the executions it missed since.
+	 * 
+	 * @param recovering The {@link CronJob}s about to be scheduled.
+	 */
+	private static void recover(List<CronJob> recovering) {
+		long now = DateTimeServices.getClock().millis();
+		for(CronJob j : recovering) {
+			CronFireRecord last = journal.getLastFire(j.getId());
+			if(last!=null) {
+				schedulerFor(j).recover(j, last.getDueMillis(), now);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package net.aionstudios.horae;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Counts how late {@link CronJob}s start, how long they run, how often they fail or are skipped, and how long the cron threads spend
+ * evaluating them, both for each {@link CronJob} and in total, along with how many executions start in each second. Recording never locks or allocates, so it is always on.
+ * The same counters are kept for each {@link CronPriority}, along with how long executions wait for a worker, so that each
+ * {@link CronManager#setLaneExecutor(CronPriority, CronExecutor) executor lane} can be watched on its own.
+ * 
+ * Read the counters with {@link #getSnapshot()}, {@link #getSnapshot(CronPriority)} or {@link #getSnapshot(CronJob)}, or over JMX
+ * through {@link CronMetricsMXBean}.
+ * Each tick and each execution is also emitted as a JFR event in the Horae category, so that they can be lined up against garbage
+ * collection and other events in a flight recording.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronMetrics {
+	
+	/* Only totals keep histograms; a single job keeps means, so that a million of them do not each carry a few kilobytes of buckets. */
+	private static final int TOTAL_PRECISION = 3;
+	static final String OBJECT_NAME = "net.aionstudios.horae:type=CronMetrics";
+	
+	private static final CronJobMetrics total = new CronJobMetrics(TOTAL_PRECISION);
+	private static final CronJobMetrics[] lanes = new CronJobMetrics[CronPriority.LEVELS];
+	private static final CronHistogram tickTime = new CronHistogram(TOTAL_PRECISION);
+	private static final CronHistogram firesPerSecond = new CronHistogram(TOTAL_PRECISION, "/s");
+	/* The epoch second being counted in the high half and the fires counted in it so far in the low half. */
+	private static final AtomicLong currentSecond = new AtomicLong();
+	private static boolean mbeanRegistered = false;
+	
+	static {
+		for(int i = 0; i < lanes.length; i++) {
+			lanes[i] = new CronJobMetrics(TOTAL_PRECISION);
+		}
+	}
+	
+	/**
+	 * @return The counters totalled across every {@link CronJob} that has been executed, including ones since removed.
+	 */
+	public static CronMetricsSnapshot getSnapshot() {
+		countFires(DateTimeServices.getClock().millis(), 0);
+		return total.snapshot(tickTime, firesPerSecond, CronManager.getQueueDepth());
+	}
+	
+	/**
+	 * @param priority A {@link CronPriority}.
+	 * @return The counters totalled across every {@link CronJob} executed at that priority, with the queue depth of its lane.
+	 */
+	public static CronMetricsSnapshot getSnapshot(CronPriority priority) {
+		return lanes[priority.ordinal()].snapshot(null, null, CronManager.getQueueDepth(priority));
+	}
+	
+	/**
+	 * @param j A {@link CronJob}.
+	 * @return The counters for that {@link CronJob}, with the mean lag and duration but no percentiles.
+	 */
+	public static CronMetricsSnapshot getSnapshot(CronJob j) {
+		return j.getMetrics().snapshot(null, null, 0);
+	}
+	
+	static void recordFire(CronJob j) {
+		j.getMetrics().fired();
+		total.fired();
+		lane(j).fired();
+		countFires(DateTimeServices.getClock().millis(), 1);
+	}
+	
+	static void recordSkip(CronJob j) {
+		j.getMetrics().skipped();
+		total.skipped();
+		lane(j).skipped();
+	}
+	
+	static void recordMisfire(CronJob j) {
+		j.getMetrics().misfired();
+		total.misfired();
+		lane(j).misfired();
+	}
+	
+	static void recordStart(CronJob j, long lagNanos, long queueWaitNanos) {
+		j.getMetrics().started(lagNanos);
+		total.started(lagNanos);
+		total.waited(queueWaitNanos);
+		CronJobMetrics lane = lane(j);
+		lane.started(lagNanos);
+		lane.waited(queueWaitNanos);
+	}
+	
+	static void recordFinish(CronJob j, long durationNanos, boolean failed) {
+		j.getMetrics().finished(durationNanos, failed);
+		total.finished(durationNanos, failed);
+		lane(j).finished(durationNanos, failed);
+	}
+	
+	static void recordTick(long nanos) {
+		tickTime.record(nanos);
+	}
+	
+	/**
+	 * @param j A {@link CronJob}.
+	 * @return The counters for the {@link CronPriority} the {@link CronJob} currently has.
+	 */
+	private static CronJobMetrics lane(CronJob j) {
+		return lanes[j.getPriority().ordinal()];
+	}
+	
+	/**
+	 * Adds fires to the count for the current second, first recording the count for the last second fires were counted in once that
+	 * second has passed. Fires that arrive late from a second that has already passed are added to the current one.
+	 * 
+	 * @param millis The time in epoch milliseconds.
+	 * @param fires The number of fires to add, which may be 0 to record a second that has passed without adding any.
+	 */
+	private static void countFires(long millis, int fires) {
+		long second = Math.floorDiv(millis, 1000L)&0xFFFFFFFFL;
+		while(true) {
+			long v = currentSecond.get();
+			if(second<=v>>>32) {
+				if(fires==0||currentSecond.compareAndSet(v, v+fires)) {
+					return;
+				}
+			} else if(currentSecond.compareAndSet(v, second<<32|fires)) {
+				long counted = v&0xFFFFFFFFL;
+				if(counted>0) {
+					firesPerSecond.record(counted);
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Registers the {@link CronMetricsMXBean} with the platform MBean server, unless it already has been.
+	 */
+	static synchronized void registerMBean() {
+		if(mbeanRegistered) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), new ObjectName(OBJECT_NAME));
+			mbeanRegistered = true;
+		} catch(JMException e) {
+			System.err.println("Failed to register cron metrics with JMX!");
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Serves {@link CronMetricsMXBean} from fresh snapshots.
+	 */
+	private static class MXBean implements CronMetricsMXBean {
+		
+		@Override
+		public CronMetricsSnapshot getSnapshot() {
+			return CronMetrics.getSnapshot();
+		}
+		
+		@Override
+		public long getFires() {
+			return total.getFires();
+		}
+		
+		@Override
+		public long getCompletions() {
+			return total.getCompletions();
+		}
+		
+		@Override
+		public long getFailures() {
+			return total.getFailures();
+		}
+		
+		@Override
+		public long getSkipped() {
+			return total.getSkipped();
+		}
+		
+		@Override
+		public long getMisfires() {
+			return total.getMisfires();
+		}
+		
+		@Override
+		public int getQueueDepth() {
+			return CronManager.getQueueDepth();
+		}
+		
+		@Override
+		public long getLagP99() {
+			return total.getLag().getP99();
+		}
+		
+		@Override
+		public long getDurationP99() {
+			return total.getDuration().getP99();
+		}
+		
+		@Override
+		public long getTickTimeP99() {
+			return tickTime.snapshot().getP99();
+		}
+		
+		@Override
+		public long getFiresPerSecondMax() {
+			return CronMetrics.getSnapshot().getFiresPerSecond().getMax();
+		}
+		
+		@Override
+		public long getQueueWaitP99() {
+			return total.getQueueWait().getP99();
+		}
+		
+		@Override
+		public CronMetricsSnapshot getLaneSnapshot(String priority) {
+			return CronMetrics.getSnapshot(CronPriority.valueOf(priority));
+		}
+		
+		@Override
+		public CronMetricsSnapshot getJobSnapshot(String id) {
+			CronJob j = CronManager.getJob(id);
+			return j!=null ? CronMetrics.getSnapshot(j) : null;
+		}
+	
+	}
+
+}
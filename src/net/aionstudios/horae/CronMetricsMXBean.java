@@ -0,0 +1,90 @@
+package net.aionstudios.horae;
+
+/**
+ * The JMX view of {@link CronMetrics}, registered as net.aionstudios.horae:type=CronMetrics once the cron thread is started.
+ * Every duration is in nanoseconds.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public interface CronMetricsMXBean {
+	
+	/**
+	 * @return The counters totalled across every {@link CronJob}.
+	 */
+	CronMetricsSnapshot getSnapshot();
+	
+	/**
+	 * @return The number of due executions handed to the {@link CronExecutor}, totalled across every {@link CronJob} and every lane.
+	 */
+	long getFires();
+	
+	/**
+	 * @return The number of executions that have finished, whether or not they failed, totalled across every {@link CronJob} and every
+	 * lane.
+	 */
+	long getCompletions();
+	
+	/**
+	 * @return The number of executions that threw, totalled across every {@link CronJob} and every lane.
+	 */
+	long getFailures();
+	
+	/**
+	 * @return The number of due executions that were dropped because the {@link CronJob} was disabled, because of its {@link CronOverlapPolicy}
+	 * or {@link CronMisfirePolicy}, or because the {@link CronExecutor} was saturated, totalled across every lane.
+	 */
+	long getSkipped();
+	
+	/**
+	 * @return The number of times a {@link CronJob} was found to have missed executions while the cron thread was held up, counted once
+	 * per gap and totalled across every lane.
+	 */
+	long getMisfires();
+	
+	/**
+	 * @return The number of due {@link CronJob}s waiting for a worker in the job executor and every lane together, counting a lane shared
+	 * by several priorities once.
+	 */
+	int getQueueDepth();
+	
+	/**
+	 * @return The 99th percentile, in nanoseconds, of how long after they were due executions started, across every lane.
+	 */
+	long getLagP99();
+	
+	/**
+	 * @return The 99th percentile, in nanoseconds, of how long executions ran for, across every lane.
+	 */
+	long getDurationP99();
+	
+	/**
+	 * @return The 99th percentile, in nanoseconds, of how long each evaluation of the registered {@link CronJob}s took on the cron
+	 * threads, including handing due {@link CronJob}s to the {@link CronExecutor}.
+	 */
+	long getTickTimeP99();
+	
+	/**
+	 * @return The most executions handed to the {@link CronExecutor} in any one second.
+	 */
+	long getFiresPerSecondMax();
+	
+	/**
+	 * @return The 99th percentile, in nanoseconds, of how long executions waited between being handed to the {@link CronExecutor} and
+	 * starting on a worker, across every lane.
+	 */
+	long getQueueWaitP99();
+	
+	/**
+	 * @param priority The name of a {@link CronPriority}.
+	 * @return The counters for the {@link CronJob}s executed at that priority.
+	 */
+	CronMetricsSnapshot getLaneSnapshot(String priority);
+	
+	/**
+	 * @param id The id of a registered {@link CronJob}.
+	 * @return The counters for that {@link CronJob}, or null if none is registered with that id.
+	 */
+	CronMetricsSnapshot getJobSnapshot(String id);
+
+}
@@ -0,0 +1,134 @@
+package net.aionstudios.horae;
+
+/**
+ * A point-in-time copy of the counters {@link CronMetrics} keeps, either for a single {@link CronJob} or totalled across every
+ * {@link CronJob}. Counters are read one after another without stopping the threads that update them, so a snapshot taken while
+ * {@link CronJob}s are running may be off by the executions in flight.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronMetricsSnapshot {
+	
+	private final long fires;
+	private final long completions;
+	private final long failures;
+	private final long skipped;
+	private final long misfires;
+	private final CronHistogramSnapshot lag;
+	private final CronHistogramSnapshot duration;
+	private final CronHistogramSnapshot queueWait;
+	private final CronHistogramSnapshot tickTime;
+	private final CronHistogramSnapshot firesPerSecond;
+	private final int queueDepth;
+	
+	CronMetricsSnapshot(long fires, long completions, long failures, long skipped, long misfires, CronHistogramSnapshot lag,
+			CronHistogramSnapshot duration, CronHistogramSnapshot queueWait, CronHistogramSnapshot tickTime, CronHistogramSnapshot firesPerSecond,
+			int queueDepth) {
+		this.fires = fires;
+		this.completions = completions;
+		this.failures = failures;
+		this.skipped = skipped;
+		this.misfires = misfires;
+		this.lag = lag;
+		this.duration = duration;
+		this.queueWait = queueWait;
+		this.tickTime = tickTime;
+		this.firesPerSecond = firesPerSecond;
+		this.queueDepth = queueDepth;
+	}
+	
+	/**
+	 * @return The number of due executions handed to the {@link CronExecutor}.
+	 */
+	public long getFires() {
+		return fires;
+	}
+	
+	/**
+	 * @return The number of executions that have finished, whether or not they failed.
+	 */
+	public long getCompletions() {
+		return completions;
+	}
+	
+	/**
+	 * @return The number of executions that threw.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+	
+	/**
+	 * @return The number of due executions that were dropped because the {@link CronJob} was disabled, because of its {@link CronOverlapPolicy}
+	 * or {@link CronMisfirePolicy}, or because the {@link CronExecutor} was saturated.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+	
+	/**
+	 * @return The number of times a {@link CronJob} was found to have missed executions while the cron thread was held up, counted once per gap.
+	 */
+	public long getMisfires() {
+		return misfires;
+	}
+	
+	/**
+	 * @return How long after they were due executions started. Replayed misfires are measured from the time they were replayed, and
+	 * executions with a {@link CronDateTime#setHashedWindow(int) hashed window} from their place in it. Only the count and mean for a
+	 * single {@link CronJob}.
+	 */
+	public CronHistogramSnapshot getLag() {
+		return lag;
+	}
+	
+	/**
+	 * @return How long executions ran for. Only the count and mean for a single {@link CronJob}.
+	 */
+	public CronHistogramSnapshot getDuration() {
+		return duration;
+	}
+	
+	/**
+	 * @return How long executions waited between being handed to the {@link CronExecutor} and starting on a worker, which shows whether
+	 * the workers of a {@link CronManager#setLaneExecutor(CronPriority, CronExecutor) lane} are keeping up. Part of the lag, but without
+	 * the time spent in a hashed window or behind the dispatch rate limit. Empty for a single {@link CronJob}.
+	 */
+	public CronHistogramSnapshot getQueueWait() {
+		return queueWait;
+	}
+	
+	/**
+	 * @return How long each evaluation of the registered {@link CronJob}s took on the cron threads, including handing due {@link CronJob}s
+	 * to the {@link CronExecutor}. Empty for a single {@link CronJob}.
+	 */
+	public CronHistogramSnapshot getTickTime() {
+		return tickTime;
+	}
+	
+	/**
+	 * @return How many executions were handed to the {@link CronExecutor} in each second in which there was at least one, up to the last
+	 * whole second before the snapshot was taken, so that a burst of {@link CronJob}s all due at once shows up as a high maximum and one
+	 * spread out by {@link CronDateTime#setHashedWindow(int)} or {@link CronManager#setDispatchRateLimit(int)} as a low one. Each value
+	 * is a number of executions rather than a duration. Empty for a single {@link CronJob}.
+	 */
+	public CronHistogramSnapshot getFiresPerSecond() {
+		return firesPerSecond;
+	}
+	
+	/**
+	 * @return The number of due {@link CronJob}s waiting for a worker when the snapshot was taken, in the lane of a {@link CronPriority} for
+	 * that priority's counters. Always 0 for a single {@link CronJob}.
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+	
+	@Override
+	public String toString() {
+		return "fires="+fires+" completions="+completions+" failures="+failures+" skipped="+skipped+" misfires="+misfires+" queueDepth="+queueDepth
+				+"\nlag: "+lag+"\nduration: "+duration+"\nqueue wait: "+queueWait+"\ntick: "+tickTime+"\nfires per second: "+firesPerSecond;
+	}
+
+}
@@ -0,0 +1,27 @@
+package net.aionstudios.horae;
+
+/**
+ * What the {@link CronManager} does when it finds that a {@link CronJob} missed one or more executions because the cron thread was held up,
+ * for example by a long garbage collection pause, a suspended virtual machine or the system clock being stepped forward.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronMisfirePolicy {
+	
+	/**
+	 * Executes the {@link CronJob} once as soon as the missed executions are found, however many there were.
+	 */
+	FIRE_ONCE_NOW,
+	
+	/**
+	 * Executes the {@link CronJob} once for every missed execution, up to the limit set on the {@link CronJob}.
+	 */
+	FIRE_ALL_MISSED,
+	
+	/**
+	 * Drops the missed executions and waits for the next scheduled one.
+	 */
+	SKIP
+
+}
@@ -0,0 +1,31 @@
+package net.aionstudios.horae;
+
+/**
+ * What a {@link CronExecutor} does when a {@link CronJob} falls due again while a previous execution of it is still running.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronOverlapPolicy {
+	
+	/**
+	 * Starts the new execution alongside any that are still running.
+	 */
+	ALLOW_CONCURRENT,
+	
+	/**
+	 * Drops the new execution if a previous one is still running.
+	 */
+	SKIP_IF_RUNNING,
+	
+	/**
+	 * Holds at most one new execution until the running one finishes, dropping any further ones.
+	 */
+	QUEUE_ONE,
+	
+	/**
+	 * Interrupts the running execution, or cancels the stages of an {@link AsyncCronJob} still in flight, and starts the new one.
+	 */
+	CANCEL_PREVIOUS
+
+}
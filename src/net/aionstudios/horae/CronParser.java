@@ -0,0 +1,270 @@
+package net.aionstudios.horae;
+
+/**
+ * Compiles a cron expression into a {@link CronSchedule} in a single pass over its text. See {@link CronDateTime#parse(String)} for the
+ * accepted syntax.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronParser {
+	
+	private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+	private static final String[] DAY_NAMES = {"MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN"};
+	/* The lowest and highest value of each field, seconds first. */
+	private static final int[] MIN = {0, 0, 0, 1, 1, 1, CronSchedule.MIN_YEAR};
+	private static final int[] MAX = {59, 59, 23, 31, 12, 7, CronSchedule.MAX_YEAR};
+	
+	private final String expression;
+	private int pos = 0;
+	
+	private final String[] fields = {"0", "*", "*", "*", "*", "*", "*"};
+	private long seconds = 1L;
+	private long minutes;
+	private int hours;
+	private int daysOfMonth;
+	private int months;
+	private int daysOfWeek;
+	private boolean allYears = true;
+	private final long[] years = new long[CronSchedule.YEAR_WORDS];
+	private int lastDayOffsets;
+	private boolean lastWeekday;
+	private int nearestWeekdays;
+	private int lastDaysOfWeek;
+	private long nthDaysOfWeek;
+	
+	CronParser(String expression) {
+		this.expression = expression;
+	}
+	
+	/**
+	 * @return The compiled expression.
+	 * @throws IllegalArgumentException If the expression is not valid.
+	 */
+	CronSchedule parse() {
+		int count = countFields();
+		int first;
+		if(count==5||count==6) {
+			first = CronSchedule.MINUTE;
+		} else if(count==7) {
+			first = CronSchedule.SECOND;
+			seconds = 0L;
+		} else {
+			throw new IllegalArgumentException("Cron expression \""+expression+"\" has "+count+" fields, expected 5, 6 or 7");
+		}
+		for(int field = first; field < first+count; field++) {
+			skipSpaces();
+			int start = pos;
+			parseField(field);
+			fields[field] = expression.substring(start, pos);
+		}
+		skipSpaces();
+		return new CronSchedule(fields, seconds, minutes, hours, daysOfMonth, months, daysOfWeek, allYears, years,
+				lastDayOffsets, lastWeekday, nearestWeekdays, lastDaysOfWeek, nthDaysOfWeek);
+	}
+	
+	private int countFields() {
+		int count = 0;
+		boolean inField = false;
+		for(int i = 0; i < expression.length(); i++) {
+			boolean space = Character.isWhitespace(expression.charAt(i));
+			if(!space&&!inField) {
+				count++;
+			}
+			inField = !space;
+		}
+		return count;
+	}
+	
+	/**
+	 * Parses one comma separated field, leaving the position on the whitespace or end that follows it.
+	 * 
+	 * @param field The field being parsed.
+	 */
+	private void parseField(int field) {
+		if(field==CronSchedule.YEAR) {
+			allYears = false;
+		}
+		while(true) {
+			parseTerm(field);
+			if(peek()!=',') {
+				break;
+			}
+			pos++;
+		}
+		if(pos<expression.length()&&!Character.isWhitespace(expression.charAt(pos))) {
+			throw error("Unexpected character");
+		}
+	}
+	
+	private void parseTerm(int field) {
+		int min = MIN[field], max = MAX[field];
+		char c = Character.toUpperCase(peek());
+		if(c=='*'||(c=='?'&&(field==CronSchedule.DAY_OF_MONTH||field==CronSchedule.DAY_OF_WEEK))) {
+			pos++;
+			int step = parseStep();
+			if(field==CronSchedule.YEAR&&step==1) {
+				allYears = true;
+				return;
+			}
+			addRange(field, min, max, step);
+			return;
+		}
+		if(field==CronSchedule.DAY_OF_MONTH&&c=='L') {
+			pos++;
+			if(Character.toUpperCase(peek())=='W') {
+				pos++;
+				lastWeekday = true;
+			} else if(peek()=='-') {
+				pos++;
+				int offset = parseNumber();
+				if(offset>30) {
+					throw error("Day offset out of range");
+				}
+				lastDayOffsets |= 1<<offset;
+			} else {
+				lastDayOffsets |= 1;
+			}
+			return;
+		}
+		int start = parseValue(field);
+		if(field==CronSchedule.DAY_OF_MONTH&&Character.toUpperCase(peek())=='W') {
+			pos++;
+			nearestWeekdays |= 1<<start;
+			return;
+		}
+		if(field==CronSchedule.DAY_OF_WEEK&&Character.toUpperCase(peek())=='L') {
+			pos++;
+			lastDaysOfWeek |= 1<<start;
+			return;
+		}
+		if(field==CronSchedule.DAY_OF_WEEK&&peek()=='#') {
+			pos++;
+			int nth = parseNumber();
+			if(nth<1||nth>5) {
+				throw error("Day of week occurrence out of range");
+			}
+			nthDaysOfWeek |= 1L<<((start-1)*5+nth-1);
+			return;
+		}
+		int end = start;
+		if(peek()=='-') {
+			pos++;
+			end = parseValue(field);
+		} else if(peek()=='/') {
+			end = max;
+		}
+		addRange(field, start, end, parseStep());
+	}
+	
+	/**
+	 * Permits every step-th value from start to end, wrapping past the highest value of the field if end is before start.
+	 */
+	private void addRange(int field, int start, int end, int step) {
+		int width = MAX[field]-MIN[field]+1;
+		int span = Math.floorMod(end-start, width);
+		for(int offset = 0; offset <= span; offset += step) {
+			int value = MIN[field]+(start-MIN[field]+offset)%width;
+			switch(field) {
+			case CronSchedule.SECOND:
+				seconds |= 1L<<value;
+				break;
+			case CronSchedule.MINUTE:
+				minutes |= 1L<<value;
+				break;
+			case CronSchedule.HOUR:
+				hours |= 1<<value;
+				break;
+			case CronSchedule.DAY_OF_MONTH:
+				daysOfMonth |= 1<<value;
+				break;
+			case CronSchedule.MONTH:
+				months |= 1<<value;
+				break;
+			case CronSchedule.DAY_OF_WEEK:
+				daysOfWeek |= 1<<value;
+				break;
+			default:
+				int bit = value-CronSchedule.MIN_YEAR;
+				years[bit>>>6] |= 1L<<bit;
+			}
+		}
+	}
+	
+	private int parseStep() {
+		if(peek()!='/') {
+			return 1;
+		}
+		pos++;
+		int step = parseNumber();
+		if(step<1) {
+			throw error("Step must be at least 1");
+		}
+		return step;
+	}
+	
+	/**
+	 * Parses a value of a field, which for months and days of the week may also be a three letter name. Sunday may be written as 0 or 7.
+	 */
+	private int parseValue(int field) {
+		int value;
+		if(field==CronSchedule.MONTH&&Character.isLetter(peek())) {
+			value = parseName(MONTH_NAMES)+1;
+		} else if(field==CronSchedule.DAY_OF_WEEK&&Character.isLetter(peek())) {
+			value = parseName(DAY_NAMES)+1;
+		} else {
+			value = parseNumber();
+			if(field==CronSchedule.DAY_OF_WEEK&&value==0) {
+				value = 7;
+			}
+		}
+		if(value<MIN[field]||value>MAX[field]) {
+			throw error("Value out of range");
+		}
+		return value;
+	}
+	
+	private int parseName(String[] names) {
+		if(pos+3<=expression.length()) {
+			for(int i = 0; i < names.length; i++) {
+				if(expression.regionMatches(true, pos, names[i], 0, 3)) {
+					pos += 3;
+					return i;
+				}
+			}
+		}
+		throw error("Unknown name");
+	}
+	
+	private int parseNumber() {
+		int start = pos;
+		int value = 0;
+		while(pos<expression.length()&&pos-start<5) {
+			char c = expression.charAt(pos);
+			if(c<'0'||c>'9') {
+				break;
+			}
+			value = value*10+(c-'0');
+			pos++;
+		}
+		if(pos==start) {
+			throw error("Expected a number");
+		}
+		return value;
+	}
+	
+	private char peek() {
+		return pos<expression.length() ? expression.charAt(pos) : ' ';
+	}
+	
+	private void skipSpaces() {
+		while(pos<expression.length()&&Character.isWhitespace(expression.charAt(pos))) {
+			pos++;
+		}
+	}
+	
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message+" at position "+pos+" of cron expression \""+expression+"\"");
+	}
+
+}
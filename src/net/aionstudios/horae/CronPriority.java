@@ -0,0 +1,38 @@
+package net.aionstudios.horae;
+
+/**
+ * How urgently a {@link CronJob} is executed relative to others due at the same time. Within each tick, due {@link CronJob}s are handed
+ * to the {@link CronExecutor} highest priority first, and each priority may be given an executor lane of its own with
+ * {@link CronManager#setLaneExecutor(CronPriority, CronExecutor)}, so that a flood of lower priority {@link CronJob}s cannot leave
+ * higher priority ones waiting for a worker.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronPriority {
+	
+	/**
+	 * Handed over before every other priority and never held back by the {@link CronManager#setDispatchRateLimit(int) dispatch rate
+	 * limit}, for the few {@link CronJob}s that must start on time whatever else is due.
+	 */
+	CRITICAL,
+	
+	/**
+	 * Handed over after {@link #CRITICAL} {@link CronJob}s and before the rest.
+	 */
+	HIGH,
+	
+	/**
+	 * The priority every {@link CronJob} starts with.
+	 */
+	NORMAL,
+	
+	/**
+	 * Handed over after every other priority, for bulk work that can afford to wait.
+	 */
+	LOW;
+	
+	/* The number of priorities, which index arrays kept per priority by their ordinals, highest priority first. */
+	static final int LEVELS = values().length;
+
+}
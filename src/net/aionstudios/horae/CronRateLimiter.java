@@ -0,0 +1,51 @@
+package net.aionstudios.horae;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters executions out at a fixed rate by handing each one the next free slot, spaced evenly in time. A slot is never refused, only
+ * pushed later, so a burst larger than the rate is spread out rather than dropped. Reserving a slot is a single atomic update.
+ * 
+ * @author Winter Roberts
+ *
+ */
+final class CronRateLimiter {
+	
+	private final int perSecond;
+	private final long intervalMicros;
+	/* The earliest free slot in epoch microseconds. */
+	private final AtomicLong next = new AtomicLong(Long.MIN_VALUE);
+	
+	/**
+	 * @param perSecond The number of executions to let through each second.
+	 */
+	CronRateLimiter(int perSecond) {
+		this.perSecond = perSecond;
+		this.intervalMicros = Math.max(1L, 1000000L/perSecond);
+	}
+	
+	/**
+	 * @return The number of executions let through each second.
+	 */
+	int getRate() {
+		return perSecond;
+	}
+	
+	/**
+	 * Reserves the next free slot at or after a time.
+	 * 
+	 * @param nowMillis The current time in epoch milliseconds.
+	 * @return The time in epoch milliseconds of the slot reserved, which is nowMillis if the execution may go ahead at once.
+	 */
+	long reserve(long nowMillis) {
+		long now = nowMillis*1000L;
+		long n;
+		long slot;
+		do {
+			n = next.get();
+			slot = Math.max(n, now);
+		} while(!next.compareAndSet(n, slot+intervalMicros));
+		return Math.floorDiv(slot, 1000L);
+	}
+
+}
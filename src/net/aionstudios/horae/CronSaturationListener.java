@@ -0,0 +1,19 @@
+package net.aionstudios.horae;
+
+/**
+ * Receives notice from a {@link CronExecutor} whenever a due {@link CronJob} could not be queued because the executor was saturated.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public interface CronSaturationListener {
+	
+	/**
+	 * Called on the dispatching thread, so implementations should return quickly.
+	 * 
+	 * @param j The {@link CronJob} that could not be queued.
+	 * @param policy The {@link CronSaturationPolicy} that was applied to it.
+	 */
+	void onSaturated(CronJob j, CronSaturationPolicy policy);
+
+}
@@ -0,0 +1,29 @@
+package net.aionstudios.horae;
+
+/**
+ * What a bounded {@link CronExecutor} does with a due {@link CronJob} when every worker is busy and its queue is full.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronSaturationPolicy {
+	
+	/**
+	 * Drops the execution.
+	 */
+	REJECT,
+	
+	/**
+	 * Holds the {@link CronJob} aside and executes it once as soon as a worker frees up, however many times it fell due in the meantime.
+	 */
+	COALESCE,
+	
+	/**
+	 * Executes the {@link CronJob} on the {@link CronManager}'s dispatch thread instead of on a worker, so that the cron thread is never
+	 * held up by it. The dispatch thread also releases executions held back by a hashed window or the dispatch rate limit, which wait
+	 * until the {@link CronJob} finishes, so this suits short {@link CronJob}s only. The dispatch thread runs one such execution at a
+	 * time; any that overflow while it is busy are dropped, as with {@link #REJECT}.
+	 */
+	CALLER_RUNS
+
+}
@@ -0,0 +1,962 @@
+package net.aionstudios.horae;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+
+/**
+ * The compiled, immutable form of a {@link CronDateTime}, one bit per permitted value of each field. A {@link CronDateTime} is changed by
+ * replacing its {@link CronSchedule}, so a {@link CronSchedule} can be shared by any number of {@link CronDateTime}s and {@link CronJob}s.
+ *
+ * Two {@link CronSchedule}s are equal when they permit exactly the same times in the same time zone, however their expressions were written.
+ * 
+ * @author Winter Roberts
+ *
+ */
+final class CronSchedule {
+	
+	static final int SECOND = 0;
+	static final int MINUTE = 1;
+	static final int HOUR = 2;
+	static final int DAY_OF_MONTH = 3;
+	static final int MONTH = 4;
+	static final int DAY_OF_WEEK = 5;
+	static final int YEAR = 6;
+	
+	static final int MIN_YEAR = 1900;
+	static final int MAX_YEAR = 3000;
+	/* The Gregorian calendar repeats every 400 years, so a search that covers one whole cycle without a match never will. */
+	private static final int CALENDAR_CYCLE_YEARS = 400;
+	/* The most distinct expressions, counting each time zone they are read in separately, kept compiled by compile(String, ZoneId). */
+	private static final int CACHE_SIZE = 4096;
+	
+	static final long ALL_SECONDS = rangeMask(0, 59);
+	static final long ALL_MINUTES = rangeMask(0, 59);
+	static final int ALL_HOURS = (int) rangeMask(0, 23);
+	static final int ALL_DAYS_OF_MONTH = (int) rangeMask(1, 31);
+	static final int ALL_MONTHS = (int) rangeMask(1, 12);
+	static final int ALL_DAYS_OF_WEEK = (int) rangeMask(1, 7);
+	static final int YEAR_WORDS = ((MAX_YEAR-MIN_YEAR)>>>6)+1;
+	
+	/**
+	 * The {@link CronSchedule} of a new {@link CronDateTime}, which permits second 0 of every minute.
+	 */
+	static final CronSchedule EVERY_MINUTE = new CronSchedule(new String[] {"0", "*", "*", "*", "*", "*", "*"}, 1L, ALL_MINUTES, ALL_HOURS,
+			ALL_DAYS_OF_MONTH, ALL_MONTHS, ALL_DAYS_OF_WEEK, true, new long[YEAR_WORDS], 0, false, 0, 0, 0L);
+	
+	/* Compiled expressions by their text and time zone, least recently used first. */
+	private static final Map<CacheKey, CronSchedule> cache = new LinkedHashMap<CacheKey, CronSchedule>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, CronSchedule> eldest) {
+			return size()>CACHE_SIZE;
+		}
+	
+	};
+	
+	/* The text of each field, seconds first, as it was written. */
+	private final String[] fields;
+	private final long seconds;
+	private final long minutes;
+	private final int hours;
+	private final int daysOfMonth;
+	private final int months;
+	private final int daysOfWeek;
+	private final boolean allYears;
+	private final long[] years;
+	/*
+	 * The day rules that depend on the month being searched. Bit n of lastDayOffsets permits the nth day before the last (L-n), nearestWeekdays
+	 * holds the days written as nW, lastDaysOfWeek holds the days of the week written as nL and bit (dow-1)*5+(k-1) of nthDaysOfWeek permits
+	 * the kth such day of the week in the month (dow#k).
+	 */
+	private final int lastDayOffsets;
+	private final boolean lastWeekday;
+	private final int nearestWeekdays;
+	private final int lastDaysOfWeek;
+	private final long nthDaysOfWeek;
+	private final boolean specialDays;
+	/* The time zone the fields are read in, or null for the zone of the DateTimeServices clock. */
+	private final ZoneId zone;
+	private final int hash;
+	
+	CronSchedule(String[] fields, long seconds, long minutes, int hours, int daysOfMonth, int months, int daysOfWeek, boolean allYears, long[] years,
+			int lastDayOffsets, boolean lastWeekday, int nearestWeekdays, int lastDaysOfWeek, long nthDaysOfWeek) {
+		this(fields, seconds, minutes, hours, daysOfMonth, months, daysOfWeek, allYears, years, lastDayOffsets, lastWeekday, nearestWeekdays,
+				lastDaysOfWeek, nthDaysOfWeek, null);
+	}
+	
+	private CronSchedule(String[] fields, long seconds, long minutes, int hours, int daysOfMonth, int months, int daysOfWeek, boolean allYears, long[] years,
+			int lastDayOffsets, boolean lastWeekday, int nearestWeekdays, int lastDaysOfWeek, long nthDaysOfWeek, ZoneId zone) {
+		this.fields = fields;
+		this.seconds = seconds;
+		this.minutes = minutes;
+		this.hours = hours;
+		this.daysOfMonth = daysOfMonth;
+		this.months = months;
+		this.daysOfWeek = daysOfWeek;
+		this.allYears = allYears;
+		this.years = years;
+		this.lastDayOffsets = lastDayOffsets;
+		this.lastWeekday = lastWeekday;
+		this.nearestWeekdays = nearestWeekdays;
+		this.lastDaysOfWeek = lastDaysOfWeek;
+		this.nthDaysOfWeek = nthDaysOfWeek;
+		this.specialDays = lastDayOffsets!=0||lastWeekday||nearestWeekdays!=0||lastDaysOfWeek!=0||nthDaysOfWeek!=0;
+		this.zone = zone;
+		int h = Long.hashCode(seconds);
+		h = 31*h+Long.hashCode(minutes);
+		h = 31*h+hours;
+		h = 31*h+daysOfMonth;
+		h = 31*h+months;
+		h = 31*h+daysOfWeek;
+		h = 31*h+(allYears ? 1 : Arrays.hashCode(years));
+		h = 31*h+lastDayOffsets;
+		h = 31*h+(lastWeekday ? 1 : 0);
+		h = 31*h+nearestWeekdays;
+		h = 31*h+lastDaysOfWeek;
+		h = 31*h+Long.hashCode(nthDaysOfWeek);
+		h = 31*h+Objects.hashCode(zone);
+		this.hash = h;
+	}
+	
+	/**
+	 * Compiles a cron expression, reusing the {@link CronSchedule} already compiled for the same text if there is one.
+	 * 
+	 * @param expression The cron expression, as accepted by {@link CronDateTime#parse(String)}.
+	 * @return The compiled expression.
+	 * @throws IllegalArgumentException If the expression is not valid.
+	 */
+	static CronSchedule compile(String expression) {
+		return compile(expression, null);
+	}
+	
+	/**
+	 * Compiles a cron expression read in a time zone, reusing the {@link CronSchedule} already compiled for the same text and zone if
+	 * there is one.
+	 * 
+	 * @param expression The cron expression, as accepted by {@link CronDateTime#parse(String)}.
+	 * @param zone The time zone, or null for the zone of the {@link net.aionstudios.horae.service.DateTimeServices} clock.
+	 * @return The compiled expression.
+	 * @throws IllegalArgumentException If the expression is not valid.
+	 */
+	static CronSchedule compile(String expression, ZoneId zone) {
+		CacheKey key = new CacheKey(expression, zone);
+		synchronized(cache) {
+			CronSchedule schedule = cache.get(key);
+			if(schedule!=null) {
+				return schedule;
+			}
+		}
+		CronSchedule schedule = zone==null ? new CronParser(expression).parse() : compile(expression).withZone(zone);
+		synchronized(cache) {
+			CronSchedule raced = cache.get(key);
+			if(raced!=null) {
+				return raced;
+			}
+			cache.put(key, schedule);
+		}
+		return schedule;
+	}
+	
+	/**
+	 * @param start The lowest bit to set (0-63).
+	 * @param end The highest bit to set (0-63), greater than or equal to start.
+	 * @return A mask with every bit from start to end inclusive set.
+	 */
+	static long rangeMask(int start, int end) {
+		return (-1L>>>(63-end))&(-1L<<start);
+	}
+	
+	/**
+	 * Creates a copy of this {@link CronSchedule} with one field set to, or extended by, a range of values.
+	 * 
+	 * @param field The field to change.
+	 * @param start The first value of the range, already validated for the field.
+	 * @param end The last value of the range, already validated for the field.
+	 * @param append True to add the range to the values the field already permits, false to replace them.
+	 * @return The new {@link CronSchedule}.
+	 */
+	CronSchedule withRange(int field, int start, int end, boolean append) {
+		String range = start!=end ? start+"-"+end : start+"";
+		append = append&&!isAll(fields[field]);
+		String[] f = fields.clone();
+		f[field] = append ? fields[field]+","+range : range;
+		if(field==YEAR) {
+			long[] y = append&&!allYears ? years.clone() : new long[YEAR_WORDS];
+			for(int i = start-MIN_YEAR; i <= end-MIN_YEAR; i++) {
+				y[i>>>6] |= 1L<<i;
+			}
+			return with(f, field, 0L, false, y, append);
+		}
+		long mask = rangeMask(start, end);
+		return with(f, field, append ? mask|mask(field) : mask, false, years, append);
+	}
+	
+	/**
+	 * Creates a copy of this {@link CronSchedule} with one field permitting every value.
+	 * 
+	 * @param field The field to change.
+	 * @return The new {@link CronSchedule}.
+	 */
+	CronSchedule withAll(int field) {
+		String[] f = fields.clone();
+		f[field] = "*";
+		switch(field) {
+		case SECOND:
+			return with(f, field, ALL_SECONDS, false, years, false);
+		case MINUTE:
+			return with(f, field, ALL_MINUTES, false, years, false);
+		case HOUR:
+			return with(f, field, ALL_HOURS, false, years, false);
+		case DAY_OF_MONTH:
+			return with(f, field, ALL_DAYS_OF_MONTH, false, years, false);
+		case MONTH:
+			return with(f, field, ALL_MONTHS, false, years, false);
+		case DAY_OF_WEEK:
+			return with(f, field, ALL_DAYS_OF_WEEK, false, years, false);
+		default:
+			return with(f, field, 0L, true, years, false);
+		}
+	}
+	
+	private CronSchedule with(String[] f, int field, long mask, boolean allYears, long[] years, boolean keepSpecialDays) {
+		boolean keepDays = keepSpecialDays||field!=DAY_OF_MONTH;
+		boolean keepWeekdays = keepSpecialDays||field!=DAY_OF_WEEK;
+		return new CronSchedule(f,
+				field==SECOND ? mask : seconds,
+				field==MINUTE ? mask : minutes,
+				field==HOUR ? (int) mask : hours,
+				field==DAY_OF_MONTH ? (int) mask : daysOfMonth,
+				field==MONTH ? (int) mask : months,
+				field==DAY_OF_WEEK ? (int) mask : daysOfWeek,
+				field==YEAR ? allYears : this.allYears,
+				field==YEAR ? years : this.years,
+				keepDays ? lastDayOffsets : 0, keepDays&&lastWeekday, keepDays ? nearestWeekdays : 0,
+				keepWeekdays ? lastDaysOfWeek : 0, keepWeekdays ? nthDaysOfWeek : 0L, zone);
+	}
+	
+	/**
+	 * Creates a copy of this {@link CronSchedule} read in another time zone.
+	 * 
+	 * @param zone The time zone, or null for the zone of the {@link net.aionstudios.horae.service.DateTimeServices} clock.
+	 * @return The new {@link CronSchedule}, or this one if it is already in the zone.
+	 */
+	CronSchedule withZone(ZoneId zone) {
+		if(Objects.equals(zone, this.zone)) {
+			return this;
+		}
+		return new CronSchedule(fields, seconds, minutes, hours, daysOfMonth, months, daysOfWeek, allYears, years, lastDayOffsets, lastWeekday,
+				nearestWeekdays, lastDaysOfWeek, nthDaysOfWeek, zone);
+	}
+	
+	/**
+	 * @return The time zone the fields are read in, or null for the zone of the {@link net.aionstudios.horae.service.DateTimeServices} clock.
+	 */
+	ZoneId getZone() {
+		return zone;
+	}
+	
+	private long mask(int field) {
+		switch(field) {
+		case SECOND:
+			return seconds;
+		case MINUTE:
+			return minutes;
+		case HOUR:
+			return hours;
+		case DAY_OF_MONTH:
+			return daysOfMonth;
+		case MONTH:
+			return months;
+		default:
+			return daysOfWeek;
+		}
+	}
+	
+	private static boolean isAll(String field) {
+		return field.equals("*")||field.equals("?");
+	}
+	
+	/**
+	 * @return The compiled set of permitted seconds, one bit per second (0-59).
+	 */
+	long getSecondMask() {
+		return seconds;
+	}
+	
+	/**
+	 * @return The compiled set of permitted minutes, one bit per minute (0-59).
+	 */
+	long getMinuteMask() {
+		return minutes;
+	}
+	
+	/**
+	 * @return The compiled set of permitted hours, one bit per hour (0-23).
+	 */
+	int getHourMask() {
+		return hours;
+	}
+	
+	/**
+	 * @see CronDateTime#hasSecond(int)
+	 */
+	boolean hasSecond(int match) {
+		return match>=0&&match<60&&(seconds&(1L<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasMinute(int)
+	 */
+	boolean hasMinute(int match) {
+		return match>=0&&match<60&&(minutes&(1L<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasHour(int)
+	 */
+	boolean hasHour(int match) {
+		return match>=0&&match<24&&(hours&(1<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasDayOfMonth(int)
+	 */
+	boolean hasDayOfMonth(int match) {
+		return match>0&&match<32&&(daysOfMonth&(1<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasMonth(int)
+	 */
+	boolean hasMonth(int match) {
+		return match>0&&match<13&&(months&(1<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasDayOfWeek(int)
+	 */
+	boolean hasDayOfWeek(int match) {
+		return match>0&&match<8&&(daysOfWeek&(1<<match))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#hasYear(int)
+	 */
+	boolean hasYear(int match) {
+		if(allYears) {
+			return true;
+		}
+		int bit = match-MIN_YEAR;
+		return bit>=0&&bit<=MAX_YEAR-MIN_YEAR&&(years[bit>>>6]&(1L<<bit))!=0;
+	}
+	
+	/**
+	 * @see CronDateTime#matches(int, int, int, int, int, int)
+	 */
+	boolean matches(int min, int hour, int dom, int month, int dow, int year) {
+		if(!hasMinute(min)||!hasHour(hour)||!hasMonth(month)||!hasYear(year)) {
+			return false;
+		}
+		if(!specialDays) {
+			return hasDayOfMonth(dom)&&hasDayOfWeek(dow);
+		}
+		return dom>0&&dom<=lengthOfMonth(year, month)&&permitsDay(year, month, dom, dow);
+	}
+	
+	/**
+	 * @param y The year.
+	 * @param mo The month (1-12).
+	 * @param d The day of the month, within the month.
+	 * @param dow The day of the week of that day (1-7).
+	 * @return True if both the day of the month and day of the week rules permit the day, false otherwise.
+	 */
+	private boolean permitsDay(int y, int mo, int d, int dow) {
+		int length = lengthOfMonth(y, mo);
+		return permitsDayOfMonth(y, mo, d, length)&&permitsDayOfWeek(d, dow, length);
+	}
+	
+	private boolean permitsDayOfMonth(int y, int mo, int d, int length) {
+		if((daysOfMonth&(1<<d))!=0) {
+			return true;
+		}
+		if((lastDayOffsets&(1<<(length-d)))!=0) {
+			return true;
+		}
+		if(lastWeekday&&d==nearestWeekday(y, mo, length, length)) {
+			return true;
+		}
+		if(nearestWeekdays!=0) {
+			//The weekday nearest to a day is never more than two days from it.
+			for(int n = Math.max(1, d-2); n <= Math.min(length, d+2); n++) {
+				if((nearestWeekdays&(1<<n))!=0&&nearestWeekday(y, mo, n, length)==d) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private boolean permitsDayOfWeek(int d, int dow, int length) {
+		if((daysOfWeek&(1<<dow))!=0) {
+			return true;
+		}
+		if((lastDaysOfWeek&(1<<dow))!=0&&d+7>length) {
+			return true;
+		}
+		return (nthDaysOfWeek&(1L<<((dow-1)*5+(d-1)/7)))!=0;
+	}
+	
+	/**
+	 * @param y The year.
+	 * @param mo The month (1-12).
+	 * @param n A day of the month.
+	 * @param length The number of days in the month.
+	 * @return The weekday nearest to the day, without leaving the month.
+	 */
+	private static int nearestWeekday(int y, int mo, int n, int length) {
+		int dow = dayOfWeek(y, mo, n);
+		if(dow==6) {
+			return n==1 ? 3 : n-1;
+		}
+		if(dow==7) {
+			return n==length ? n-2 : n+1;
+		}
+		return n;
+	}
+	
+	/**
+	 * @see CronDateTime#nextExecutionAfter(ZonedDateTime)
+	 */
+	Optional<ZonedDateTime> nextExecutionAfter(ZonedDateTime after) {
+		if(zone!=null) {
+			after = after.withZoneSameInstant(zone);
+		}
+		Optional<ZonedDateTime> next = nextExecutionFrom(after.toLocalDateTime(), after);
+		ZoneRules rules = after.getZone().getRules();
+		if(!rules.isFixedOffset()) {
+			//Local times removed by clocks going forward run as far after the gap as they were into it, so shortly after a gap the rest
+			//of it is still to come, though it reads earlier than the current local time.
+			ZoneOffsetTransition previous = rules.previousTransition(after.toInstant().plusNanos(1));
+			if(previous!=null&&previous.isGap()&&after.toInstant().isBefore(previous.getInstant().plus(previous.getDuration()))) {
+				Optional<ZonedDateTime> skipped = nextExecutionFrom(after.toLocalDateTime().minus(previous.getDuration()), after);
+				if(skipped.isPresent()&&(!next.isPresent()||skipped.get().isBefore(next.get()))) {
+					next = skipped;
+				}
+			}
+		}
+		return next;
+	}
+	
+	/**
+	 * @param start The local time to search forward from.
+	 * @param after The time the result must be strictly after.
+	 * @return The first time permitted after both, or empty if there is none.
+	 */
+	private Optional<ZonedDateTime> nextExecutionFrom(LocalDateTime start, ZonedDateTime after) {
+		LocalDateTime local = start;
+		while(true) {
+			int y = local.getYear(), mo = local.getMonthValue(), d = local.getDayOfMonth(), h = local.getHour(), mi = local.getMinute(), sec = local.getSecond()+1;
+			int yearLimit = allYears ? y+CALENDAR_CYCLE_YEARS : MAX_YEAR;
+			while(true) {
+				if(y>yearLimit) {
+					return Optional.empty();
+				}
+				if(!hasYear(y)) {
+					y = nextYear(y+1);
+					if(y<0) {
+						return Optional.empty();
+					}
+					mo = 1; d = 1; h = 0; mi = 0; sec = 0;
+				}
+				int nm = nextBit(months, mo);
+				if(nm<0) {
+					y++; mo = 1; d = 1; h = 0; mi = 0; sec = 0;
+					continue;
+				}
+				if(nm!=mo) {
+					mo = nm; d = 1; h = 0; mi = 0; sec = 0;
+				}
+				int nd = nextDay(y, mo, d);
+				if(nd<0) {
+					mo++; d = 1; h = 0; mi = 0; sec = 0;
+					continue;
+				}
+				if(nd!=d) {
+					d = nd; h = 0; mi = 0; sec = 0;
+				}
+				int nh = nextBit(hours, h);
+				if(nh<0) {
+					d++; h = 0; mi = 0; sec = 0;
+					continue;
+				}
+				if(nh!=h) {
+					h = nh; mi = 0; sec = 0;
+				}
+				int nmi = nextBit(minutes, mi);
+				if(nmi<0) {
+					h++; mi = 0; sec = 0;
+					continue;
+				}
+				if(nmi!=mi) {
+					mi = nmi; sec = 0;
+				}
+				int nsec = nextBit(seconds, sec);
+				if(nsec<0) {
+					mi++; sec = 0;
+					continue;
+				}
+				sec = nsec;
+				break;
+			}
+			//A local time repeated when clocks go back only counts the first time, so the later offset is never preferred.
+			local = LocalDateTime.of(y, mo, d, h, mi, sec);
+			ZonedDateTime next = ZonedDateTime.ofLocal(local, after.getZone(), null);
+			if(next.isAfter(after)) {
+				return Optional.of(next);
+			}
+		}
+	}
+	
+	/**
+	 * @param fromMillis The time in epoch milliseconds from which to list permitted times, inclusive.
+	 * @param toMillis The time in epoch milliseconds up to which to list permitted times, exclusive.
+	 * @param clockZone The time zone to read the fields in if this {@link CronSchedule} has none of its own.
+	 * @return Every permitted time in the range in epoch milliseconds, in order, found one at a time as they are asked for.
+	 */
+	PrimitiveIterator.OfLong executionsBetween(long fromMillis, long toMillis, ZoneId clockZone) {
+		return new Executions(fromMillis, toMillis, zone!=null ? zone : clockZone);
+	}
+	
+	/**
+	 * @see CronDateTime#previousExecutionBefore(ZonedDateTime)
+	 */
+	Optional<ZonedDateTime> previousExecutionBefore(ZonedDateTime before) {
+		if(zone!=null) {
+			before = before.withZoneSameInstant(zone);
+		}
+		Optional<ZonedDateTime> previous = previousExecutionFrom(before.toLocalDateTime(), before);
+		ZoneRules rules = before.getZone().getRules();
+		if(!rules.isFixedOffset()) {
+			//Local times repeated when clocks go back run the first time they are read, so while they are being read again the first
+			//pass through them has already been and gone, though it reads later than the current local time.
+			ZoneOffsetTransition transition = rules.previousTransition(before.toInstant().plusNanos(1));
+			if(transition!=null&&transition.isOverlap()&&before.toInstant().isBefore(transition.getInstant().minus(transition.getDuration()))) {
+				Optional<ZonedDateTime> repeated = previousExecutionFrom(before.toLocalDateTime().minus(transition.getDuration()), before);
+				if(repeated.isPresent()&&(!previous.isPresent()||repeated.get().isAfter(previous.get()))) {
+					previous = repeated;
+				}
+			}
+		}
+		return previous;
+	}
+	
+	/**
+	 * @param start The local time to search back from.
+	 * @param before The time the result must be strictly before.
+	 * @return The last time permitted before both, or empty if there is none.
+	 */
+	private Optional<ZonedDateTime> previousExecutionFrom(LocalDateTime start, ZonedDateTime before) {
+		LocalDateTime local = start;
+		while(true) {
+			int y = local.getYear(), mo = local.getMonthValue(), d = local.getDayOfMonth(), h = local.getHour(), mi = local.getMinute(), sec = local.getSecond();
+			if(local.getNano()==0) {
+				sec--;
+			}
+			int yearLimit = allYears ? y-CALENDAR_CYCLE_YEARS : MIN_YEAR;
+			while(true) {
+				if(y<yearLimit) {
+					return Optional.empty();
+				}
+				if(!hasYear(y)) {
+					y = previousYear(y-1);
+					if(y<0) {
+						return Optional.empty();
+					}
+					mo = 12; d = 31; h = 23; mi = 59; sec = 59;
+				}
+				int pm = previousBit(months, mo);
+				if(pm<0) {
+					y--; mo = 12; d = 31; h = 23; mi = 59; sec = 59;
+					continue;
+				}
+				if(pm!=mo) {
+					mo = pm; d = 31; h = 23; mi = 59; sec = 59;
+				}
+				int pd = previousDay(y, mo, d);
+				if(pd<0) {
+					mo--; d = 31; h = 23; mi = 59; sec = 59;
+					continue;
+				}
+				if(pd!=d) {
+					d = pd; h = 23; mi = 59; sec = 59;
+				}
+				int ph = previousBit(hours, h);
+				if(ph<0) {
+					d--; h = 23; mi = 59; sec = 59;
+					continue;
+				}
+				if(ph!=h) {
+					h = ph; mi = 59; sec = 59;
+				}
+				int pmi = previousBit(minutes, mi);
+				if(pmi<0) {
+					h--; mi = 59; sec = 59;
+					continue;
+				}
+				if(pmi!=mi) {
+					mi = pmi; sec = 59;
+				}
+				int psec = previousBit(seconds, sec);
+				if(psec<0) {
+					mi--; sec = 59;
+					continue;
+				}
+				sec = psec;
+				break;
+			}
+			//A local time removed by clocks going forward runs after the gap, possibly after the time searched back from, in which case the
+			//search carries on from the local time rather than from where it runs, or it would find the same local time again.
+			local = LocalDateTime.of(y, mo, d, h, mi, sec);
+			ZonedDateTime previous = ZonedDateTime.ofLocal(local, before.getZone(), null);
+			if(previous.isBefore(before)) {
+				return Optional.of(previous);
+			}
+		}
+	}
+	
+	/**
+	 * @param y The year being searched.
+	 * @param mo The month being searched.
+	 * @param from The first day of the month to consider.
+	 * @return The first day of the month at or after from permitted by both the day of the month and day of the week rules, or -1 if there is none.
+	 */
+	private int nextDay(int y, int mo, int from) {
+		int length = lengthOfMonth(y, mo);
+		if(specialDays) {
+			for(int d = Math.max(from, 1); d <= length; d++) {
+				if(permitsDay(y, mo, d, dayOfWeek(y, mo, d))) {
+					return d;
+				}
+			}
+			return -1;
+		}
+		for(int d = nextBit(daysOfMonth, from); d>0&&d<=length; d = nextBit(daysOfMonth, d+1)) {
+			if(hasDayOfWeek(dayOfWeek(y, mo, d))) {
+				return d;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param y The year being searched.
+	 * @param mo The month being searched.
+	 * @param from The last day of the month to consider.
+	 * @return The last day of the month at or before from permitted by both the day of the month and day of the week rules, or -1 if there is none.
+	 */
+	private int previousDay(int y, int mo, int from) {
+		if(specialDays) {
+			for(int d = Math.min(from, lengthOfMonth(y, mo)); d > 0; d--) {
+				if(permitsDay(y, mo, d, dayOfWeek(y, mo, d))) {
+					return d;
+				}
+			}
+			return -1;
+		}
+		for(int d = previousBit(daysOfMonth, Math.min(from, lengthOfMonth(y, mo))); d>0; d = previousBit(daysOfMonth, d-1)) {
+			if(hasDayOfWeek(dayOfWeek(y, mo, d))) {
+				return d;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param from The first year to consider.
+	 * @return The first permitted year at or after from, or -1 if there is none.
+	 */
+	private int nextYear(int from) {
+		if(allYears) {
+			return from;
+		}
+		for(int i = Math.max(from-MIN_YEAR, 0); i <= MAX_YEAR-MIN_YEAR; i++) {
+			long word = years[i>>>6]&(-1L<<i);
+			if(word!=0) {
+				return MIN_YEAR+((i>>>6)<<6)+Long.numberOfTrailingZeros(word);
+			}
+			i |= 63;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param from The last year to consider.
+	 * @return The last permitted year at or before from, or -1 if there is none.
+	 */
+	private int previousYear(int from) {
+		if(allYears) {
+			return from;
+		}
+		for(int i = Math.min(from-MIN_YEAR, MAX_YEAR-MIN_YEAR); i >= 0; i--) {
+			long word = years[i>>>6]&(-1L>>>(63-(i&63)));
+			if(word!=0) {
+				return MIN_YEAR+((i>>>6)<<6)+63-Long.numberOfLeadingZeros(word);
+			}
+			i &= ~63;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param mask A compiled field.
+	 * @param from The lowest bit to consider.
+	 * @return The lowest set bit at or above from, or -1 if there is none.
+	 */
+	private static int nextBit(long mask, int from) {
+		if(from>63) {
+			return -1;
+		}
+		long bits = mask&(-1L<<from);
+		return bits==0 ? -1 : Long.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * @param mask A compiled field.
+	 * @param from The lowest bit to consider.
+	 * @return The lowest set bit at or above from, or -1 if there is none.
+	 */
+	private static int nextBit(int mask, int from) {
+		if(from>31) {
+			return -1;
+		}
+		int bits = mask&(-1<<from);
+		return bits==0 ? -1 : Integer.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * @param mask A compiled field.
+	 * @param from The highest bit to consider.
+	 * @return The highest set bit at or below from, or -1 if there is none.
+	 */
+	private static int previousBit(long mask, int from) {
+		if(from<0) {
+			return -1;
+		}
+		long bits = mask&(-1L>>>(63-Math.min(from, 63)));
+		return bits==0 ? -1 : 63-Long.numberOfLeadingZeros(bits);
+	}
+	
+	/**
+	 * @param mask A compiled field.
+	 * @param from The highest bit to consider.
+	 * @return The highest set bit at or below from, or -1 if there is none.
+	 */
+	private static int previousBit(int mask, int from) {
+		if(from<0) {
+			return -1;
+		}
+		int bits = mask&(-1>>>(31-Math.min(from, 31)));
+		return bits==0 ? -1 : 31-Integer.numberOfLeadingZeros(bits);
+	}
+	
+	/**
+	 * @param y The year.
+	 * @param mo The month (1-12).
+	 * @return The number of days in the month.
+	 */
+	static int lengthOfMonth(int y, int mo) {
+		if(mo==2) {
+			return (y%4==0&&(y%100!=0||y%400==0)) ? 29 : 28;
+		}
+		return (mo==4||mo==6||mo==9||mo==11) ? 30 : 31;
+	}
+	
+	/**
+	 * @param y The year.
+	 * @param mo The month (1-12).
+	 * @param d The day of the month.
+	 * @return The cron-functional day of the week (1-7, Monday through Sunday).
+	 */
+	static int dayOfWeek(int y, int mo, int d) {
+		if(mo<3) {
+			y--;
+			mo += 12;
+		}
+		int h = (d+(13*(mo+1))/5+y+y/4-y/100+y/400)%7;
+		return ((h+5)%7)+1;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if(o==this) {
+			return true;
+		}
+		if(!(o instanceof CronSchedule)) {
+			return false;
+		}
+		CronSchedule s = (CronSchedule) o;
+		return hash==s.hash&&seconds==s.seconds&&minutes==s.minutes&&hours==s.hours&&daysOfMonth==s.daysOfMonth&&months==s.months
+				&&daysOfWeek==s.daysOfWeek&&allYears==s.allYears&&(allYears||Arrays.equals(years, s.years))&&lastDayOffsets==s.lastDayOffsets
+				&&lastWeekday==s.lastWeekday&&nearestWeekdays==s.nearestWeekdays&&lastDaysOfWeek==s.lastDaysOfWeek&&nthDaysOfWeek==s.nthDaysOfWeek
+				&&Objects.equals(zone, s.zone);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	/**
+	 * @return The expression as written, without the seconds field unless it permits more than second 0. s m h d m w y
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = seconds==1L&&fields[SECOND].equals("0") ? MINUTE : SECOND; i <= YEAR; i++) {
+			if(sb.length()>0) {
+				sb.append(' ');
+			}
+			sb.append(fields[i]);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Steps through the permitted times in a range. Within a day that is clear of daylight saving changes, the permitted seconds,
+	 * minutes and hours of that day are stepped through with the compiled fields alone, without allocating; the first permitted time
+	 * of each day, and every permitted time on a day with a change, is found with {@link CronSchedule#nextExecutionAfter(ZonedDateTime)}.
+	 */
+	private class Executions implements PrimitiveIterator.OfLong {
+		
+		private static final long NOT_CLEAR = Long.MIN_VALUE;
+		
+		private final long toMillis;
+		private final ZoneId zone;
+		private final ZoneRules rules;
+		private long next;
+		private boolean done = false;
+		/* The epoch milliseconds of midnight on the day of next while that day is clear of daylight saving changes, or NOT_CLEAR. */
+		private long dayMillis = NOT_CLEAR;
+		private int hour;
+		private int minute;
+		private int second;
+		
+		private Executions(long fromMillis, long toMillis, ZoneId zone) {
+			this.toMillis = toMillis;
+			this.zone = zone;
+			this.rules = zone.getRules();
+			seek(fromMillis-1);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return !done;
+		}
+		
+		@Override
+		public long nextLong() {
+			if(done) {
+				throw new NoSuchElementException();
+			}
+			long n = next;
+			advance();
+			return n;
+		}
+		
+		private void advance() {
+			if(dayMillis!=NOT_CLEAR) {
+				int sec = nextBit(seconds, second+1);
+				int mi = minute;
+				int h = hour;
+				if(sec<0) {
+					sec = nextBit(seconds, 0);
+					mi = nextBit(minutes, minute+1);
+					if(mi<0) {
+						mi = nextBit(minutes, 0);
+						h = nextBit(hours, hour+1);
+					}
+				}
+				if(h>=0) {
+					hour = h;
+					minute = mi;
+					second = sec;
+					next = dayMillis+((h*60L+mi)*60L+sec)*1000L;
+					done = next>=toMillis;
+					return;
+				}
+			}
+			seek(next);
+		}
+		
+		/**
+		 * Finds the first permitted time strictly after a time, and whether the rest of its day can be stepped through without zone rules.
+		 */
+		private void seek(long afterMillis) {
+			Optional<ZonedDateTime> found = nextExecutionAfter(ZonedDateTime.ofInstant(Instant.ofEpochMilli(afterMillis), zone));
+			if(!found.isPresent()) {
+				done = true;
+				return;
+			}
+			ZonedDateTime at = found.get();
+			next = at.toInstant().toEpochMilli();
+			done = next>=toMillis;
+			hour = at.getHour();
+			minute = at.getMinute();
+			second = at.getSecond();
+			dayMillis = next-((hour*60L+minute)*60L+second)*1000L;
+			if(!rules.isFixedOffset()) {
+				//A change earlier in the day may still have skipped times to run, and one later in it moves every time after it.
+				ZoneOffsetTransition previous = rules.previousTransition(at.toInstant().plusNanos(1));
+				ZoneOffsetTransition following = rules.nextTransition(at.toInstant());
+				if(previous!=null&&previous.getInstant().toEpochMilli()+Math.abs(previous.getDuration().toMillis())>dayMillis
+						||following!=null&&following.getInstant().toEpochMilli()<dayMillis+86400000L) {
+					dayMillis = NOT_CLEAR;
+				}
+			}
+		}
+	
+	}
+	
+	/**
+	 * The text of an expression and the time zone it is read in, under which its compiled form is cached.
+	 */
+	private static class CacheKey {
+		
+		private final String expression;
+		private final ZoneId zone;
+		
+		private CacheKey(String expression, ZoneId zone) {
+			this.expression = expression;
+			this.zone = zone;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey k = (CacheKey) o;
+			return expression.equals(k.expression)&&Objects.equals(zone, k.zone);
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31*expression.hashCode()+Objects.hashCode(zone);
+		}
+	
+	}
+
+}
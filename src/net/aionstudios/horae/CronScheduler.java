@@ -0,0 +1,285 @@
+package net.aionstudios.horae;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import jdk.jfr.EventType;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * The engine behind {@link CronManager} that decides when registered {@link CronJob}s are due and hands them back for execution.
+ * 
+ * @author Winter Roberts
+ *
+ */
+abstract class CronScheduler {
+	
+	private static final EventType TICK_EVENT = EventType.getEventType(CronTickEvent.class);
+	
+	private CronTickPool tickPool;
+	/* When the tick being timed began, and its JFR event if one is being recorded. Only touched from the cron thread. */
+	private long tickStartNanos;
+	private CronTickEvent tickEvent;
+	/* The clock and System.nanoTime when the cron thread last evaluated, from which a step of the clock is told apart from time passing. */
+	private long evaluatedClockMillis;
+	private long evaluatedNanos;
+	/* Whether the clock has been found stepped back behind time already evaluated, and evaluation is being held until it catches up. */
+	private boolean heldBack = false;
+	
+	/**
+	 * Starts the cron thread for this {@link CronScheduler}, scheduling every {@link CronJob} already registered.
+	 * The jobAdded, jobRescheduled and jobRemoved methods may already have been called before this.
+	 * 
+	 * @param jobs The {@link CronJob}s registered at the time the cron thread starts.
+	 */
+	abstract void start(Iterable<CronJob> jobs);
+	
+	/**
+	 * Stops the cron thread for this {@link CronScheduler}.
+	 */
+	abstract void stop();
+	
+	/**
+	 * Called when a {@link CronJob} is registered while this {@link CronScheduler} is running.
+	 * 
+	 * @param j The newly registered {@link CronJob}.
+	 */
+	abstract void jobAdded(CronJob j);
+	
+	/**
+	 * Called when a registered {@link CronJob} is given a new {@link CronDateTime} or {@link CronPriority} while this {@link CronScheduler}
+	 * is running. The {@link CronJob} must leave its group and join again even if its schedule is unchanged, to take its new place.
+	 * 
+	 * @param j The {@link CronJob} whose schedule or priority has changed.
+	 */
+	abstract void jobRescheduled(CronJob j);
+	
+	/**
+	 * Called when a {@link CronJob} is removed from the {@link CronManager} while this {@link CronScheduler} is running.
+	 * 
+	 * @param j The removed {@link CronJob}.
+	 */
+	abstract void jobRemoved(CronJob j);
+	
+	/**
+	 * Hands a due {@link CronJob} to the {@link CronManager} for execution.
+	 * 
+	 * @param j The {@link CronJob} that is due.
+	 * @param dueMillis The time in epoch milliseconds at which the {@link CronJob} fell due.
+	 */
+	void fire(CronJob j, long dueMillis) {
+		CronManager.dispatch(j, dueMillis);
+	}
+	
+	/**
+	 * Hands every {@link CronJob} in a due {@link CronJobGroup} to the {@link CronManager} for execution, highest {@link CronPriority} first.
+	 * 
+	 * @param g The {@link CronJobGroup} whose {@link CronSchedule} is due.
+	 * @param dueMillis The time in epoch milliseconds at which the group fell due.
+	 */
+	void fire(CronJobGroup g, long dueMillis) {
+		List<CronJob> jobs = g.getJobs();
+		if(tickPool!=null&&jobs.size()>=CronTickPool.SEQUENTIAL_THRESHOLD) {
+			fireAll(Collections.singletonList(g), dueMillis);
+			return;
+		}
+		//The group is kept in order of priority, so its own order is the order to fire in.
+		for(int i = 0; i < jobs.size(); i++) {
+			fire(jobs.get(i), dueMillis);
+		}
+	}
+	
+	/**
+	 * Hands every {@link CronJob} in several due {@link CronJobGroup}s to the {@link CronManager} for execution, across the
+	 * {@link CronTickPool} if there is one and enough {@link CronJob}s are due to be worth it. Every {@link CronJob} of one
+	 * {@link CronPriority} is handed over, across every group, before any of the next.
+	 * 
+	 * @param due The {@link CronJobGroup}s whose {@link CronSchedule}s are due.
+	 * @param dueMillis The time in epoch milliseconds at which the groups fell due.
+	 */
+	void fireAll(List<CronJobGroup> due, long dueMillis) {
+		for(int p = 0; p < CronPriority.LEVELS; p++) {
+			int jobCount = 0;
+			for(int i = 0; i < due.size(); i++) {
+				CronJobGroup g = due.get(i);
+				jobCount += g.end(p)-g.start(p);
+			}
+			if(jobCount==0) {
+				continue;
+			}
+			if(tickPool!=null&&jobCount>=CronTickPool.SEQUENTIAL_THRESHOLD) {
+				tickPool.fire(this, due, p, jobCount, dueMillis);
+				continue;
+			}
+			for(int i = 0; i < due.size(); i++) {
+				CronJobGroup g = due.get(i);
+				List<CronJob> jobs = g.getJobs();
+				for(int k = g.start(p); k < g.end(p); k++) {
+					fire(jobs.get(k), dueMillis);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets the pool across which large ticks are split. Without one, every tick runs on the cron thread. Must be called before this
+	 * {@link CronScheduler} is started.
+	 * 
+	 * @param tickPool The {@link CronTickPool} to use, or null for none.
+	 */
+	void setTickPool(CronTickPool tickPool) {
+		this.tickPool = tickPool;
+	}
+	
+	/**
+	 * @return The pool across which large ticks are split, or null if every tick runs on the cron thread.
+	 */
+	CronTickPool getTickPool() {
+		return tickPool;
+	}
+	
+	/**
+	 * Applies each {@link CronJob}'s {@link CronMisfirePolicy} to the executions a {@link CronJobGroup} missed while the cron thread was held up.
+	 * Missed executions are found by stepping through the group's {@link CronSchedule} once for the whole group, so the cost depends on how
+	 * many are replayed rather than on how long the cron thread was held up. Replayed executions are due at the time they are replayed.
+	 * 
+	 * @param g The {@link CronJobGroup} that missed executions.
+	 * @param missed The first execution that was missed.
+	 * @param until The time in epoch milliseconds now being processed; executions before it were missed.
+	 */
+	void misfire(CronJobGroup g, ZonedDateTime missed, long until) {
+		List<CronJob> jobs = g.getJobs();
+		int counted = 1;
+		boolean exhausted = false;
+		for(int i = 0; i < jobs.size(); i++) {
+			CronJob j = jobs.get(i);
+			CronMetrics.recordMisfire(j);
+			CronMisfirePolicy policy = j.getMisfirePolicy();
+			if(policy==CronMisfirePolicy.SKIP) {
+				CronMetrics.recordSkip(j);
+				continue;
+			}
+			if(policy!=CronMisfirePolicy.FIRE_ALL_MISSED) {
+				fire(j, until);
+				continue;
+			}
+			int limit = j.getMaxMissedExecutions();
+			while(counted<limit&&!exhausted) {
+				Optional<ZonedDateTime> next = g.getSchedule().nextExecutionAfter(missed);
+				if(!next.isPresent()||next.get().toInstant().toEpochMilli()>=until) {
+					exhausted = true;
+				} else {
+					missed = next.get();
+					counted++;
+				}
+			}
+			for(int k = Math.min(limit, counted); k > 0; k--) {
+				fire(j, until);
+			}
+		}
+	}
+	
+	/**
+	 * Hands a {@link CronJob} the executions it missed between its last execution before a restart and now, and marks the executions
+	 * before now as handled so that they are not dispatched again. Must be called before the cron thread is started.
+	 * 
+	 * @param j The {@link CronJob} to recover.
+	 * @param lastDueMillis The time in epoch milliseconds at which its last recorded execution fell due.
+	 * @param now The time in epoch milliseconds from which the cron thread takes over.
+	 */
+	void recover(CronJob j, long lastDueMillis, long now) {
+		j.setResumeMillis(now);
+		CronSchedule schedule = j.getCronDateTime().getSchedule();
+		Optional<ZonedDateTime> missed = schedule.nextExecutionAfter(zonedAt(lastDueMillis));
+		if(missed.isPresent()&&missed.get().toInstant().toEpochMilli()<now) {
+			misfire(new CronJobGroups().add(j), missed.get(), now);
+		}
+	}
+	
+	/**
+	 * Starts timing an evaluation of the registered {@link CronJob}s. Call {@link #endTick(long)} once the evaluation, including firing
+	 * whatever was due, is done. The JFR event spanning the evaluation is only created while it is being recorded, so that a tick
+	 * allocates nothing otherwise.
+	 */
+	void beginTick() {
+		tickStartNanos = System.nanoTime();
+		if(TICK_EVENT.isEnabled()) {
+			tickEvent = new CronTickEvent();
+			tickEvent.begin();
+		}
+	}
+	
+	/**
+	 * Records how long an evaluation of the registered {@link CronJob}s took with {@link CronMetrics} and in a flight recording.
+	 * 
+	 * @param evaluatedMillis The time in epoch milliseconds that was evaluated.
+	 */
+	void endTick(long evaluatedMillis) {
+		CronMetrics.recordTick(System.nanoTime()-tickStartNanos);
+		CronTickEvent event = tickEvent;
+		if(event==null) {
+			return;
+		}
+		tickEvent = null;
+		event.end();
+		if(event.shouldCommit()) {
+			event.scheduler = getClass().getSimpleName();
+			event.evaluatedTime = evaluatedMillis;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Notes that the cron thread has evaluated up to the time on the clock, so that a later step of the clock can be measured from here.
+	 * Must be called from the cron thread, or before it is started.
+	 */
+	void markEvaluated() {
+		evaluatedClockMillis = DateTimeServices.getClock().millis();
+		evaluatedNanos = System.nanoTime();
+		heldBack = false;
+	}
+	
+	/**
+	 * Notes that the clock reads earlier than time already evaluated, reporting how far it was stepped back the first time it is found
+	 * behind. Evaluation is held until the clock catches up, whatever the size of the step, so that no {@link CronJob} fires twice for the
+	 * same time. The size is measured against System.nanoTime, which no step of the clock moves. Must be called from the cron thread.
+	 * 
+	 * @param resumeMillis The time in epoch milliseconds at which evaluation resumes.
+	 */
+	void holdBack(long resumeMillis) {
+		if(heldBack) {
+			return;
+		}
+		heldBack = true;
+		long clockMillis = DateTimeServices.getClock().millis();
+		long stepMillis = evaluatedClockMillis+(System.nanoTime()-evaluatedNanos)/1000000L-clockMillis;
+		System.err.println("Clock was stepped back by "+stepMillis+"ms, holding cron evaluation until "+DateTimeServices.formatDateTime(resumeMillis)+"!");
+	}
+	
+	/**
+	 * @param epochMillis A time in epoch milliseconds.
+	 * @return The time in the zone of the {@link DateTimeServices} clock.
+	 */
+	static ZonedDateTime zonedAt(long epochMillis) {
+		return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), DateTimeServices.getClock().getZone());
+	}
+	
+	/**
+	 * A registration, reschedule or removal queued by another thread, for the cron thread to apply at the start of its next tick.
+	 */
+	static class JobChange {
+		
+		final CronJob job;
+		final boolean remove;
+		
+		JobChange(CronJob job, boolean remove) {
+			this.job = job;
+			this.remove = remove;
+		}
+		
+	}
+
+}
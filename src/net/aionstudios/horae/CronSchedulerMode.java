@@ -0,0 +1,27 @@
+package net.aionstudios.horae;
+
+/**
+ * The strategies available to {@link CronManager} for deciding when registered {@link CronJob}s are due.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public enum CronSchedulerMode {
+	
+	/**
+	 * Wakes every second and checks every {@link CronJob} against the current time once per minute.
+	 */
+	POLLING,
+	
+	/**
+	 * Keeps {@link CronJob}s ordered by their next execution time and sleeps until the earliest of them is due.
+	 */
+	DEADLINE,
+	
+	/**
+	 * Files {@link CronJob}s into minute, hour and day wheels by their next execution time so that each minute only touches the {@link CronJob}s that are due.
+	 * Suited to very large numbers of registered {@link CronJob}s.
+	 */
+	TIMING_WHEEL
+
+}
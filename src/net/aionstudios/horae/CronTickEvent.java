@@ -0,0 +1,31 @@
+package net.aionstudios.horae;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * A JFR event spanning one evaluation of the registered {@link CronJob}s by a {@link CronScheduler}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+@Name("net.aionstudios.horae.Tick")
+@Label("Cron Tick")
+@Category("Horae")
+@Description("One evaluation of the registered cron jobs, including handing due jobs to the executor")
+@StackTrace(false)
+class CronTickEvent extends Event {
+	
+	@Label("Scheduler")
+	String scheduler;
+	
+	@Label("Evaluated Time")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	long evaluatedTime;
+
+}
@@ -0,0 +1,210 @@
+package net.aionstudios.horae;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the work of a tick across a {@link ForkJoinPool}, for {@link CronManager}s with so many {@link CronJob}s that evaluating their
+ * schedules or handing them to the {@link CronExecutor} on the cron thread alone delays the last of them noticeably. Work is cut into
+ * contiguous chunks of the lists it already lives in, sized so that each worker gets a few, and work too small to be worth forking stays
+ * on the cron thread.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronTickPool {
+	
+	/* Below this many schedules to evaluate or CronJobs to dispatch, a tick stays on the cron thread, as forking would cost more than it saves. */
+	static final int SEQUENTIAL_THRESHOLD = 8192;
+	private static final int MIN_CHUNK = 1024;
+	/* Chunks per worker, so that a worker that finishes early can take over another's. */
+	private static final int CHUNKS_PER_WORKER = 4;
+	private static final AtomicInteger poolCount = new AtomicInteger();
+	
+	private final ForkJoinPool pool;
+	
+	/**
+	 * @param parallelism The number of worker threads.
+	 */
+	CronTickPool(int parallelism) {
+		final int poolNumber = poolCount.incrementAndGet();
+		this.pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("horae-tick-"+poolNumber+"-worker-"+threadCount.incrementAndGet());
+				return thread;
+			}
+
+		}, null, false);
+	}
+	
+	/**
+	 * Stops the worker threads once any tick in progress has finished.
+	 */
+	void shutdown() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * Collects every {@link CronJobGroup} in a list whose {@link CronSchedule} matches the provided time, in the order of the list.
+	 * Blocks until every chunk has been evaluated.
+	 * 
+	 * @param candidates The {@link CronJobGroup}s to evaluate.
+	 * @param min The minute to check against.
+	 * @param hour The hour to check against.
+	 * @param dom The day of the month to check against.
+	 * @param month The month to check against.
+	 * @param dow The day of the week to check against.
+	 * @param year The year to check against.
+	 * @param due The list to which matching {@link CronJobGroup}s are added.
+	 */
+	void collect(List<CronJobGroup> candidates, int min, int hour, int dom, int month, int dow, int year, List<CronJobGroup> due) {
+		int[] time = { min, hour, dom, month, dow, year };
+		due.addAll(pool.invoke(new MatchTask(candidates, time, 0, candidates.size(), chunkSize(candidates.size()))));
+	}
+	
+	/**
+	 * Hands every {@link CronJob} of one {@link CronPriority} in the provided {@link CronJobGroup}s to a {@link CronScheduler} to fire.
+	 * Blocks until every such {@link CronJob} has been fired.
+	 * 
+	 * @param s The {@link CronScheduler} whose {@link CronScheduler#fire(CronJob, long)} is called, from the pool's threads.
+	 * @param due The due {@link CronJobGroup}s.
+	 * @param priority The ordinal of the {@link CronPriority} to fire.
+	 * @param jobCount The number of {@link CronJob}s of that priority in the groups.
+	 * @param dueMillis The time in epoch milliseconds at which the groups fell due.
+	 */
+	void fire(CronScheduler s, List<CronJobGroup> due, int priority, int jobCount, long dueMillis) {
+		int[] ends = new int[due.size()];
+		int end = 0;
+		for(int i = 0; i < ends.length; i++) {
+			CronJobGroup g = due.get(i);
+			end += g.end(priority)-g.start(priority);
+			ends[i] = end;
+		}
+		pool.invoke(new FireTask(s, due, priority, ends, 0, jobCount, chunkSize(jobCount), dueMillis));
+	}
+	
+	private int chunkSize(int items) {
+		return Math.max(MIN_CHUNK, items/(pool.getParallelism()*CHUNKS_PER_WORKER));
+	}
+	
+	/**
+	 * Evaluates a range of candidate {@link CronJobGroup}s, halving it until it fits in a chunk.
+	 */
+	private static class MatchTask extends RecursiveTask<List<CronJobGroup>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final List<CronJobGroup> candidates;
+		private final int[] time;
+		private final int from;
+		private final int to;
+		private final int chunk;
+		
+		private MatchTask(List<CronJobGroup> candidates, int[] time, int from, int to, int chunk) {
+			this.candidates = candidates;
+			this.time = time;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+		}
+		
+		@Override
+		protected List<CronJobGroup> compute() {
+			if(to-from>chunk) {
+				int mid = (from+to)>>>1;
+				MatchTask right = new MatchTask(candidates, time, mid, to, chunk);
+				right.fork();
+				List<CronJobGroup> matched = new MatchTask(candidates, time, from, mid, chunk).compute();
+				matched.addAll(right.join());
+				return matched;
+			}
+			List<CronJobGroup> matched = new ArrayList<CronJobGroup>();
+			for(int i = from; i < to; i++) {
+				CronJobGroup g = candidates.get(i);
+				if(g.getSchedule().matches(time[0], time[1], time[2], time[3], time[4], time[5])) {
+					matched.add(g);
+				}
+			}
+			return matched;
+		}
+	
+	}
+	
+	/**
+	 * Fires a range of the {@link CronJob}s of one {@link CronPriority} in a list of {@link CronJobGroup}s, numbered as if the groups'
+	 * {@link CronJob}s of that priority were laid end to end, halving it until it fits in a chunk.
+	 */
+	private static class FireTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final CronScheduler scheduler;
+		private final List<CronJobGroup> due;
+		private final int priority;
+		/* The number of CronJobs of the priority in each group and every group before it. */
+		private final int[] ends;
+		private final int from;
+		private final int to;
+		private final int chunk;
+		private final long dueMillis;
+		
+		private FireTask(CronScheduler scheduler, List<CronJobGroup> due, int priority, int[] ends, int from, int to, int chunk, long dueMillis) {
+			this.scheduler = scheduler;
+			this.due = due;
+			this.priority = priority;
+			this.ends = ends;
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+			this.dueMillis = dueMillis;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to-from>chunk) {
+				int mid = (from+to)>>>1;
+				invokeAll(new FireTask(scheduler, due, priority, ends, from, mid, chunk, dueMillis), new FireTask(scheduler, due, priority, ends, mid, to, chunk, dueMillis));
+				return;
+			}
+			int g = firstGroupEndingAfter(from);
+			int start = g==0 ? 0 : ends[g-1];
+			for(int i = from; i < to; g++) {
+				CronJobGroup group = due.get(g);
+				List<CronJob> jobs = group.getJobs();
+				int offset = group.start(priority);
+				int last = Math.min(ends[g], to)-start;
+				for(int k = i-start; k < last; k++) {
+					scheduler.fire(jobs.get(offset+k), dueMillis);
+				}
+				i = start+last;
+				start = ends[g];
+			}
+		}
+		
+		private int firstGroupEndingAfter(int index) {
+			int low = 0;
+			int high = ends.length-1;
+			while(low<high) {
+				int mid = (low+high)>>>1;
+				if(ends[mid]<=index) {
+					low = mid+1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	
+	}
+
+}
@@ -0,0 +1,100 @@
+package net.aionstudios.horae;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * The time zone a {@link CronScheduler} reads some of its {@link CronSchedule}s in, with the daylight saving transitions either side of
+ * the current time kept so that each tick only has to compare the time against them. Carries out the rules described on
+ * {@link CronDateTime}: a tick in the hour after clocks go back reads local times already evaluated and is skipped, and a tick just
+ * after clocks go forward also reads the local time the gap removed, as far into the gap as the tick is past it.
+ *
+ * Not thread-safe; each {@link CronScheduler} keeps its own, guarded the same way as the rest of its state.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class CronZone {
+	
+	private final ZoneId zone;
+	/* The zone the transitions below were looked up in, which changes with the clock when no zone is set. */
+	private ZoneId resolved;
+	/* The period between the transitions either side of the last time looked up, in epoch milliseconds. */
+	private long validFrom = Long.MAX_VALUE;
+	private long validUntil = Long.MIN_VALUE;
+	/* The end of the repeated local times after the earlier transition if clocks went back, and the end of the gap if they went forward. */
+	private long repeatedUntil;
+	private long skippedUntil;
+	/* The offset before the earlier transition, in seconds, from which the local times in a gap are read. */
+	private int offsetBeforeSeconds;
+	
+	/**
+	 * @param zone The time zone, or null to follow the zone of the {@link DateTimeServices} clock.
+	 */
+	CronZone(ZoneId zone) {
+		this.zone = zone;
+	}
+	
+	/**
+	 * @param millis The start of the minute or second being evaluated, in epoch milliseconds.
+	 * @return The cron-functional fields of the time in this zone.
+	 */
+	CronInstant instantAt(long millis) {
+		refresh(millis);
+		return DateTimeServices.getCronInstant(resolved, millis);
+	}
+	
+	/**
+	 * @param millis The start of the minute or second being evaluated, in epoch milliseconds.
+	 * @return True if clocks in this zone went back shortly before and the local time has already been evaluated once, false otherwise.
+	 */
+	boolean isRepeated(long millis) {
+		refresh(millis);
+		return millis<repeatedUntil;
+	}
+	
+	/**
+	 * @param millis The start of the minute or second being evaluated, in epoch milliseconds.
+	 * @return The local time removed by clocks in this zone going forward that runs at the time, or null if clocks did not go forward shortly before.
+	 */
+	LocalDateTime skippedAt(long millis) {
+		refresh(millis);
+		if(millis>=skippedUntil) {
+			return null;
+		}
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L)+offsetBeforeSeconds, 0, ZoneOffset.UTC);
+	}
+	
+	private void refresh(long millis) {
+		ZoneId current = zone!=null ? zone : DateTimeServices.getClock().getZone();
+		if(current.equals(resolved)&&millis>=validFrom&&millis<validUntil) {
+			return;
+		}
+		ZoneRules rules = current.getRules();
+		//Nudged forward so that a transition at exactly this time counts as the earlier one.
+		ZoneOffsetTransition previous = rules.previousTransition(Instant.ofEpochMilli(millis).plusNanos(1));
+		ZoneOffsetTransition next = rules.nextTransition(Instant.ofEpochMilli(millis));
+		resolved = current;
+		validFrom = previous!=null ? previous.toEpochSecond()*1000L : Long.MIN_VALUE;
+		validUntil = next!=null ? next.toEpochSecond()*1000L : Long.MAX_VALUE;
+		repeatedUntil = Long.MIN_VALUE;
+		skippedUntil = Long.MIN_VALUE;
+		if(previous!=null) {
+			long shift = previous.getDuration().toMillis();
+			if(previous.isOverlap()) {
+				repeatedUntil = validFrom-shift;
+			} else {
+				skippedUntil = validFrom+shift;
+				offsetBeforeSeconds = previous.getOffsetBefore().getTotalSeconds();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,239 @@
+package net.aionstudios.horae;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A {@link CronScheduler} that groups registered {@link CronJob}s by {@link CronSchedule}, keeps every group in a queue ordered by its next
+ * execution time and parks the cron thread until the earliest of them is due, rather than waking up to poll. A deadline that is reached
+ * only after its minute has passed is handed to its {@link CronJob}s' {@link CronMisfirePolicy}s and the group is rescheduled from the
+ * current minute.
+ * 
+ * The groups and the queue belong to the cron thread. Registrations, reschedules and removals are queued without locking and applied
+ * before the next deadline is looked at, waking the cron thread in case a new deadline comes before the one it is parked on. The lock
+ * only guards parking, so due {@link CronJob}s are handed over without holding it and other threads are never held up by a tick.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class DeadlineCronScheduler extends CronScheduler {
+	
+	private final PriorityQueue<Deadline> queue = new PriorityQueue<Deadline>();
+	private final CronJobGroups groups = new CronJobGroups();
+	/* The live deadline for each scheduled group; queued deadlines that are no longer live are discarded when they reach the head. */
+	private final Map<CronJobGroup, Deadline> scheduled = new IdentityHashMap<CronJobGroup, Deadline>();
+	/* The groups due at the deadline being processed, kept between deadlines so the list is only allocated once. */
+	private final List<CronJobGroup> due = new ArrayList<CronJobGroup>();
+	private final Queue<JobChange> changes = new ConcurrentLinkedQueue<JobChange>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition headChanged = lock.newCondition();
+	private volatile boolean running = false;
+	private Thread cronThread;
+	
+	@Override
+	void start(Iterable<CronJob> jobs) {
+		long now = DateTimeServices.getClock().millis();
+		for(CronJob j : jobs) {
+			join(j, now);
+		}
+		running = true;
+		cronThread = new Thread() {
+			public void run() {
+				try {
+					Deadline head;
+					while((head = awaitHead())!=null) {
+						beginTick();
+						long minute = Math.floorDiv(DateTimeServices.getClock().millis(), 60000L);
+						if(Math.floorDiv(head.millis, 60000L)<minute) {
+							misfire(head.group, zonedAt(head.millis), minute*60000L);
+							schedule(head.group, minute*60000L-1);
+						} else {
+							//Take every other group due at the same moment, so that they are all fired together in order of priority.
+							due.add(head.group);
+							Deadline next;
+							while((next = queue.peek())!=null&&next.millis==head.millis) {
+								queue.poll();
+								if(scheduled.get(next.group)==next) {
+									due.add(next.group);
+								}
+							}
+							fireAll(due, head.millis);
+							for(int i = 0; i < due.size(); i++) {
+								schedule(due.get(i), head.millis);
+							}
+							due.clear();
+						}
+						endTick(head.millis);
+					}
+				} catch(InterruptedException e) {
+					if(running) {
+						System.err.println("Cron thread was interrupted!");
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		cronThread.start();
+	}
+	
+	@Override
+	void stop() {
+		lock.lock();
+		try {
+			running = false;
+			headChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	void jobAdded(CronJob j) {
+		jobRescheduled(j);
+	}
+	
+	@Override
+	void jobRescheduled(CronJob j) {
+		changes.add(new JobChange(j, false));
+		//The CronJob may be due before the deadline the cron thread is parked on.
+		lock.lock();
+		try {
+			headChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	void jobRemoved(CronJob j) {
+		//A removed group's deadline is discarded once it reaches the head, so there is no need to wake the cron thread.
+		changes.add(new JobChange(j, true));
+	}
+	
+	/**
+	 * Parks the cron thread until the earliest live deadline is due, applying queued changes each time it wakes. Must be called from
+	 * the cron thread.
+	 * 
+	 * @return The deadline that is due, taken off the queue, or null once this {@link DeadlineCronScheduler} has been stopped.
+	 * @throws InterruptedException If the cron thread was interrupted while parked.
+	 */
+	private Deadline awaitHead() throws InterruptedException {
+		lock.lock();
+		try {
+			while(running) {
+				applyChanges();
+				Deadline head = queue.peek();
+				if(head==null) {
+					headChanged.await();
+					continue;
+				}
+				if(scheduled.get(head.group)!=head) {
+					queue.poll();
+					continue;
+				}
+				long wait = head.millis-DateTimeServices.getClock().millis();
+				if(wait>0) {
+					headChanged.awaitNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+					continue;
+				}
+				return queue.poll();
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Applies every queued registration, reschedule and removal to the groups and the queue. Must be called from the cron thread.
+	 */
+	private void applyChanges() {
+		long now = DateTimeServices.getClock().millis();
+		JobChange c;
+		while((c = changes.poll())!=null) {
+			if(c.remove) {
+				leave(c.job);
+			} else {
+				join(c.job, now);
+			}
+		}
+	}
+	
+	/**
+	 * Moves a {@link CronJob} into the group for its current {@link CronSchedule}, scheduling the group if it is new. Must be called from
+	 * the cron thread, or before it is started.
+	 * 
+	 * @param j The {@link CronJob} to add.
+	 * @param after The time in epoch milliseconds after which a new group's next execution must fall.
+	 */
+	private void join(CronJob j, long after) {
+		leave(j);
+		CronJobGroup g = groups.add(j);
+		if(g.getJobs().size()==1) {
+			schedule(g, after);
+		}
+	}
+	
+	/**
+	 * Removes a {@link CronJob} from its group, dropping the group's deadline once it is empty. Must be called from the cron thread.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 */
+	private void leave(CronJob j) {
+		CronJobGroup g = groups.remove(j);
+		if(g!=null&&g.isEmpty()) {
+			scheduled.remove(g);
+		}
+	}
+	
+	/**
+	 * Queues the next execution of a {@link CronJobGroup}, replacing any deadline it already had, or drops its deadline if it will never
+	 * execute again. Must be called from the cron thread.
+	 * 
+	 * @param g The {@link CronJobGroup} to schedule.
+	 * @param after The time in epoch milliseconds after which the next execution must fall.
+	 */
+	private void schedule(CronJobGroup g, long after) {
+		Optional<ZonedDateTime> next = g.getSchedule().nextExecutionAfter(zonedAt(after));
+		if(!next.isPresent()) {
+			scheduled.remove(g);
+			return;
+		}
+		Deadline d = new Deadline(g, next.get().toInstant().toEpochMilli());
+		scheduled.put(g, d);
+		queue.add(d);
+	}
+	
+	/**
+	 * The time at which a {@link CronJobGroup} is next due.
+	 */
+	private static class Deadline implements Comparable<Deadline> {
+		
+		private final CronJobGroup group;
+		private final long millis;
+		
+		private Deadline(CronJobGroup group, long millis) {
+			this.group = group;
+			this.millis = millis;
+		}
+		
+		@Override
+		public int compareTo(Deadline o) {
+			return Long.compare(millis, o.millis);
+		}
+		
+	}
+
+}
@@ -0,0 +1,123 @@
+package net.aionstudios.horae;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A {@link CronCoordinator} that keeps the members of a {@link CronCluster} in a file in a directory every node can reach, such as a
+ * network share, taking a file lock around every change. Simple enough to run several nodes on one machine, or in one process, and
+ * suited to small clusters; larger ones should implement {@link CronCoordinator} over a proper coordination service.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class FileCronCoordinator implements CronCoordinator {
+	
+	private static final String STATE_FILE = "horae-cluster";
+	private static final String LOCK_FILE = "horae-cluster.lock";
+	/* File locks are held by the whole process, so nodes in one process take turns on a lock of their own first. */
+	private static final Map<Path, Object> localLocks = new ConcurrentHashMap<Path, Object>();
+	
+	private final Path directory;
+	private final String nodeId;
+	
+	/**
+	 * Creates a {@link FileCronCoordinator}.
+	 * 
+	 * @param directory The directory shared by every node in the cluster, which is created if it does not exist.
+	 * @param nodeId The id of this node, unique within the cluster.
+	 * @throws IOException If the directory could not be created.
+	 */
+	public FileCronCoordinator(Path directory, String nodeId) throws IOException {
+		Files.createDirectories(directory);
+		this.directory = directory.toRealPath();
+		this.nodeId = nodeId;
+	}
+	
+	@Override
+	public String getNodeId() {
+		return nodeId;
+	}
+	
+	@Override
+	public CronClusterView renew(long leaseMillis) throws IOException {
+		return update(leaseMillis, true);
+	}
+	
+	@Override
+	public void leave() throws IOException {
+		update(0L, false);
+	}
+	
+	/**
+	 * Reads the members, drops those whose leases have run out, joins or leaves and writes the members back, all under the lock.
+	 */
+	private CronClusterView update(long leaseMillis, boolean join) throws IOException {
+		Object localLock = localLocks.get(directory);
+		if(localLock==null) {
+			localLocks.putIfAbsent(directory, new Object());
+			localLock = localLocks.get(directory);
+		}
+		synchronized(localLock) {
+			try(FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				FileLock lock = lockChannel.lock();
+				try {
+					long now = DateTimeServices.getClock().millis();
+					Path state = directory.resolve(STATE_FILE);
+					long epoch = 0L;
+					Map<String, Long> members = new LinkedHashMap<String, Long>();
+					if(Files.exists(state)) {
+						try(DataInputStream in = new DataInputStream(Files.newInputStream(state))) {
+							epoch = in.readLong();
+							for(int i = in.readInt(); i > 0; i--) {
+								members.put(in.readUTF(), in.readLong());
+							}
+						}
+					}
+					boolean changed = false;
+					for(Iterator<Long> expires = members.values().iterator(); expires.hasNext();) {
+						if(expires.next()<=now) {
+							expires.remove();
+							changed = true;
+						}
+					}
+					if(join) {
+						changed |= members.put(nodeId, now+leaseMillis)==null;
+					} else {
+						changed |= members.remove(nodeId)!=null;
+					}
+					if(changed) {
+						epoch++;
+					}
+					Path written = Files.createTempFile(directory, STATE_FILE, ".tmp");
+					try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(written))) {
+						out.writeLong(epoch);
+						out.writeInt(members.size());
+						for(Map.Entry<String, Long> member : members.entrySet()) {
+							out.writeUTF(member.getKey());
+							out.writeLong(member.getValue());
+						}
+					}
+					Files.move(written, state, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					return new CronClusterView(epoch, members.keySet(), join ? now+leaseMillis : now);
+				} finally {
+					lock.release();
+				}
+			}
+		}
+	}
+
+}
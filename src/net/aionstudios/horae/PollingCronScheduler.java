@@ -0,0 +1,249 @@
+package net.aionstudios.horae;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A {@link CronScheduler} that wakes every second and, whenever the minute changes, checks the registered {@link CronJob}s against the current time.
+ * {@link CronJob}s are grouped by {@link CronSchedule}, and only the groups that a {@link CronJobIndex} finds could match the current minute
+ * and hour are evaluated in full, each once for all of its {@link CronJob}s. Groups read in different time zones are indexed separately, and
+ * each zone's fields are worked out once per tick for all of its groups.
+ * 
+ * The groups and the index belong to the cron thread. Registrations, reschedules and removals are queued without locking and applied at the start of
+ * the next tick, so every tick evaluates a consistent view of the registered {@link CronJob}s and is never held up by other threads.
+ * 
+ * Minutes are evaluated strictly in order. If the cron thread is held up past one or more minutes, the {@link CronJob}s that missed
+ * executions are handed their {@link CronMisfirePolicy}. If the clock is stepped back, however far, minutes that have already been
+ * evaluated are not evaluated again, and evaluation waits until the clock reaches the first minute that has not been.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class PollingCronScheduler extends CronScheduler {
+	
+	private final CronJobGroups groups = new CronJobGroups();
+	/* An index per time zone, keyed on the zone of the schedules in it, with null for schedules that follow the clock. */
+	private final Map<ZoneId, ZoneIndex> zones = new HashMap<ZoneId, ZoneIndex>();
+	private final List<ZoneIndex> zoneList = new ArrayList<ZoneIndex>();
+	private final List<CronJobGroup> due = new ArrayList<CronJobGroup>();
+	private final Queue<JobChange> changes = new ConcurrentLinkedQueue<JobChange>();
+	/* The last epoch minute that was evaluated. */
+	private long lastMinute;
+	private volatile boolean running = false;
+	private Thread cronThread;
+	
+	@Override
+	void start(Iterable<CronJob> jobs) {
+		for(CronJob j : jobs) {
+			join(j);
+		}
+		reset(DateTimeServices.getCronInstant().getEpochMinute()-1);
+		running = true;
+		cronThread = new Thread() {
+		    public void run() {
+		    	while(running) {
+		    		tick(DateTimeServices.getCronInstant());
+		    		try {
+			            Thread.sleep(1000);
+			        } catch(InterruptedException e) {
+			        	if(running) {
+			        		System.err.println("Cron thread was interrupted!");
+			        		e.printStackTrace();
+			        	}
+			        }
+		    	}
+		    }  
+		};
+		cronThread.start();
+	}
+	
+	@Override
+	void stop() {
+		running = false;
+		cronThread.interrupt();
+	}
+	
+	@Override
+	void jobAdded(CronJob j) {
+		changes.add(new JobChange(j, false));
+	}
+	
+	@Override
+	void jobRescheduled(CronJob j) {
+		changes.add(new JobChange(j, false));
+	}
+	
+	@Override
+	void jobRemoved(CronJob j) {
+		changes.add(new JobChange(j, true));
+	}
+	
+	/**
+	 * Marks an epoch minute as the last one evaluated, so that the next tick evaluates the minute after it. Must be called from the cron
+	 * thread, or before it is started.
+	 * 
+	 * @param epochMinute The epoch minute to treat as already evaluated.
+	 */
+	void reset(long epochMinute) {
+		lastMinute = epochMinute;
+		markEvaluated();
+	}
+	
+	/**
+	 * Applies queued changes and fires every {@link CronJobGroup} due at the given time, if its minute has not already been evaluated.
+	 * Must be called from the cron thread, or from a single thread in place of it.
+	 * 
+	 * @param now The current cron-functional time.
+	 */
+	void tick(CronInstant now) {
+		long minute = now.getEpochMinute();
+		if(minute<=lastMinute) {
+			if(minute<lastMinute) {
+				holdBack((lastMinute+1)*60000L);
+			}
+			return;
+		}
+		beginTick();
+		applyChanges();
+		if(minute>lastMinute+1) {
+			replayMissed(lastMinute, minute);
+		}
+		lastMinute = minute;
+		markEvaluated();
+		long millis = now.getEpochMillis();
+		for(int i = 0; i < zoneList.size(); i++) {
+			ZoneIndex z = zoneList.get(i);
+			if(z.zone.isRepeated(millis)) {
+				continue;
+			}
+			CronInstant local = z.zone.instantAt(millis);
+			int matched = due.size();
+			z.index.match(local.getMinute(), local.getHour(), local.getDayOfMonth(), local.getMonth(), local.getDayOfWeek(), local.getYear(), due, getTickPool());
+			LocalDateTime skipped = z.zone.skippedAt(millis);
+			if(skipped!=null) {
+				matchSkipped(z.index, skipped, matched);
+			}
+		}
+		fireAll(due, millis);
+		due.clear();
+		endTick(now.getEpochMillis());
+	}
+	
+	/**
+	 * Finds every {@link CronJobGroup} with an execution in the minutes that were skipped and applies its {@link CronJob}s' {@link CronMisfirePolicy}s.
+	 * Each group is checked once for the whole gap rather than once per skipped minute.
+	 * 
+	 * @param lastMinute The last epoch minute that was evaluated.
+	 * @param minute The epoch minute about to be evaluated.
+	 */
+	private void replayMissed(long lastMinute, long minute) {
+		ZonedDateTime evaluated = zonedAt(lastMinute*60000L);
+		for(CronJobGroup g : groups.groups()) {
+			Optional<ZonedDateTime> missed = g.getSchedule().nextExecutionAfter(evaluated);
+			if(missed.isPresent()&&Math.floorDiv(missed.get().toEpochSecond(), 60L)<minute) {
+				misfire(g, missed.get(), minute*60000L);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the groups matching a local time removed by clocks going forward to those due, leaving out any already due at the current time.
+	 * 
+	 * @param index The index of the zone in which clocks went forward.
+	 * @param skipped The removed local time that runs now.
+	 * @param from The position in the due groups at which the zone's groups start.
+	 */
+	private void matchSkipped(CronJobIndex index, LocalDateTime skipped, int from) {
+		Set<CronJobGroup> matched = Collections.newSetFromMap(new IdentityHashMap<CronJobGroup, Boolean>());
+		matched.addAll(due.subList(from, due.size()));
+		int end = due.size();
+		index.match(skipped.getMinute(), skipped.getHour(), skipped.getDayOfMonth(), skipped.getMonthValue(), skipped.getDayOfWeek().getValue(), skipped.getYear(), due, null);
+		for(int i = due.size()-1; i >= end; i--) {
+			if(!matched.add(due.get(i))) {
+				due.remove(i);
+			}
+		}
+	}
+	
+	/**
+	 * Applies every queued registration, reschedule and removal to the groups and the index.
+	 */
+	private void applyChanges() {
+		JobChange c;
+		while((c = changes.poll())!=null) {
+			if(c.remove) {
+				leave(c.job);
+			} else {
+				join(c.job);
+			}
+		}
+	}
+	
+	/**
+	 * Moves a {@link CronJob} into the group for its current {@link CronSchedule}, indexing the group if it is new.
+	 * 
+	 * @param j The {@link CronJob} to add.
+	 */
+	private void join(CronJob j) {
+		leave(j);
+		CronJobGroup g = groups.add(j);
+		if(g.getJobs().size()==1) {
+			ZoneId zone = g.getSchedule().getZone();
+			ZoneIndex z = zones.get(zone);
+			if(z==null) {
+				z = new ZoneIndex(zone);
+				zones.put(zone, z);
+				zoneList.add(z);
+			}
+			z.index.add(g);
+			z.groupCount++;
+		}
+	}
+	
+	/**
+	 * Removes a {@link CronJob} from its group, removing the group from the index once it is empty.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 */
+	private void leave(CronJob j) {
+		CronJobGroup g = groups.remove(j);
+		if(g!=null&&g.isEmpty()) {
+			ZoneIndex z = zones.get(g.getSchedule().getZone());
+			z.index.remove(g);
+			if(--z.groupCount==0) {
+				zones.remove(g.getSchedule().getZone());
+				zoneList.remove(z);
+			}
+		}
+	}
+	
+	/**
+	 * The groups read in one time zone.
+	 */
+	private static class ZoneIndex {
+		
+		private final CronZone zone;
+		private final CronJobIndex index = new CronJobIndex();
+		private int groupCount = 0;
+		
+		private ZoneIndex(ZoneId zone) {
+			this.zone = new CronZone(zone);
+		}
+		
+	}
+
+}
@@ -0,0 +1,295 @@
+package net.aionstudios.horae;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A {@link CronScheduler} for {@link CronJob}s whose {@link CronDateTime}s permit seconds other than second 0, which runs alongside
+ * whichever {@link CronScheduler} handles minute-level {@link CronJob}s. {@link CronJob}s are grouped by {@link CronSchedule} and each group
+ * is filed under every second its schedule permits. The thread wakes on each exact second boundary while any such {@link CronJob} is
+ * registered, evaluating only the groups filed under the current second, and stays parked otherwise.
+ *
+ * Seconds are evaluated strictly in order, with missed seconds handed to each {@link CronJob}'s {@link CronMisfirePolicy} and seconds
+ * already evaluated waited out after the clock is stepped back, however far, in the same way as the {@link PollingCronScheduler}
+ * handles minutes.
+ *
+ * The groups belong to the cron thread. Registrations, reschedules and removals are queued without locking and applied at the start
+ * of the next second, waking the cron thread in case it is parked with nothing to evaluate. The lock only guards parking, so due
+ * {@link CronJob}s are handed over without holding it and other threads are never held up by a tick.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class SecondCronScheduler extends CronScheduler {
+	
+	private final CronJobGroups groups = new CronJobGroups();
+	private final List<List<CronJobGroup>> bySecond = new ArrayList<List<CronJobGroup>>(60);
+	/* The groups due in the second being evaluated, kept between seconds so the list is only allocated once. */
+	private final List<CronJobGroup> due = new ArrayList<CronJobGroup>();
+	/* The time zones of the filed groups, with null for schedules that follow the clock. */
+	private final Map<ZoneId, FiledZone> zones = new HashMap<ZoneId, FiledZone>();
+	private final Queue<JobChange> changes = new ConcurrentLinkedQueue<JobChange>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private volatile boolean running = false;
+	private Thread cronThread;
+	
+	SecondCronScheduler() {
+		for(int i = 0; i < 60; i++) {
+			bySecond.add(new ArrayList<CronJobGroup>());
+		}
+	}
+	
+	@Override
+	void start(Iterable<CronJob> jobs) {
+		for(CronJob j : jobs) {
+			file(j);
+		}
+		running = true;
+		cronThread = new Thread() {
+			public void run() {
+				try {
+					long lastSecond = Math.floorDiv(DateTimeServices.getClock().millis(), 1000L);
+					markEvaluated();
+					while(running) {
+						applyChanges();
+						if(groups.isEmpty()) {
+							park(-1L);
+							lastSecond = Math.floorDiv(DateTimeServices.getClock().millis(), 1000L);
+							markEvaluated();
+							continue;
+						}
+						CronInstant now = DateTimeServices.getCronInstant();
+						long millis = DateTimeServices.getClock().millis();
+						long second = Math.floorDiv(millis, 1000L);
+						if(second<=lastSecond) {
+							if(second<lastSecond) {
+								holdBack((lastSecond+1)*1000L);
+							}
+							//Parked for no more than a second, in case the clock is stepped forward again while held back.
+							park(TimeUnit.MILLISECONDS.toNanos(Math.min((lastSecond+1)*1000L-millis, 1000L)));
+							continue;
+						}
+						long sinceMinute = millis-now.getEpochMillis();
+						if(sinceMinute<0||sinceMinute>=60000L) {
+							//The minute turned over between the two readings of the clock.
+							continue;
+						}
+						beginTick();
+						if(second>lastSecond+1) {
+							replayMissed(lastSecond, second);
+						}
+						lastSecond = second;
+						markEvaluated();
+						List<CronJobGroup> bucket = bySecond.get((int) (sinceMinute/1000L));
+						for(int i = 0; i < bucket.size(); i++) {
+							CronJobGroup g = bucket.get(i);
+							if(isDue(g, second*1000L)) {
+								due.add(g);
+							}
+						}
+						fireAll(due, second*1000L);
+						due.clear();
+						endTick(second*1000L);
+					}
+				} catch(InterruptedException e) {
+					if(running) {
+						System.err.println("Cron thread was interrupted!");
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		cronThread.start();
+	}
+	
+	@Override
+	void stop() {
+		lock.lock();
+		try {
+			running = false;
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	void jobAdded(CronJob j) {
+		jobRescheduled(j);
+	}
+	
+	@Override
+	void jobRescheduled(CronJob j) {
+		changes.add(new JobChange(j, false));
+		//The cron thread may be parked with no groups to evaluate.
+		lock.lock();
+		try {
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	void jobRemoved(CronJob j) {
+		changes.add(new JobChange(j, true));
+	}
+	
+	/**
+	 * Parks the cron thread until it is signalled or a time has passed, unless it has been stopped or changes are waiting to be
+	 * applied. Must be called from the cron thread.
+	 * 
+	 * @param nanos The longest time in nanoseconds to park for, or a negative number to park until signalled.
+	 * @throws InterruptedException If the cron thread was interrupted while parked.
+	 */
+	private void park(long nanos) throws InterruptedException {
+		lock.lock();
+		try {
+			//Checked under the lock, so that a change queued after the cron thread last looked also signals it after it has parked.
+			if(running&&changes.isEmpty()) {
+				if(nanos<0) {
+					changed.await();
+				} else {
+					changed.awaitNanos(nanos);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Applies every queued registration, reschedule and removal to the groups. Must be called from the cron thread.
+	 */
+	private void applyChanges() {
+		JobChange c;
+		while((c = changes.poll())!=null) {
+			if(c.remove) {
+				unfile(c.job);
+			} else {
+				file(c.job);
+			}
+		}
+	}
+	
+	/**
+	 * Checks a group against a second in the time zone its {@link CronSchedule} is read in. Must be called from the cron thread.
+	 * 
+	 * @param g The {@link CronJobGroup} filed under the second within the minute.
+	 * @param millis The start of the second, in epoch milliseconds.
+	 * @return True if the group is due, false otherwise.
+	 */
+	private boolean isDue(CronJobGroup g, long millis) {
+		CronSchedule schedule = g.getSchedule();
+		CronZone zone = zones.get(schedule.getZone()).zone;
+		if(zone.isRepeated(millis)) {
+			return false;
+		}
+		CronInstant local = zone.instantAt(millis);
+		if(schedule.matches(local.getMinute(), local.getHour(), local.getDayOfMonth(), local.getMonth(), local.getDayOfWeek(), local.getYear())) {
+			return true;
+		}
+		LocalDateTime skipped = zone.skippedAt(millis);
+		return skipped!=null&&schedule.matches(skipped.getMinute(), skipped.getHour(), skipped.getDayOfMonth(), skipped.getMonthValue(),
+				skipped.getDayOfWeek().getValue(), skipped.getYear());
+	}
+	
+	/**
+	 * Finds every group with an execution in the seconds that were skipped and applies its {@link CronJob}s' {@link CronMisfirePolicy}s.
+	 * 
+	 * @param lastSecond The last epoch second that was evaluated.
+	 * @param second The epoch second about to be evaluated.
+	 */
+	private void replayMissed(long lastSecond, long second) {
+		ZonedDateTime evaluated = zonedAt(lastSecond*1000L);
+		for(CronJobGroup g : groups.groups()) {
+			Optional<ZonedDateTime> missed = g.getSchedule().nextExecutionAfter(evaluated);
+			if(missed.isPresent()&&missed.get().toEpochSecond()<second) {
+				misfire(g, missed.get(), second*1000L);
+			}
+		}
+	}
+	
+	/**
+	 * Moves a {@link CronJob} into the group for its current {@link CronSchedule}, filing the group under each second the schedule
+	 * permits if it is new. Must be called from the cron thread, or before it is started.
+	 * 
+	 * @param j The {@link CronJob} to file.
+	 */
+	private void file(CronJob j) {
+		unfile(j);
+		CronJobGroup g = groups.add(j);
+		if(g.getJobs().size()>1) {
+			return;
+		}
+		ZoneId zone = g.getSchedule().getZone();
+		FiledZone z = zones.get(zone);
+		if(z==null) {
+			z = new FiledZone(zone);
+			zones.put(zone, z);
+		}
+		z.groupCount++;
+		long seconds = g.getSchedule().getSecondMask();
+		for(int i = 0; i < 60; i++) {
+			if((seconds&(1L<<i))!=0) {
+				bySecond.get(i).add(g);
+			}
+		}
+	}
+	
+	/**
+	 * Removes a {@link CronJob} from its group, unfiling the group from every second and dropping its time zone with the last group read
+	 * in it once it is empty. Must be called from the cron thread.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 */
+	private void unfile(CronJob j) {
+		CronJobGroup g = groups.remove(j);
+		if(g==null||!g.isEmpty()) {
+			return;
+		}
+		if(--zones.get(g.getSchedule().getZone()).groupCount==0) {
+			zones.remove(g.getSchedule().getZone());
+		}
+		long seconds = g.getSchedule().getSecondMask();
+		for(int i = 0; i < 60; i++) {
+			if((seconds&(1L<<i))!=0) {
+				List<CronJobGroup> bucket = bySecond.get(i);
+				int index = bucket.lastIndexOf(g);
+				int last = bucket.size()-1;
+				bucket.set(index, bucket.get(last));
+				bucket.remove(last);
+			}
+		}
+	}
+	
+	/**
+	 * A time zone that filed groups are read in.
+	 */
+	private static class FiledZone {
+		
+		private final CronZone zone;
+		private int groupCount = 0;
+		
+		private FiledZone(ZoneId zone) {
+			this.zone = new CronZone(zone);
+		}
+		
+	}
+
+}
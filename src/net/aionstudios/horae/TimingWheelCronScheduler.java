@@ -0,0 +1,370 @@
+package net.aionstudios.horae;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * A {@link CronScheduler} that groups registered {@link CronJob}s by {@link CronSchedule} and files every group into a hierarchy of timing
+ * wheels by its next execution time. Groups due within the hour sit in the minute wheel, groups due within the day in the hour wheel, groups due within a year in the day wheel and
+ * anything further out in an overflow bucket. Coarser wheels are cascaded into finer ones as their slot comes around, so each minute only
+ * touches the groups that are due, and adding, rescheduling or removing a {@link CronJob} is a constant time list operation.
+ * 
+ * When the cron thread has been held up, the wheels are advanced through every skipped minute in one pass, and each group found due
+ * in a skipped minute hands its {@link CronJob}s their {@link CronMisfirePolicy}s once for the whole gap.
+ *
+ * The groups and the wheels belong to the cron thread. Registrations, reschedules and removals are queued without locking and applied
+ * at the start of the next minute, before the wheels advance. The lock only guards parking between minutes, so due {@link CronJob}s are
+ * handed over without holding it and other threads are never held up by a tick.
+ * 
+ * @author Winter Roberts
+ *
+ */
+class TimingWheelCronScheduler extends CronScheduler {
+	
+	private static final int MINUTES_PER_HOUR = 60;
+	private static final int MINUTES_PER_DAY = 1440;
+	private static final int HOUR_SLOTS = 24;
+	private static final int DAY_SLOTS = 366;
+	
+	private final Entry[] minuteWheel = newWheel(MINUTES_PER_HOUR);
+	private final Entry[] hourWheel = newWheel(HOUR_SLOTS);
+	private final Entry[] dayWheel = newWheel(DAY_SLOTS);
+	private final Entry overflow = new Entry(null);
+	private final CronJobGroups groups = new CronJobGroups();
+	private final Map<CronJobGroup, Entry> entries = new IdentityHashMap<CronJobGroup, Entry>();
+	/* The groups due in the minute being processed, kept between minutes so the list is only allocated once. */
+	private final List<CronJobGroup> due = new ArrayList<CronJobGroup>();
+	private final Queue<JobChange> changes = new ConcurrentLinkedQueue<JobChange>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition stopped = lock.newCondition();
+	/* The last epoch minute that has been processed. */
+	private long currentMinute;
+	private volatile boolean running = false;
+	private Thread cronThread;
+	
+	@Override
+	void start(Iterable<CronJob> jobs) {
+		reset(Math.floorDiv(DateTimeServices.getClock().millis(), 60000L));
+		for(CronJob j : jobs) {
+			schedule(j);
+		}
+		running = true;
+		cronThread = new Thread() {
+			public void run() {
+				try {
+					while(awaitNextMinute()) {
+						long minute = Math.floorDiv(DateTimeServices.getClock().millis(), 60000L);
+						beginTick();
+						applyChanges();
+						advanceTo(minute);
+						endTick(minute*60000L);
+					}
+				} catch(InterruptedException e) {
+					if(running) {
+						System.err.println("Cron thread was interrupted!");
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		cronThread.start();
+	}
+	
+	@Override
+	void stop() {
+		lock.lock();
+		try {
+			running = false;
+			stopped.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	void jobAdded(CronJob j) {
+		jobRescheduled(j);
+	}
+	
+	@Override
+	void jobRescheduled(CronJob j) {
+		changes.add(new JobChange(j, false));
+	}
+	
+	@Override
+	void jobRemoved(CronJob j) {
+		changes.add(new JobChange(j, true));
+	}
+	
+	/**
+	 * Parks the cron thread until the minute after the last processed one has begun. Must be called from the cron thread.
+	 * 
+	 * @return True once the minute has begun, false if this {@link TimingWheelCronScheduler} has been stopped.
+	 * @throws InterruptedException If the cron thread was interrupted while parked.
+	 */
+	private boolean awaitNextMinute() throws InterruptedException {
+		lock.lock();
+		try {
+			while(running) {
+				long wait = (currentMinute+1)*60000L-DateTimeServices.getClock().millis();
+				if(wait<=0) {
+					return true;
+				}
+				stopped.awaitNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Applies every queued registration, reschedule and removal to the groups and the wheels. Must be called from the cron thread.
+	 */
+	private void applyChanges() {
+		JobChange c;
+		while((c = changes.poll())!=null) {
+			if(c.remove) {
+				leave(c.job);
+			} else {
+				schedule(c.job);
+			}
+		}
+	}
+	
+	/**
+	 * Empties every wheel and sets the last processed minute. Must be called from the cron thread, or before it is started.
+	 * 
+	 * @param epochMinute The epoch minute to treat as already processed.
+	 */
+	void reset(long epochMinute) {
+		for(Entry[] wheel : new Entry[][] {minuteWheel, hourWheel, dayWheel}) {
+			for(Entry slot : wheel) {
+				slot.prev = slot;
+				slot.next = slot;
+			}
+		}
+		overflow.prev = overflow;
+		overflow.next = overflow;
+		entries.clear();
+		groups.clear();
+		currentMinute = epochMinute;
+	}
+	
+	/**
+	 * Moves a {@link CronJob} into the group for its current {@link CronSchedule}, filing the group by its next execution after the last
+	 * processed minute if it is new. Must be called from the cron thread, or before it is started.
+	 * 
+	 * @param j The {@link CronJob} to schedule.
+	 */
+	void schedule(CronJob j) {
+		leave(j);
+		CronJobGroup g = groups.add(j);
+		if(g.getJobs().size()>1) {
+			return;
+		}
+		Entry e = new Entry(g);
+		entries.put(g, e);
+		if(!reschedule(e, currentMinute)) {
+			entries.remove(g);
+		}
+	}
+	
+	/**
+	 * Removes a {@link CronJob} from its group, unfiling the group once it is empty. Must be called from the cron thread.
+	 * 
+	 * @param j The {@link CronJob} to remove.
+	 */
+	private void leave(CronJob j) {
+		CronJobGroup g = groups.remove(j);
+		if(g!=null&&g.isEmpty()) {
+			Entry e = entries.remove(g);
+			if(e!=null) {
+				e.unlink();
+			}
+		}
+	}
+	
+	/**
+	 * Processes every minute up to and including the one provided, executing the {@link CronJob}s that fall due in that minute and applying the
+	 * {@link CronMisfirePolicy} of those that fell due in the minutes before it. Must be called from the cron thread.
+	 * 
+	 * @param epochMinute The epoch minute to advance to.
+	 */
+	void advanceTo(long epochMinute) {
+		while(currentMinute<epochMinute) {
+			currentMinute++;
+			if(currentMinute%MINUTES_PER_DAY==0) {
+				int day = (int) Math.floorMod(currentMinute/MINUTES_PER_DAY, (long) DAY_SLOTS);
+				if(day==0) {
+					cascade(overflow);
+				}
+				cascade(dayWheel[day]);
+			}
+			if(currentMinute%MINUTES_PER_HOUR==0) {
+				cascade(hourWheel[(int) Math.floorMod(currentMinute/MINUTES_PER_HOUR, (long) HOUR_SLOTS)]);
+			}
+			Entry slot = minuteWheel[(int) Math.floorMod(currentMinute, (long) MINUTES_PER_HOUR)];
+			Entry e = detach(slot);
+			while(e!=null) {
+				Entry next = e.next;
+				e.prev = null;
+				e.next = null;
+				if(e.minute<currentMinute||(e.minute==currentMinute&&currentMinute<epochMinute)) {
+					//Due in a skipped minute, so every execution up to the minute being advanced to was missed.
+					misfire(e.group, zonedAt(e.minute*60000L), epochMinute*60000L);
+					e.unlink();
+					if(!reschedule(e, epochMinute-1)) {
+						entries.remove(e.group);
+					}
+				} else if(e.minute==currentMinute) {
+					due.add(e.group);
+					e.unlink();
+					if(!reschedule(e, currentMinute)) {
+						entries.remove(e.group);
+					}
+				} else {
+					place(e);
+				}
+				e = next;
+			}
+			fireAll(due, currentMinute*60000L);
+			due.clear();
+		}
+	}
+	
+	/**
+	 * Re-files every entry in a coarser wheel's slot now that it has come around.
+	 * 
+	 * @param slot The slot to cascade.
+	 */
+	private void cascade(Entry slot) {
+		Entry e = detach(slot);
+		while(e!=null) {
+			Entry next = e.next;
+			e.prev = null;
+			e.next = null;
+			place(e);
+			e = next;
+		}
+	}
+	
+	/**
+	 * Computes the next execution of an entry's {@link CronJobGroup} and files it.
+	 * 
+	 * @param e The entry to reschedule, which must not be linked into any slot.
+	 * @param afterMinute The epoch minute after which the next execution must fall.
+	 * @return True if the entry was filed, false if its {@link CronJobGroup} will never execute again.
+	 */
+	private boolean reschedule(Entry e, long afterMinute) {
+		Optional<ZonedDateTime> next = e.group.getSchedule().nextExecutionAfter(zonedAt(afterMinute*60000L));
+		if(!next.isPresent()) {
+			return false;
+		}
+		e.minute = Math.floorDiv(next.get().toEpochSecond(), 60L);
+		place(e);
+		return true;
+	}
+	
+	/**
+	 * Files an entry into the finest wheel that can hold its next execution.
+	 * 
+	 * @param e The entry to file, which must not be linked into any slot.
+	 */
+	private void place(Entry e) {
+		long delta = e.minute-currentMinute;
+		if(delta<=0) {
+			//Only cascaded entries can be due now, and they are cascaded before the current minute's slot is drained, so they fire this minute.
+			minuteWheel[(int) Math.floorMod(currentMinute, (long) MINUTES_PER_HOUR)].append(e);
+		} else if(delta<MINUTES_PER_HOUR) {
+			minuteWheel[(int) Math.floorMod(e.minute, (long) MINUTES_PER_HOUR)].append(e);
+		} else if(delta<MINUTES_PER_DAY) {
+			hourWheel[(int) Math.floorMod(e.minute/MINUTES_PER_HOUR, (long) HOUR_SLOTS)].append(e);
+		} else if(delta<(long) MINUTES_PER_DAY*DAY_SLOTS) {
+			dayWheel[(int) Math.floorMod(e.minute/MINUTES_PER_DAY, (long) DAY_SLOTS)].append(e);
+		} else {
+			overflow.append(e);
+		}
+	}
+	
+	/**
+	 * Empties a slot.
+	 * 
+	 * @param slot The slot to empty.
+	 * @return The first of the entries that were in the slot, chained through next and ending in null, or null if the slot was empty.
+	 */
+	private static Entry detach(Entry slot) {
+		if(slot.next==slot) {
+			return null;
+		}
+		Entry first = slot.next;
+		slot.prev.next = null;
+		slot.prev = slot;
+		slot.next = slot;
+		return first;
+	}
+	
+	/**
+	 * @param size The number of slots in the wheel.
+	 * @return A wheel of empty slots.
+	 */
+	private static Entry[] newWheel(int size) {
+		Entry[] wheel = new Entry[size];
+		for(int i = 0; i < size; i++) {
+			wheel[i] = new Entry(null);
+		}
+		return wheel;
+	}
+	
+	/**
+	 * A {@link CronJobGroup} filed in a wheel slot, linked into the slot's circular list. Slots themselves are entries without a group.
+	 */
+	private static class Entry {
+		
+		private final CronJobGroup group;
+		private long minute;
+		private Entry prev = this;
+		private Entry next = this;
+		
+		private Entry(CronJobGroup group) {
+			this.group = group;
+		}
+		
+		/**
+		 * Links an entry at the end of this slot.
+		 * 
+		 * @param e The entry to link, which must not be linked into any slot.
+		 */
+		private void append(Entry e) {
+			e.prev = prev;
+			e.next = this;
+			prev.next = e;
+			prev = e;
+		}
+		
+		/**
+		 * Removes this entry from whichever slot holds it, if any.
+		 */
+		private void unlink() {
+			if(prev!=null&&prev!=this) {
+				prev.next = next;
+				next.prev = prev;
+			}
+			prev = null;
+			next = null;
+		}
+	
+	}
+
+}
@@ -0,0 +1,96 @@
+package net.aionstudios.horae.service;
+
+/**
+ * A single reading of the clock, to the minute, broken down into the fields a {@link net.aionstudios.horae.CronDateTime} is matched
+ * against. Every field comes from the same instant, so they can never straddle a minute or day boundary.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public final class CronInstant {
+	
+	private final long epochMillis;
+	private final int minute;
+	private final int hour;
+	private final int dayOfMonth;
+	private final int month;
+	private final int dayOfWeek;
+	private final int year;
+	
+	CronInstant(long epochMillis, int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+		this.epochMillis = epochMillis;
+		this.minute = minute;
+		this.hour = hour;
+		this.dayOfMonth = dayOfMonth;
+		this.month = month;
+		this.dayOfWeek = dayOfWeek;
+		this.year = year;
+	}
+	
+	/**
+	 * @return The start of the minute this {@link CronInstant} was read in, in milliseconds since the epoch. The seconds and milliseconds
+	 * of the reading are dropped, so that every reading within the same local minute shares one {@link CronInstant}, and the time since
+	 * the reading can be worked out from how far the clock has moved past this.
+	 */
+	public long getEpochMillis() {
+		return epochMillis;
+	}
+	
+	/**
+	 * @return The number of whole minutes since the epoch at this {@link CronInstant}.
+	 */
+	public long getEpochMinute() {
+		return Math.floorDiv(epochMillis, 60000L);
+	}
+	
+	/**
+	 * @return The cron-functional minute (0-59).
+	 */
+	public int getMinute() {
+		return minute;
+	}
+	
+	/**
+	 * @return The cron-functional hour (0-23).
+	 */
+	public int getHour() {
+		return hour;
+	}
+	
+	/**
+	 * @return The cron-functional day of the month (1-31).
+	 */
+	public int getDayOfMonth() {
+		return dayOfMonth;
+	}
+	
+	/**
+	 * @return The cron-functional month (1-12).
+	 */
+	public int getMonth() {
+		return month;
+	}
+	
+	/**
+	 * @return The cron-functional day of the week (1-7, Monday through Sunday).
+	 */
+	public int getDayOfWeek() {
+		return dayOfWeek;
+	}
+	
+	/**
+	 * @return The cron-functional year.
+	 */
+	public int getYear() {
+		return year;
+	}
+	
+	/**
+	 * @return This {@link CronInstant} in the same form as a cron time. m h d m w y
+	 */
+	@Override
+	public String toString() {
+		return minute+" "+hour+" "+dayOfMonth+" "+month+" "+dayOfWeek+" "+year;
+	}
+
+}
@@ -1,128 +1,428 @@
-package net.aionstudios.horae.service;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-
-/**
- * A class providing services relating to AOS's date-time systems.
- * 
- * @author Winter Roberts
- *
- */
-public class DateTimeServices {
-	
-	private static SimpleDateFormat dateform = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-	private static Calendar c;
-	
-	/**
-	 * Generates a DateTime that matches the current time, compatible with MYSQL databases.
-	 * 
-	 * @return	The MYSQL formatted date.
-	 */
-	public static String getMysqlCompatibleDateTime() {
-		return dateform.format(new Date());
-	}
-	
-	/**
-	 * Gets the current datetime plus thirty minutes.
-	 * 
-	 * @return	The current time plus thirty minutes.
-	 */
-	public static String getThirtyAddedDT() {
-		long millis = Calendar.getInstance().getTimeInMillis();
-		return dateform.format(new Date(millis+1800000));
-	}
-	
-	/**
-	 * Returns the time from now a provided number of seconds later.
-	 * 
-	 * @param seconds A number of seconds to add to the current time.
-	 * @return The string result of these additional seconds.
-	 */
-	public static String getSecondsAddedDT(long seconds) {
-		long millis = Calendar.getInstance().getTimeInMillis();
-		return dateform.format(new Date(millis+(1000*seconds)));
-	}
-	
-	/**
-	 * Reads a MYSQL formatted datetime to a Java date.
-	 * 
-	 * @param dateTime	A String representing the date and time in the form of yyyy-MM-dd HH:mm:ss..
-	 * @return	The given datetime string as a date object.
-	 */
-	public static Date getDateTimeFromString(String dateTime) {
-		Date d = new Date();
-		try {
-			d = dateform.parse(dateTime);
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-		return d;
-	}
-	
-	/**
-	 * @return A long unix timestamp.
-	 */
-	public static long getUnixTimestamp() {
-		return new Date().getTime()/1000;
-	}
-	
-	/**
-	 * @return The current cron-functional minute.
-	 */
-	public static int getCronMinute() {
-		c = Calendar.getInstance();
-		return c.get(Calendar.MINUTE);
-	}
-	
-	/**
-	 * @return The current cron-functional hour.
-	 */
-	public static int getCronHour() {
-		c = Calendar.getInstance();
-		return c.get(Calendar.HOUR_OF_DAY);
-	}
-	
-	/**
-	 * @return The current cron-functional day of the month.
-	 */
-	public static int getCronDayOfMonth() {
-		c = Calendar.getInstance();
-		return c.get(Calendar.DAY_OF_MONTH);
-	}
-	
-	/**
-	 * @return The current cron-functional month.
-	 */
-	public static int getCronMonth() {
-		c = Calendar.getInstance();
-		return c.get(Calendar.MONTH)+1;
-	}
-	
-	/**
-	 * @return The current cron-functional day of the week.
-	 */
-	public static int getCronDayOfWeek() {
-		c = Calendar.getInstance();
-		int i = c.get(Calendar.DAY_OF_WEEK)-1;
-		return i<1 ? 7 : i;
-	}
-	
-	/**
-	 * @return The current cron-functional year.
-	 */
-	public static int getCronYear() {
-		c = Calendar.getInstance();
-		return c.get(Calendar.YEAR);
-	}
-	
-	/**
-	 * @return The current cron-functional time.
-	 */
-	public static String getCronNowString() {
-		return getCronMinute()+" "+getCronHour()+" "+getCronDayOfMonth()+" "+getCronMonth()+" "+getCronDayOfWeek()+" "+getCronYear();
-	}
-
-}
+package net.aionstudios.horae.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class providing services relating to AOS's date-time systems.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class DateTimeServices {
+	
+	private static final long MILLIS_PER_SECOND = 1000L;
+	private static final long MILLIS_PER_MINUTE = 60000L;
+	private static final long MILLIS_PER_DAY = 86400000L;
+	/* Days between 0000-03-01, the start of the era used by the civil calendar arithmetic below, and 1970-01-01. */
+	private static final long DAYS_0000_TO_1970 = 719468L;
+	private static final long DAYS_PER_ERA = 146097L;
+	private static final int DATE_TIME_LENGTH = 19;
+	private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+	
+	/* Only used for years that do not fit the four digit fast path. */
+	private static final DateTimeFormatter dateform = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
+	private static volatile Clock clock = Clock.systemDefaultZone();
+	private static volatile CronSnapshot cronSnapshot;
+	/* The most recent CronSnapshot in each time zone, for CronDateTimes that carry a zone of their own. */
+	private static final Map<ZoneId, CronSnapshot> zoneSnapshots = new ConcurrentHashMap<ZoneId, CronSnapshot>();
+	private static volatile FormattedSecond formattedSecond;
+	private static volatile OffsetWindow offsetWindow;
+	
+	/**
+	 * Sets the {@link Clock} from which the cron-functional time is read. Defaults to the system clock in the default time zone.
+	 * 
+	 * @param clock The {@link Clock} to read the current time and time zone from.
+	 */
+	public static void setClock(Clock clock) {
+		DateTimeServices.clock = clock;
+		cronSnapshot = null;
+		zoneSnapshots.clear();
+	}
+	
+	/**
+	 * @return The {@link Clock} from which the cron-functional time is read.
+	 */
+	public static Clock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Generates a DateTime that matches the current time, compatible with MYSQL databases.
+	 * The result is cached for the rest of the second, so repeated calls within the same second return the same string.
+	 * 
+	 * @return	The MYSQL formatted date.
+	 */
+	public static String getMysqlCompatibleDateTime() {
+		Clock clk = clock;
+		long millis = clk.millis();
+		long second = Math.floorDiv(millis, MILLIS_PER_SECOND);
+		FormattedSecond cached = formattedSecond;
+		if(cached!=null&&cached.second==second&&cached.zone==clk.getZone()) {
+			return cached.text;
+		}
+		String text = formatDateTime(millis, clk.getZone());
+		formattedSecond = new FormattedSecond(second, clk.getZone(), text);
+		return text;
+	}
+	
+	/**
+	 * Gets the current datetime plus thirty minutes.
+	 * 
+	 * @return	The current time plus thirty minutes.
+	 */
+	public static String getThirtyAddedDT() {
+		return getSecondsAddedDT(1800);
+	}
+	
+	/**
+	 * Returns the time from now a provided number of seconds later.
+	 * 
+	 * @param seconds A number of seconds to add to the current time.
+	 * @return The string result of these additional seconds.
+	 */
+	public static String getSecondsAddedDT(long seconds) {
+		Clock clk = clock;
+		return formatDateTime(clk.millis()+(1000*seconds), clk.getZone());
+	}
+	
+	/**
+	 * Formats an instant as a MYSQL compatible datetime in the time zone of the {@link Clock}. Safe to call from any number of threads at once.
+	 * 
+	 * @param epochMillis The instant to format, in milliseconds since the epoch.
+	 * @return The instant in the form of yyyy-MM-dd HH:mm:ss.
+	 */
+	public static String formatDateTime(long epochMillis) {
+		return formatDateTime(epochMillis, clock.getZone());
+	}
+	
+	private static String formatDateTime(long epochMillis, ZoneId zone) {
+		long local = epochMillis+offsetMillisAt(zone, epochMillis);
+		long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+		int secondOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY)/MILLIS_PER_SECOND);
+		//Civil date from a day count, see http://howardhinnant.github.io/date_algorithms.html
+		long z = epochDay+DAYS_0000_TO_1970;
+		long era = Math.floorDiv(z, DAYS_PER_ERA);
+		long doe = z-era*DAYS_PER_ERA;
+		long yoe = (doe-doe/1460+doe/36524-doe/146096)/365;
+		long doy = doe-(365*yoe+yoe/4-yoe/100);
+		long mp = (5*doy+2)/153;
+		int day = (int) (doy-(153*mp+2)/5+1);
+		int month = (int) (mp<10 ? mp+3 : mp-9);
+		long year = yoe+era*400+(month<=2 ? 1 : 0);
+		if(year<0||year>9999) {
+			return dateform.format(Instant.ofEpochMilli(epochMillis).atZone(zone));
+		}
+		char[] text = new char[DATE_TIME_LENGTH];
+		writeDigits(text, 0, (int) year, 4);
+		text[4] = '-';
+		writeDigits(text, 5, month, 2);
+		text[7] = '-';
+		writeDigits(text, 8, day, 2);
+		text[10] = ' ';
+		writeDigits(text, 11, secondOfDay/3600, 2);
+		text[13] = ':';
+		writeDigits(text, 14, (secondOfDay/60)%60, 2);
+		text[16] = ':';
+		writeDigits(text, 17, secondOfDay%60, 2);
+		return new String(text);
+	}
+	
+	private static void writeDigits(char[] text, int offset, int value, int width) {
+		for(int i = offset+width-1; i >= offset; i--) {
+			text[i] = (char) ('0'+value%10);
+			value /= 10;
+		}
+	}
+	
+	/**
+	 * Reads a MYSQL formatted datetime to a Java date.
+	 * 
+	 * @param dateTime	A String representing the date and time in the form of yyyy-MM-dd HH:mm:ss..
+	 * @return	The given datetime string as a date object, or null if it is not a valid datetime of that form.
+	 */
+	public static Date getDateTimeFromString(String dateTime) {
+		long millis = parseDateTime(dateTime);
+		return millis==Long.MIN_VALUE ? null : new Date(millis);
+	}
+	
+	/**
+	 * Reads a MYSQL formatted datetime in the time zone of the {@link Clock} without allocating. Only the exact layout yyyy-MM-dd HH:mm:ss is accepted.
+	 * 
+	 * @param dateTime A sequence of characters representing the date and time in the form of yyyy-MM-dd HH:mm:ss.
+	 * @return The datetime in milliseconds since the epoch, or {@link Long#MIN_VALUE} if it is null, not of that form or not a real date and time.
+	 */
+	public static long parseDateTime(CharSequence dateTime) {
+		if(dateTime==null||dateTime.length()!=DATE_TIME_LENGTH||dateTime.charAt(4)!='-'||dateTime.charAt(7)!='-'||dateTime.charAt(10)!=' '||dateTime.charAt(13)!=':'||dateTime.charAt(16)!=':') {
+			return Long.MIN_VALUE;
+		}
+		int year = readDigits(dateTime, 0, 4);
+		int month = readDigits(dateTime, 5, 2);
+		int day = readDigits(dateTime, 8, 2);
+		int hour = readDigits(dateTime, 11, 2);
+		int minute = readDigits(dateTime, 14, 2);
+		int second = readDigits(dateTime, 17, 2);
+		if(year<0||month<1||month>12||day<1||day>lengthOfMonth(year, month)||hour<0||hour>23||minute<0||minute>59||second<0||second>59) {
+			return Long.MIN_VALUE;
+		}
+		//Day count from a civil date, see http://howardhinnant.github.io/date_algorithms.html
+		long y = month<=2 ? year-1 : year;
+		long era = Math.floorDiv(y, 400L);
+		long yoe = y-era*400;
+		long doy = (153*(month>2 ? month-3 : month+9)+2)/5+day-1;
+		long doe = yoe*365+yoe/4-yoe/100+doy;
+		long epochDay = era*DAYS_PER_ERA+doe-DAYS_0000_TO_1970;
+		long local = epochDay*MILLIS_PER_DAY+(hour*3600L+minute*60L+second)*MILLIS_PER_SECOND;
+		ZoneId zone = clock.getZone();
+		return local-offsetMillisAt(zone, local-offsetMillisAt(zone, local));
+	}
+	
+	/**
+	 * @return The non-negative value of a run of decimal digits, or -1 if any of the characters is not a digit.
+	 */
+	private static int readDigits(CharSequence text, int offset, int width) {
+		int value = 0;
+		for(int i = offset; i < offset+width; i++) {
+			char c = text.charAt(i);
+			if(c<'0'||c>'9') {
+				return -1;
+			}
+			value = value*10+(c-'0');
+		}
+		return value;
+	}
+	
+	private static int lengthOfMonth(int year, int month) {
+		if(month==2) {
+			return (year%4==0&&(year%100!=0||year%400==0)) ? 29 : 28;
+		}
+		return (month==4||month==6||month==9||month==11) ? 30 : 31;
+	}
+	
+	/**
+	 * @param zone The time zone to look the offset up in.
+	 * @param epochMillis The instant to look the offset up at.
+	 * @return The offset from UTC in milliseconds, reused from the last lookup while no transition lies between them.
+	 */
+	private static long offsetMillisAt(ZoneId zone, long epochMillis) {
+		OffsetWindow window = offsetWindow;
+		if(window==null||window.zone!=zone||epochMillis<window.startMillis||epochMillis>=window.endMillis) {
+			window = new OffsetWindow(zone, epochMillis);
+			offsetWindow = window;
+		}
+		return window.offsetMillis;
+	}
+	
+	/**
+	 * @return A long unix timestamp.
+	 */
+	public static long getUnixTimestamp() {
+		return Math.floorDiv(clock.millis(), MILLIS_PER_SECOND);
+	}
+	
+	/**
+	 * Reads the {@link Clock} once and breaks the reading down into cron-functional fields.
+	 * The date part is worked out once and reused until the next midnight or time zone offset change, and the result is reused for
+	 * the rest of the minute, so this does not allocate in the steady state.
+	 * 
+	 * @return The current cron-functional time as a single consistent {@link CronInstant}.
+	 */
+	public static CronInstant getCronInstant() {
+		Clock clk = clock;
+		return getCronInstant(clk.getZone(), clk.millis());
+	}
+	
+	/**
+	 * Reads the {@link Clock} once and breaks the reading down into cron-functional fields in the provided time zone rather than the
+	 * {@link Clock}'s own, reusing earlier results in the same way as {@link #getCronInstant()}.
+	 * 
+	 * @param zone The time zone in which to break the reading down.
+	 * @return The current cron-functional time in the zone as a single consistent {@link CronInstant}.
+	 */
+	public static CronInstant getCronInstant(ZoneId zone) {
+		return getCronInstant(zone, clock.millis());
+	}
+	
+	/**
+	 * Breaks an instant down into cron-functional fields in the provided time zone. Each zone keeps its own date part and most recent
+	 * result, so any number of zones may be evaluated for the same instant without one displacing another.
+	 * 
+	 * @param zone The time zone in which to break the instant down.
+	 * @param millis The instant in milliseconds since the epoch.
+	 * @return The cron-functional time in the zone as a single consistent {@link CronInstant}.
+	 */
+	public static CronInstant getCronInstant(ZoneId zone, long millis) {
+		CronSnapshot snapshot = cronSnapshot;
+		if(snapshot==null||!snapshot.day.zone.equals(zone)) {
+			snapshot = zoneSnapshots.get(zone);
+		}
+		if(snapshot!=null) {
+			if(millis>=snapshot.instant.getEpochMillis()&&millis<snapshot.instant.getEpochMillis()+MILLIS_PER_MINUTE&&millis<snapshot.day.endMillis) {
+				return snapshot.instant;
+			}
+		}
+		CronDay day = snapshot!=null&&millis>=snapshot.day.startMillis&&millis<snapshot.day.endMillis ? snapshot.day : new CronDay(zone, millis);
+		long local = millis+day.offsetMillis;
+		int minuteOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY)/MILLIS_PER_MINUTE);
+		CronInstant instant = new CronInstant(millis-Math.floorMod(local, MILLIS_PER_MINUTE), minuteOfDay%60, minuteOfDay/60, day.dayOfMonth, day.month, day.dayOfWeek, day.year);
+		snapshot = new CronSnapshot(day, instant);
+		cronSnapshot = snapshot;
+		zoneSnapshots.put(zone, snapshot);
+		return instant;
+	}
+	
+	/**
+	 * @return The current cron-functional minute.
+	 */
+	public static int getCronMinute() {
+		return getCronInstant().getMinute();
+	}
+	
+	/**
+	 * @return The current cron-functional hour.
+	 */
+	public static int getCronHour() {
+		return getCronInstant().getHour();
+	}
+	
+	/**
+	 * @return The current cron-functional day of the month.
+	 */
+	public static int getCronDayOfMonth() {
+		return getCronInstant().getDayOfMonth();
+	}
+	
+	/**
+	 * @return The current cron-functional month.
+	 */
+	public static int getCronMonth() {
+		return getCronInstant().getMonth();
+	}
+	
+	/**
+	 * @return The current cron-functional day of the week.
+	 */
+	public static int getCronDayOfWeek() {
+		return getCronInstant().getDayOfWeek();
+	}
+	
+	/**
+	 * @return The current cron-functional year.
+	 */
+	public static int getCronYear() {
+		return getCronInstant().getYear();
+	}
+	
+	/**
+	 * @return The current cron-functional time.
+	 */
+	public static String getCronNowString() {
+		return getCronInstant().toString();
+	}
+	
+	/**
+	 * The date part of the cron-functional time, valid for as long as the day and the time zone offset stay the same.
+	 */
+	private static final class CronDay {
+		
+		private final ZoneId zone;
+		private final long startMillis;
+		private final long endMillis;
+		private final long offsetMillis;
+		private final int dayOfMonth;
+		private final int month;
+		private final int dayOfWeek;
+		private final int year;
+		
+		private CronDay(ZoneId zone, long millis) {
+			ZoneRules rules = zone.getRules();
+			Instant instant = Instant.ofEpochMilli(millis);
+			long offset = rules.getOffset(instant).getTotalSeconds()*1000L;
+			long epochDay = Math.floorDiv(millis+offset, MILLIS_PER_DAY);
+			long start = epochDay*MILLIS_PER_DAY-offset;
+			long end = start+MILLIS_PER_DAY;
+			ZoneOffsetTransition previous = rules.previousTransition(instant);
+			if(previous!=null) {
+				start = Math.max(start, previous.toEpochSecond()*1000L);
+			}
+			ZoneOffsetTransition next = rules.nextTransition(instant);
+			if(next!=null) {
+				end = Math.min(end, next.toEpochSecond()*1000L);
+			}
+			LocalDate date = LocalDate.ofEpochDay(epochDay);
+			this.zone = zone;
+			this.startMillis = start;
+			this.endMillis = end;
+			this.offsetMillis = offset;
+			this.dayOfMonth = date.getDayOfMonth();
+			this.month = date.getMonthValue();
+			this.dayOfWeek = date.getDayOfWeek().getValue();
+			this.year = date.getYear();
+		}
+		
+	}
+	
+	/**
+	 * The most recent {@link CronInstant} together with the {@link CronDay} it was built from.
+	 */
+	private static final class CronSnapshot {
+		
+		private final CronDay day;
+		private final CronInstant instant;
+		
+		private CronSnapshot(CronDay day, CronInstant instant) {
+			this.day = day;
+			this.instant = instant;
+		}
+		
+	}
+	
+	/**
+	 * A period during which a time zone's offset from UTC does not change.
+	 */
+	private static final class OffsetWindow {
+		
+		private final ZoneId zone;
+		private final long startMillis;
+		private final long endMillis;
+		private final long offsetMillis;
+		
+		private OffsetWindow(ZoneId zone, long millis) {
+			ZoneRules rules = zone.getRules();
+			Instant instant = Instant.ofEpochMilli(millis);
+			ZoneOffsetTransition previous = rules.previousTransition(instant);
+			ZoneOffsetTransition next = rules.nextTransition(instant);
+			this.zone = zone;
+			this.startMillis = previous!=null ? previous.toEpochSecond()*1000L : Long.MIN_VALUE;
+			this.endMillis = next!=null ? next.toEpochSecond()*1000L : Long.MAX_VALUE;
+			this.offsetMillis = rules.getOffset(instant).getTotalSeconds()*1000L;
+		}
+		
+	}
+	
+	/**
+	 * The current time formatted by {@link DateTimeServices#getMysqlCompatibleDateTime()}, reused for the rest of its second.
+	 */
+	private static final class FormattedSecond {
+		
+		private final long second;
+		private final ZoneId zone;
+		private final String text;
+		
+		private FormattedSecond(long second, ZoneId zone, String text) {
+			this.second = second;
+			this.zone = zone;
+			this.text = text;
+		}
+		
+	}
+
+}
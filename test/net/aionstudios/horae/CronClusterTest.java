@@ -0,0 +1,173 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Checks how {@link CronJob}s move between the nodes of a {@link CronCluster} over a {@link FileCronCoordinator}: a node joining waits
+ * out a full lease before taking over from a live member, a node leaving or letting its lease run out is taken over from straight
+ * away, and a node whose lease has run out stops claiming. Two nodes run in one process on a fixed clock, and their leases are renewed
+ * by hand rather than by their renewing threads, which are left asleep for the length of a test.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronClusterTest {
+	
+	/* 2030-01-01T10:30Z */
+	private static final long START_MILLIS = 1893493800000L;
+	/* Long enough that the renewing threads, which sleep for a third of it, never wake during a test. */
+	private static final long LEASE_MILLIS = 3600000L;
+	
+	@TempDir
+	Path dir;
+	
+	private CronCluster a;
+	private CronCluster b;
+	private final List<CronCluster> started = new ArrayList<CronCluster>();
+	/* The started nodes that have not stalled, whose leases are renewed as time moves on. */
+	private final List<CronCluster> renewing = new ArrayList<CronCluster>();
+	
+	@BeforeEach
+	public void start() throws IOException {
+		setClock(START_MILLIS);
+		a = new CronCluster(new FileCronCoordinator(dir, "a"), LEASE_MILLIS);
+		b = new CronCluster(new FileCronCoordinator(dir, "b"), LEASE_MILLIS);
+	}
+	
+	@AfterEach
+	public void stop() throws IOException {
+		for(CronCluster c : started) {
+			c.close();
+		}
+		DateTimeServices.setClock(Clock.systemDefaultZone());
+	}
+	
+	@Test
+	public void soleMemberClaimsEverything() {
+		join(a);
+		for(int i = 0; i < 100; i++) {
+			assertEquals(a.getView().getEpoch(), a.claim(job("job-"+i), START_MILLIS));
+		}
+	}
+	
+	@Test
+	public void joiningNodeWaitsAFullLease() {
+		join(a);
+		long joined = START_MILLIS+1000L;
+		setClock(joined);
+		join(b);
+		CronJob moving = jobOwnedBy(b);
+		CronJob staying = jobOwnedBy(a);
+		//a has not renewed since b joined, so it still owns everything, and b must not claim alongside it.
+		assertTrue(a.claim(moving, joined)>0);
+		assertEquals(-1L, b.claim(moving, joined));
+		long renewed = renewAll(joined+LEASE_MILLIS/3);
+		assertEquals(-1L, a.claim(moving, renewed));
+		assertEquals(a.getView().getEpoch(), a.claim(staying, renewed));
+		assertEquals(-1L, b.claim(moving, renewed));
+		renewed = renewAll(joined+LEASE_MILLIS-1);
+		assertEquals(-1L, b.claim(moving, renewed));
+		renewed = renewAll(joined+LEASE_MILLIS);
+		assertEquals(b.getView().getEpoch(), b.claim(moving, renewed));
+		assertEquals(-1L, a.claim(moving, renewed));
+	}
+	
+	@Test
+	public void leavingNodeIsTakenOverAtOnce() throws IOException {
+		CronJob moving = settle();
+		long epoch = a.getView().getEpoch();
+		b.close();
+		renewing.remove(b);
+		long renewed = renewAll(DateTimeServices.getClock().millis()+1000L);
+		assertTrue(a.getView().getEpoch()>epoch);
+		assertEquals(a.getView().getEpoch(), a.claim(moving, renewed));
+	}
+	
+	@Test
+	public void expiredNodeIsTakenOverAtOnceAndStopsClaiming() {
+		CronJob moving = settle();
+		long epoch = a.getView().getEpoch();
+		//b stalls and stops renewing, and its lease runs out.
+		renewing.remove(b);
+		long expired = b.getView().getExpiresMillis();
+		setClock(expired);
+		assertEquals(-1L, b.claim(moving, expired));
+		a.renew();
+		assertTrue(a.getView().getEpoch()>epoch);
+		assertEquals(a.getView().getEpoch(), a.claim(moving, expired));
+	}
+	
+	/**
+	 * Starts both nodes and renews until every {@link CronJob} has settled on its owner.
+	 * 
+	 * @return A {@link CronJob} owned by b.
+	 */
+	private CronJob settle() {
+		join(a);
+		join(b);
+		CronJob j = jobOwnedBy(b);
+		long renewed = renewAll(START_MILLIS+LEASE_MILLIS);
+		assertEquals(b.getView().getEpoch(), b.claim(j, renewed));
+		return j;
+	}
+	
+	private void join(CronCluster c) {
+		c.start();
+		started.add(c);
+		renewing.add(c);
+	}
+	
+	/**
+	 * Moves the clock on and renews the lease of every node that has not stalled, as each node's renewing thread would.
+	 * 
+	 * @param millis The time in epoch milliseconds to renew at.
+	 * @return The time renewed at.
+	 */
+	private long renewAll(long millis) {
+		setClock(millis);
+		for(CronCluster c : renewing) {
+			c.renew();
+		}
+		return millis;
+	}
+	
+	/**
+	 * @param c A node of the cluster.
+	 * @return The first {@link CronJob} that falls to the node under the current members.
+	 */
+	private static CronJob jobOwnedBy(CronCluster c) {
+		for(int i = 0;; i++) {
+			CronJob j = job("job-"+i);
+			if(c.owns(j.getId())) {
+				return j;
+			}
+		}
+	}
+	
+	private static CronJob job(String id) {
+		return new CronJob(id, CronDateTime.parse("* * * * *")) {
+			@Override public void run() {}
+		};
+	}
+	
+	private static void setClock(long millis) {
+		DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli(millis), ZoneId.of("UTC")));
+	}
+
+}
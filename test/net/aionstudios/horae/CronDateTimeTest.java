@@ -0,0 +1,73 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the offsets into a {@link CronDateTime#setHashedWindow(int) hashed window} at which {@link CronJob}s start.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronDateTimeTest {
+	
+	@Test
+	public void offsetDependsOnlyOnId() {
+		CronDateTime first = hourly(10);
+		CronDateTime second = hourly(10);
+		assertEquals(first.hashedOffsetOf(job("nightly-report", first)), second.hashedOffsetOf(job("nightly-report", second)));
+	}
+	
+	@Test
+	public void offsetIsStableAcrossReleases() {
+		//Nodes running different versions, or one node before and after an upgrade, must agree on when each CronJob starts.
+		CronDateTime d = hourly(10);
+		assertEquals(125665L, d.hashedOffsetOf(job("nightly-report", d)));
+		assertEquals(501508L, d.hashedOffsetOf(job("cache-refresh", d)));
+	}
+	
+	@Test
+	public void offsetsSpreadEvenlyAcrossWindow() {
+		CronDateTime d = hourly(10);
+		int[] perMinute = new int[10];
+		for(int i = 0; i < 1000; i++) {
+			long offset = d.hashedOffsetOf(job("job-"+i, d));
+			assertTrue(offset>=0&&offset<10*60000L, "offset "+offset);
+			perMinute[(int) (offset/60000L)]++;
+		}
+		for(int m = 0; m < perMinute.length; m++) {
+			assertTrue(perMinute[m]>=70&&perMinute[m]<=130, "minute "+m+" has "+perMinute[m]);
+		}
+	}
+	
+	@Test
+	public void noWindowMeansNoOffset() {
+		CronDateTime d = hourly(0);
+		assertEquals(0L, d.hashedOffsetOf(job("nightly-report", d)));
+	}
+	
+	@Test
+	public void windowMustFitInADay() {
+		CronDateTime d = hourly(10);
+		assertFalse(d.setHashedWindow(-1));
+		assertFalse(d.setHashedWindow(1441));
+		assertEquals(10, d.getHashedWindow());
+		assertTrue(d.setHashedWindow(1440));
+	}
+	
+	private static CronDateTime hourly(int window) {
+		CronDateTime d = CronDateTime.parse("0 * * * *");
+		d.setHashedWindow(window);
+		return d;
+	}
+	
+	private static CronJob job(String id, CronDateTime d) {
+		return new CronJob(id, d) {
+			@Override public void run() {}
+		};
+	}
+
+}
@@ -0,0 +1,237 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks what a {@link CronExecutor} does under each {@link CronOverlapPolicy} when a {@link CronJob} falls due while it is still
+ * running, and under each {@link CronSaturationPolicy} once every worker is busy and the queue is full. Each execution is told apart by
+ * the fencing token it is handed.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronExecutorTest {
+	
+	private final List<CronExecutor> executors = new ArrayList<CronExecutor>();
+	
+	@AfterEach
+	public void shutdown() {
+		for(CronExecutor ex : executors) {
+			ex.shutdown();
+		}
+	}
+	
+	@Test
+	public void allowConcurrentStartsAlongside() throws InterruptedException {
+		CronExecutor ex = unbounded();
+		BlockingJob j = new BlockingJob("concurrent", CronOverlapPolicy.ALLOW_CONCURRENT);
+		ex.execute(j, 0L, 0L, 1L);
+		ex.execute(j, 0L, 0L, 2L);
+		j.awaitStarts(2);
+		j.release.countDown();
+		j.awaitFinishes(2);
+		assertEquals(2, j.started().size());
+	}
+	
+	@Test
+	public void skipIfRunningDropsNewExecution() throws InterruptedException {
+		CronExecutor ex = unbounded();
+		BlockingJob j = new BlockingJob("skip", CronOverlapPolicy.SKIP_IF_RUNNING);
+		ex.execute(j, 0L, 0L, 1L);
+		j.awaitStarts(1);
+		ex.execute(j, 0L, 0L, 2L);
+		j.release.countDown();
+		j.awaitFinishes(1);
+		assertEquals(Arrays.asList(1L), j.started());
+		assertEquals(1, j.getMetrics().getSkipped());
+	}
+	
+	@Test
+	public void queueOneHoldsOneAndDropsTheRest() throws InterruptedException {
+		CronExecutor ex = unbounded();
+		BlockingJob j = new BlockingJob("queue", CronOverlapPolicy.QUEUE_ONE);
+		ex.execute(j, 0L, 0L, 1L);
+		j.awaitStarts(1);
+		ex.execute(j, 0L, 0L, 2L);
+		ex.execute(j, 0L, 0L, 3L);
+		j.release.countDown();
+		j.awaitFinishes(2);
+		assertEquals(Arrays.asList(1L, 2L), j.started());
+		assertEquals(1, j.getMetrics().getSkipped());
+	}
+	
+	@Test
+	public void cancelPreviousInterruptsRunningExecution() throws InterruptedException {
+		CronExecutor ex = unbounded();
+		BlockingJob j = new BlockingJob("cancel", CronOverlapPolicy.CANCEL_PREVIOUS);
+		ex.execute(j, 0L, 0L, 1L);
+		j.awaitStarts(1);
+		ex.execute(j, 0L, 0L, 2L);
+		j.awaitStarts(1);
+		j.awaitFinishes(1);
+		assertEquals(Arrays.asList(1L), j.interrupted());
+		j.release.countDown();
+		j.awaitFinishes(1);
+		assertEquals(Arrays.asList(1L, 2L), j.started());
+	}
+	
+	@Test
+	public void rejectDropsExecutionsThatDoNotFit() throws InterruptedException {
+		RecordingListener listener = new RecordingListener();
+		CronExecutor ex = bounded(CronSaturationPolicy.REJECT, listener);
+		BlockingJob j = new BlockingJob("reject", CronOverlapPolicy.ALLOW_CONCURRENT);
+		saturate(ex, j);
+		ex.execute(j, 0L, 0L, 3L);
+		assertEquals(1, listener.saturations.get());
+		j.release.countDown();
+		j.awaitFinishes(2);
+		assertEquals(Arrays.asList(1L, 2L), j.started());
+		assertEquals(1, j.getMetrics().getSkipped());
+	}
+	
+	@Test
+	public void coalesceRunsOverflowOnceWorkerFreesUp() throws InterruptedException {
+		CronExecutor ex = bounded(CronSaturationPolicy.COALESCE, new RecordingListener());
+		BlockingJob j = new BlockingJob("busy", CronOverlapPolicy.ALLOW_CONCURRENT);
+		saturate(ex, j);
+		BlockingJob overflow = new BlockingJob("coalesced", CronOverlapPolicy.ALLOW_CONCURRENT);
+		overflow.release.countDown();
+		ex.execute(overflow, 0L, 0L, 3L);
+		ex.execute(overflow, 0L, 0L, 4L);
+		ex.execute(overflow, 0L, 0L, 5L);
+		//One waiting for the worker and one held aside.
+		assertEquals(2, ex.getQueueDepth());
+		j.release.countDown();
+		overflow.awaitFinishes(1);
+		assertEquals(Arrays.asList(3L), overflow.started());
+		assertEquals(2, overflow.getMetrics().getSkipped());
+	}
+	
+	@Test
+	public void callerRunsOverflowOnDispatchThread() throws InterruptedException {
+		CronExecutor ex = bounded(CronSaturationPolicy.CALLER_RUNS, new RecordingListener());
+		BlockingJob j = new BlockingJob("busy", CronOverlapPolicy.ALLOW_CONCURRENT);
+		saturate(ex, j);
+		BlockingJob overflow = new BlockingJob("caller", CronOverlapPolicy.ALLOW_CONCURRENT);
+		ex.execute(overflow, 0L, 0L, 3L);
+		overflow.awaitStarts(1);
+		//The dispatch thread is busy with the first, so the second is dropped rather than held up behind it.
+		ex.execute(overflow, 0L, 0L, 4L);
+		overflow.release.countDown();
+		j.release.countDown();
+		overflow.awaitFinishes(1);
+		assertEquals(Arrays.asList(3L), overflow.started());
+		assertEquals(Arrays.asList("horae-dispatch"), overflow.threads());
+		assertEquals(1, overflow.getMetrics().getSkipped());
+	}
+	
+	/**
+	 * Starts one execution on the only worker and queues another behind it.
+	 */
+	private static void saturate(CronExecutor ex, BlockingJob j) throws InterruptedException {
+		ex.execute(j, 0L, 0L, 1L);
+		j.awaitStarts(1);
+		ex.execute(j, 0L, 0L, 2L);
+	}
+	
+	private CronExecutor unbounded() {
+		CronExecutor ex = new CronExecutor();
+		executors.add(ex);
+		return ex;
+	}
+	
+	/**
+	 * @return A {@link CronExecutor} with one worker and room for one execution waiting for it.
+	 */
+	private CronExecutor bounded(CronSaturationPolicy policy, CronSaturationListener listener) {
+		CronExecutor ex = new CronExecutor(1, 1, policy);
+		ex.setSaturationListener(listener);
+		executors.add(ex);
+		return ex;
+	}
+	
+	/**
+	 * A {@link CronJob} that records the fencing token of each execution and blocks until released.
+	 */
+	private static class BlockingJob extends CronJob {
+		
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final List<Long> started = new ArrayList<Long>();
+		private final List<Long> interrupted = new ArrayList<Long>();
+		private final List<String> threads = new ArrayList<String>();
+		private final Semaphore starts = new Semaphore(0);
+		private final Semaphore finishes = new Semaphore(0);
+		
+		private BlockingJob(String id, CronOverlapPolicy overlapPolicy) {
+			super(id, CronDateTime.parse("* * * * *"));
+			setOverlapPolicy(overlapPolicy);
+		}
+		
+		@Override
+		public void run() {
+			long token = getFencingToken();
+			synchronized(this) {
+				started.add(token);
+				threads.add(Thread.currentThread().getName());
+			}
+			starts.release();
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				synchronized(this) {
+					interrupted.add(token);
+				}
+			} finally {
+				finishes.release();
+			}
+		}
+		
+		private synchronized List<Long> started() {
+			return new ArrayList<Long>(started);
+		}
+		
+		private synchronized List<Long> interrupted() {
+			return new ArrayList<Long>(interrupted);
+		}
+		
+		private synchronized List<String> threads() {
+			return new ArrayList<String>(threads);
+		}
+		
+		private void awaitStarts(int count) throws InterruptedException {
+			assertTrue(starts.tryAcquire(count, 5, TimeUnit.SECONDS), "Cron job "+getId()+" did not start");
+		}
+		
+		private void awaitFinishes(int count) throws InterruptedException {
+			assertTrue(finishes.tryAcquire(count, 5, TimeUnit.SECONDS), "Cron job "+getId()+" did not finish");
+		}
+	
+	}
+	
+	/**
+	 * A {@link CronSaturationListener} that counts how often it is notified.
+	 */
+	private static class RecordingListener implements CronSaturationListener {
+		
+		private final AtomicInteger saturations = new AtomicInteger();
+		
+		@Override
+		public void onSaturated(CronJob j, CronSaturationPolicy policy) {
+			saturations.incrementAndGet();
+		}
+	
+	}
+
+}
@@ -0,0 +1,200 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Checks that a {@link CronJournal} reads back what was recorded in it before it was closed, however often it was compacted in
+ * between, and that the executions a {@link CronJob} missed since its last recorded one are handed to its {@link CronMisfirePolicy}.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronJournalTest {
+	
+	/* 2030-01-01T10:30Z */
+	private static final long START_MILLIS = 1893493800000L;
+	
+	@TempDir
+	Path dir;
+	
+	private Path file;
+	
+	@BeforeEach
+	public void start() {
+		DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli(START_MILLIS), ZoneId.of("UTC")));
+		file = dir.resolve("horae.journal");
+	}
+	
+	@AfterEach
+	public void restoreClock() {
+		DateTimeServices.setClock(Clock.systemDefaultZone());
+	}
+	
+	@Test
+	public void replayRestoresLastRecordOfEachJob() throws IOException {
+		CronJob done = job("done");
+		CronJob running = job("running");
+		CronJob failed = job("failed");
+		CronJob forgotten = job("forgotten");
+		CronJournal journal = new CronJournal(file);
+		journal.fired(done, 1000L);
+		journal.finished(done, 1000L, false);
+		journal.fired(running, 2000L);
+		journal.fired(failed, 3000L);
+		journal.finished(failed, 3000L, true);
+		journal.fired(forgotten, 4000L);
+		journal.forget(forgotten.getId());
+		journal.close();
+		CronJournal reopened = new CronJournal(file);
+		assertRecord(reopened, done, 1000L, CronFireOutcome.SUCCEEDED);
+		assertRecord(reopened, running, 2000L, CronFireOutcome.FIRED);
+		assertRecord(reopened, failed, 3000L, CronFireOutcome.FAILED);
+		assertNull(reopened.getLastFire(forgotten.getId()));
+		reopened.close();
+	}
+	
+	@Test
+	public void outcomeOfOvertakenExecutionIsIgnored() throws IOException {
+		CronJob j = job("overtaken");
+		CronJournal journal = new CronJournal(file);
+		journal.fired(j, 1000L);
+		journal.fired(j, 2000L);
+		journal.finished(j, 1000L, true);
+		assertRecord(journal, j, 2000L, CronFireOutcome.FIRED);
+		journal.close();
+		CronJournal reopened = new CronJournal(file);
+		assertRecord(reopened, j, 2000L, CronFireOutcome.FIRED);
+		reopened.close();
+	}
+	
+	@Test
+	public void replaySurvivesCompaction() throws IOException {
+		List<CronJob> jobs = new ArrayList<CronJob>();
+		for(int i = 0; i < 50; i++) {
+			jobs.add(job("compacted-"+i));
+		}
+		CronJournal journal = new CronJournal(file);
+		//Well over the size of a fresh journal, so that it fills up and is compacted several times.
+		for(long due = 1; due <= 4000; due++) {
+			for(CronJob j : jobs) {
+				journal.fired(j, due);
+				journal.finished(j, due, due%2==0);
+			}
+		}
+		journal.close();
+		CronJournal reopened = new CronJournal(file);
+		for(CronJob j : jobs) {
+			assertRecord(reopened, j, 4000L, CronFireOutcome.FAILED);
+		}
+		reopened.close();
+	}
+	
+	@Test
+	public void fireAllMissedReplaysUpToItsLimit() throws IOException {
+		CronJob j = recorded("all", CronMisfirePolicy.FIRE_ALL_MISSED, 10);
+		j.setMaxMissedExecutions(5);
+		assertEquals(5, recover(j).size());
+		assertEquals(START_MILLIS, j.getResumeMillis());
+	}
+	
+	@Test
+	public void fireAllMissedReplaysEveryMissedExecutionUnderItsLimit() throws IOException {
+		CronJob j = recorded("under", CronMisfirePolicy.FIRE_ALL_MISSED, 10);
+		j.setMaxMissedExecutions(100);
+		//The minutes after the recorded one and before now.
+		assertEquals(9, recover(j).size());
+	}
+	
+	@Test
+	public void fireOnceNowReplaysOnce() throws IOException {
+		List<Long> fired = recover(recorded("once", CronMisfirePolicy.FIRE_ONCE_NOW, 10));
+		assertEquals(1, fired.size());
+		assertEquals(START_MILLIS, fired.get(0).longValue());
+	}
+	
+	@Test
+	public void skipReplaysNothing() throws IOException {
+		assertEquals(0, recover(recorded("skip", CronMisfirePolicy.SKIP, 10)).size());
+	}
+	
+	@Test
+	public void nothingMissedSinceLastRecord() throws IOException {
+		assertEquals(0, recover(recorded("current", CronMisfirePolicy.FIRE_ONCE_NOW, 1)).size());
+	}
+	
+	/**
+	 * Records an execution of a new minutely {@link CronJob} in a journal, as before a restart.
+	 * 
+	 * @param id The id of the {@link CronJob}.
+	 * @param policy The {@link CronMisfirePolicy} of the {@link CronJob}.
+	 * @param minutesAgo How many minutes before now the recorded execution fell due.
+	 * @return The {@link CronJob}.
+	 */
+	private CronJob recorded(String id, CronMisfirePolicy policy, int minutesAgo) throws IOException {
+		CronJob j = job(id);
+		j.setMisfirePolicy(policy);
+		CronJournal journal = new CronJournal(file);
+		journal.fired(j, START_MILLIS-minutesAgo*60000L);
+		journal.finished(j, START_MILLIS-minutesAgo*60000L, false);
+		journal.close();
+		return j;
+	}
+	
+	/**
+	 * Reopens the journal and recovers a {@link CronJob} from its recorded execution, as the {@link CronManager} does on starting.
+	 * 
+	 * @param j The {@link CronJob}, as returned by {@link #recorded(String, CronMisfirePolicy, int)}.
+	 * @return The times in epoch milliseconds at which the replayed executions are due.
+	 */
+	private List<Long> recover(CronJob j) throws IOException {
+		CronJournal reopened = new CronJournal(file);
+		CronFireRecord last = reopened.getLastFire(j.getId());
+		reopened.close();
+		RecordingPoller poller = new RecordingPoller();
+		poller.recover(j, last.getDueMillis(), START_MILLIS);
+		return poller.fired;
+	}
+	
+	private static void assertRecord(CronJournal journal, CronJob j, long dueMillis, CronFireOutcome outcome) {
+		CronFireRecord record = journal.getLastFire(j.getId());
+		assertEquals(dueMillis, record.getDueMillis(), j.getId());
+		assertEquals(outcome, record.getOutcome(), j.getId());
+	}
+	
+	private static CronJob job(String id) {
+		return new CronJob(id, CronDateTime.parse("* * * * *")) {
+			@Override public void run() {}
+		};
+	}
+	
+	/**
+	 * A {@link PollingCronScheduler} that records due {@link CronJob}s instead of executing them.
+	 */
+	private static class RecordingPoller extends PollingCronScheduler {
+		
+		private final List<Long> fired = new ArrayList<Long>();
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			fired.add(dueMillis);
+		}
+	
+	}
+
+}
@@ -0,0 +1,140 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+/**
+ * Checks the cron expressions {@link CronParser} accepts, and that it refuses those it should not.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronParserTest {
+	
+	@Test
+	public void namesAreReadInAnyCase() {
+		CronDateTime d = CronDateTime.parse("0 0 * jan-Mar mon,SUN");
+		assertTrue(d.hasMonth(1)&&d.hasMonth(2)&&d.hasMonth(3));
+		assertFalse(d.hasMonth(4));
+		assertTrue(d.hasDayOfWeek(1)&&d.hasDayOfWeek(7));
+		assertFalse(d.hasDayOfWeek(2));
+	}
+	
+	@Test
+	public void sundayIsZeroOrSeven() {
+		assertTrue(CronDateTime.parse("0 0 * * 0").hasDayOfWeek(7));
+		assertTrue(CronDateTime.parse("0 0 * * 7").hasDayOfWeek(7));
+	}
+	
+	@Test
+	public void rangesWrapAround() {
+		CronDateTime d = CronDateTime.parse("0 22-2 * NOV-FEB *");
+		for(int h : new int[] {22, 23, 0, 1, 2}) {
+			assertTrue(d.hasHour(h), "hour "+h);
+		}
+		assertFalse(d.hasHour(3));
+		assertFalse(d.hasHour(21));
+		for(int m : new int[] {11, 12, 1, 2}) {
+			assertTrue(d.hasMonth(m), "month "+m);
+		}
+		assertFalse(d.hasMonth(3));
+		assertFalse(d.hasMonth(10));
+	}
+	
+	@Test
+	public void stepsCountFromTheStartOfTheirRange() {
+		CronDateTime d = CronDateTime.parse("5-50/15 * * * *");
+		for(int m = 0; m < 60; m++) {
+			assertEquals(m==5||m==20||m==35||m==50, d.hasMinute(m), "minute "+m);
+		}
+	}
+	
+	@Test
+	public void lastDayOfMonth() {
+		assertEquals(LocalDateTime.of(2030, 2, 28, 0, 0), next("0 0 L * *", 2030, 2, 10));
+		assertEquals(LocalDateTime.of(2030, 2, 26, 0, 0), next("0 0 L-2 * *", 2030, 2, 10));
+	}
+	
+	@Test
+	public void lastWeekdayOfMonth() {
+		//2030-08-31 is a Saturday.
+		assertEquals(LocalDateTime.of(2030, 8, 30, 0, 0), next("0 0 LW * *", 2030, 8, 1));
+	}
+	
+	@Test
+	public void nearestWeekdayStaysInItsMonth() {
+		//2030-06-15 is a Saturday, so the nearest weekday is the Friday before.
+		assertEquals(LocalDateTime.of(2030, 6, 14, 0, 0), next("0 0 15W * *", 2030, 6, 1));
+		//2030-06-01 is a Saturday too, but the Friday before is in May, so it moves on to the Monday.
+		assertEquals(LocalDateTime.of(2030, 6, 3, 0, 0), next("0 0 1W * *", 2030, 5, 31));
+	}
+	
+	@Test
+	public void nthDayOfWeek() {
+		//2030-09-02 is the first Monday of the month.
+		assertEquals(LocalDateTime.of(2030, 9, 9, 0, 0), next("0 0 * * 1#2", 2030, 9, 1));
+		assertEquals(LocalDateTime.of(2030, 9, 9, 0, 0), next("0 0 * * MON#2", 2030, 9, 1));
+	}
+	
+	@Test
+	public void lastDayOfWeek() {
+		assertEquals(LocalDateTime.of(2030, 8, 30, 0, 0), next("0 0 * * 5L", 2030, 8, 1));
+	}
+	
+	@Test
+	public void sameTextIsCompiledOnce() {
+		assertSame(CronDateTime.parse("0 12 * * *").getSchedule(), CronDateTime.parse("0 12 * * *").getSchedule());
+	}
+	
+	@Test
+	public void rejectsInvalidExpressions() {
+		String[] invalid = {
+				"",
+				"* * * *",
+				"* * * * * * * *",
+				"60 * * * *",
+				"* 24 * * *",
+				"* * 0 * *",
+				"* * 32 * *",
+				"* * * 13 *",
+				"* * * * 8",
+				"* * * FOO *",
+				"* * * * MOO",
+				"*/0 * * * *",
+				"5x * * * *",
+				"1-",
+				"* * L-31 * *",
+				"* * * * 1#6",
+				"* * * * 1#0"};
+		for(final String expression : invalid) {
+			assertThrows(IllegalArgumentException.class, new Executable() {
+				@Override public void execute() {
+					CronDateTime.parse(expression);
+				}
+			}, "\""+expression+"\"");
+		}
+	}
+	
+	/**
+	 * @param expression A cron expression read in UTC.
+	 * @param year The year.
+	 * @param month The month (1-12).
+	 * @param day The day of the month.
+	 * @return The first execution after midnight at the start of the day, in UTC.
+	 */
+	private static LocalDateTime next(String expression, int year, int month, int day) {
+		ZonedDateTime after = ZonedDateTime.of(year, month, day, 0, 0, 0, 0, ZoneOffset.UTC);
+		return CronDateTime.parse(expression, ZoneOffset.UTC).nextExecutionAfter(after).get().withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime();
+	}
+
+}
@@ -0,0 +1,68 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link CronRateLimiter} spaces executions evenly, without banking slots left unused, and hands every thread a slot of
+ * its own.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronRateLimiterTest {
+	
+	@Test
+	public void firstExecutionGoesAtOnce() {
+		assertEquals(1000L, new CronRateLimiter(4).reserve(1000L));
+	}
+	
+	@Test
+	public void burstIsSpacedEvenly() {
+		CronRateLimiter limiter = new CronRateLimiter(4);
+		for(long slot = 1000L; slot <= 3000L; slot += 250L) {
+			assertEquals(slot, limiter.reserve(1000L));
+		}
+	}
+	
+	@Test
+	public void idleTimeIsNotBanked() {
+		CronRateLimiter limiter = new CronRateLimiter(4);
+		limiter.reserve(1000L);
+		//Quiet for a long while, then a burst: it is metered from now, not let through to make up for the quiet.
+		assertEquals(60000L, limiter.reserve(60000L));
+		assertEquals(60250L, limiter.reserve(60000L));
+		assertEquals(60500L, limiter.reserve(60000L));
+	}
+	
+	@Test
+	public void concurrentReservationsGetSlotsOfTheirOwn() throws InterruptedException {
+		final CronRateLimiter limiter = new CronRateLimiter(1000);
+		final int perThread = 1000;
+		final long[] slots = new long[8*perThread];
+		Thread[] threads = new Thread[8];
+		for(int t = 0; t < threads.length; t++) {
+			final int first = t*perThread;
+			threads[t] = new Thread() {
+				@Override public void run() {
+					for(int i = 0; i < perThread; i++) {
+						slots[first+i] = limiter.reserve(0L);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t : threads) {
+			t.join();
+		}
+		Arrays.sort(slots);
+		for(int i = 0; i < slots.length; i++) {
+			assertEquals(i, slots[i]);
+		}
+		assertEquals(slots.length, limiter.reserve(0L));
+	}
+
+}
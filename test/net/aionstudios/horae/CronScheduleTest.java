@@ -0,0 +1,106 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+/**
+ * Checks the next and previous executions a {@link CronSchedule} finds around clocks going forward and back.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class CronScheduleTest {
+	
+	private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+	
+	@Test
+	public void nextRunsGapTimeAfterGap() {
+		assertEquals(at(2030, 3, 10, 3, 30), next("30 2 * * *", at(2030, 3, 10, 1, 0)));
+	}
+	
+	@Test
+	public void nextRunsGapTimeAsFarAfterGapAsItWasIntoIt() {
+		//02:45 is skipped and runs at 03:45, which is still ahead of 03:30 even though 03:30 is past the gap.
+		assertEquals(at(2030, 3, 10, 3, 45), next("45 2 * * *", at(2030, 3, 10, 3, 30)));
+	}
+	
+	@Test
+	public void nextRunsRepeatedTimeOnce() {
+		assertEquals(at(2030, 11, 4, 1, 30), next("30 1 * * *", at(2030, 11, 3, 1, 40)));
+		assertEquals(at(2030, 11, 4, 1, 30), next("30 1 * * *", at(2030, 11, 3, 1, 10).withLaterOffsetAtOverlap()));
+	}
+	
+	@Test
+	public void nextPausesForRepeatedHour() {
+		assertEquals(at(2030, 11, 3, 2, 0), next("* * * * *", at(2030, 11, 3, 1, 59)));
+	}
+	
+	@Test
+	public void previousDuringRepeatedHourIsFromFirstPass() {
+		assertEquals(at(2030, 11, 3, 1, 59), previous("* * * * *", at(2030, 11, 3, 1, 30).withLaterOffsetAtOverlap()));
+	}
+	
+	@Test
+	public void previousSkipsGapTimeNotYetRun() {
+		//02:30 on 2030-03-10 is skipped and runs at 03:30, which is after 03:15, so the last run was the day before.
+		assertEquals(at(2030, 3, 9, 2, 30), previous("30 2 * * *", at(2030, 3, 10, 3, 15)));
+	}
+	
+	@Test
+	public void previousFindsGapTimeOnceRun() {
+		assertEquals(at(2030, 3, 10, 3, 30), previous("30 2 * * *", at(2030, 3, 10, 3, 45)));
+	}
+	
+	@Test
+	public void previousFindsFirstPassOfRepeatedTime() {
+		//01:10 on 2030-11-03 is read twice; the second time round, 01:30 has already run at the earlier offset.
+		assertEquals(at(2030, 11, 3, 1, 30), previous("30 1 * * *", at(2030, 11, 3, 1, 10).withLaterOffsetAtOverlap()));
+	}
+	
+	/**
+	 * @param expression A cron expression read in New York.
+	 * @param after The time to search forward from.
+	 * @return The first execution after the time, failing rather than hanging if the search does not end.
+	 */
+	private static ZonedDateTime next(final String expression, final ZonedDateTime after) {
+		return assertTimeoutPreemptively(Duration.ofSeconds(5), new ThrowingSupplier<ZonedDateTime>() {
+			@Override public ZonedDateTime get() {
+				return CronDateTime.parse(expression, NEW_YORK).nextExecutionAfter(after).get();
+			}
+		});
+	}
+	
+	/**
+	 * @param expression A cron expression read in New York.
+	 * @param before The time to search back from.
+	 * @return The last execution before the time, failing rather than hanging if the search does not end.
+	 */
+	private static ZonedDateTime previous(final String expression, final ZonedDateTime before) {
+		return assertTimeoutPreemptively(Duration.ofSeconds(5), new ThrowingSupplier<ZonedDateTime>() {
+			@Override public ZonedDateTime get() {
+				return CronDateTime.parse(expression, NEW_YORK).previousExecutionBefore(before).get();
+			}
+		});
+	}
+	
+	/**
+	 * @param year The year.
+	 * @param month The month (1-12).
+	 * @param day The day of the month.
+	 * @param hour The hour.
+	 * @param minute The minute.
+	 * @return The time in New York, at the earlier offset if the local time is repeated and shifted forward if it is skipped.
+	 */
+	private static ZonedDateTime at(int year, int month, int day, int hour, int minute) {
+		return ZonedDateTime.ofLocal(LocalDateTime.of(year, month, day, hour, minute), NEW_YORK, null);
+	}
+
+}
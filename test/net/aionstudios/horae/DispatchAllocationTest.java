@@ -0,0 +1,157 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import net.aionstudios.horae.service.CronInstant;
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Checks that handing due {@link CronJob}s to a bounded {@link CronExecutor} allocates nothing, neither on the cron thread while it
+ * ticks nor on the worker between one execution and the next. A {@link PollingCronScheduler} with 1,000 {@link CronJob}s due every
+ * minute is ticked directly, a simulated minute at a time, and allocations are read from the {@link com.sun.management.ThreadMXBean}
+ * once the JIT has warmed up.
+ *
+ * The worker is measured from the end of one {@link CronJob}'s body to the start of the next, which covers settling an execution,
+ * recording its metrics and taking up the next one. Each tick is dispatched in full before the worker starts on it, so the worker
+ * never waits for the queue within a tick, as waiting allocates inside the JDK whatever the {@link CronExecutor} does.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class DispatchAllocationTest {
+	
+	/* 2030-01-01T00:00Z */
+	private static final long START_MILLIS = 1893456000000L;
+	private static final int JOBS = 1000;
+	private static final int WARMUP_TICKS = 200;
+	private static final int MEASURED_FIRES = 10000;
+	
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final AtomicLong finished = new AtomicLong();
+	/* Whether the tick the worker is on has been dispatched in full. */
+	private volatile boolean dispatched = false;
+	/* The worker's allocation counter at the end of the last body, or -1 at the start of a tick. */
+	private volatile long lastBodyEnd = -1;
+	/* Only the worker writes these. They are counted from the start, so that the worker takes the same branches once measuring begins. */
+	private volatile long workerBytes = 0;
+	private volatile long workerGaps = 0;
+	private long readOverhead;
+	
+	@AfterEach
+	public void stop() {
+		CronManager.stopCron();
+		DateTimeServices.setClock(Clock.systemDefaultZone());
+	}
+	
+	@Test
+	public void dispatchAllocatesNothing() throws InterruptedException {
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		//Reading the allocation counter can itself allocate, so the cost of an empty reading is taken off each measurement.
+		readOverhead = allocated();
+		readOverhead = allocated()-readOverhead;
+		long minute = Math.floorDiv(START_MILLIS, 60000L);
+		DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli(START_MILLIS), ZoneId.of("UTC")));
+		CronManager.setExecutor(new CronExecutor(1, JOBS*2, CronSaturationPolicy.REJECT));
+		CronManager.startCron();
+		PollingCronScheduler scheduler = new PollingCronScheduler();
+		CronPriority[] priorities = CronPriority.values();
+		CronJob[] jobs = new CronJob[JOBS];
+		for(int i = 0; i < JOBS; i++) {
+			//A handful of schedules that all match every minute, so that the due CronJobs are spread over several groups.
+			CronJob j = new CronJob("job-"+i, CronDateTime.parse("* * * * * "+(2000+i%8)+"-2100")) {
+				@Override public void run() {
+					body();
+				}
+			};
+			j.setPriority(priorities[i%priorities.length]);
+			scheduler.jobAdded(j);
+			jobs[i] = j;
+		}
+		scheduler.reset(minute-1);
+		int measuredTicks = MEASURED_FIRES/JOBS;
+		int ticks = WARMUP_TICKS+measuredTicks;
+		//Readings are kept for every tick, so that the loop takes the same branches once measuring begins and is not deoptimized.
+		long[] cronBytes = new long[ticks];
+		long[] workerBytesBefore = new long[ticks+1];
+		long[] workerGapsBefore = new long[ticks+1];
+		long expected = 0;
+		for(int t = 0; t < ticks; t++) {
+			awaitIdle(jobs, expected);
+			workerBytesBefore[t] = workerBytes;
+			workerGapsBefore[t] = workerGaps;
+			lastBodyEnd = -1;
+			dispatched = false;
+			DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli((minute+t)*60000L), ZoneId.of("UTC")));
+			CronInstant now = DateTimeServices.getCronInstant();
+			long before = allocated();
+			scheduler.tick(now);
+			cronBytes[t] = allocated()-before-readOverhead;
+			dispatched = true;
+			expected += JOBS;
+		}
+		awaitIdle(jobs, expected);
+		workerBytesBefore[ticks] = workerBytes;
+		workerGapsBefore[ticks] = workerGaps;
+		long cronTotal = 0;
+		for(int t = WARMUP_TICKS; t < ticks; t++) {
+			cronTotal += cronBytes[t];
+		}
+		assertEquals(MEASURED_FIRES-measuredTicks, workerGapsBefore[ticks]-workerGapsBefore[WARMUP_TICKS]);
+		assertEquals(0, cronTotal, "bytes allocated by the cron thread over "+MEASURED_FIRES+" fires");
+		assertEquals(0, workerBytesBefore[ticks]-workerBytesBefore[WARMUP_TICKS], "bytes allocated by the worker over "+MEASURED_FIRES+" fires");
+	}
+	
+	/**
+	 * The body of every {@link CronJob}, which waits for its tick to be dispatched and counts what the worker allocated since the end
+	 * of the last body within the tick.
+	 */
+	private void body() {
+		long start = allocated();
+		while(!dispatched) {
+			Thread.onSpinWait();
+		}
+		long last = lastBodyEnd;
+		if(last>=0) {
+			workerBytes += start-last-readOverhead;
+			workerGaps++;
+		}
+		finished.incrementAndGet();
+		lastBodyEnd = allocated();
+	}
+	
+	/**
+	 * @return The number of bytes the current thread has allocated so far.
+	 */
+	private long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * Waits until every execution so far has run and been settled by the worker, which hands its task back to the {@link CronJob} for
+	 * the next execution only after the {@link CronJob} itself has returned.
+	 */
+	private void awaitIdle(CronJob[] jobs, long expected) throws InterruptedException {
+		while(finished.get()<expected) {
+			Thread.sleep(1);
+		}
+		for(CronJob j : jobs) {
+			while(j.isRunning()) {
+				Thread.sleep(1);
+			}
+		}
+		//The task is handed back just after the CronJob stops counting as running.
+		Thread.sleep(1);
+	}
+
+}
@@ -0,0 +1,131 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Checks how the {@link PollingCronScheduler} carries on when the clock jumps: minutes skipped by a jump forward are handed to the
+ * {@link CronMisfirePolicy}, and minutes already evaluated are never evaluated again after the clock is stepped back, however far.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class PollingCronSchedulerTest {
+	
+	/* 2030-01-01T10:30Z */
+	private static final long START_MILLIS = 1893493800000L;
+	
+	private RecordingPoller poller;
+	
+	@BeforeEach
+	public void start() {
+		setClock(START_MILLIS);
+		poller = new RecordingPoller();
+		poller.reset(Math.floorDiv(START_MILLIS, 60000L)-1);
+		CronJob j = new CronJob("job", CronDateTime.parse("* * * * *")) {
+			@Override public void run() {}
+		};
+		j.setMisfirePolicy(CronMisfirePolicy.SKIP);
+		poller.jobAdded(j);
+	}
+	
+	@AfterEach
+	public void restoreClock() {
+		DateTimeServices.setClock(Clock.systemDefaultZone());
+	}
+	
+	@Test
+	public void forwardJumpMisfiresSkippedMinutes() {
+		tickAt(0);
+		tickAt(1);
+		tickAt(10);
+		assertEquals(minutes(0, 1, 10), poller.fired);
+		assertEquals(1, poller.misfires);
+	}
+	
+	@Test
+	public void smallBackwardStepIsWaitedOut() {
+		for(int m = 0; m <= 3; m++) {
+			tickAt(m);
+		}
+		for(int m = 1; m <= 5; m++) {
+			tickAt(m);
+		}
+		assertEquals(minutes(0, 1, 2, 3, 4, 5), poller.fired);
+		assertEquals(0, poller.misfires);
+	}
+	
+	@Test
+	public void largeBackwardStepIsWaitedOut() {
+		for(int m = 0; m <= 3; m++) {
+			tickAt(m);
+		}
+		//Stepped back two hours, well past any threshold at which a step could be taken for a correction of the clock.
+		for(int m = -120; m <= 5; m++) {
+			tickAt(m);
+		}
+		assertEquals(minutes(0, 1, 2, 3, 4, 5), poller.fired);
+		assertEquals(0, poller.misfires);
+	}
+	
+	/**
+	 * Sets the clock to a minute after the start time and ticks the {@link RecordingPoller} twice within it, as the cron thread would.
+	 * 
+	 * @param minute The minute after the start time, which may be negative.
+	 */
+	private void tickAt(int minute) {
+		for(int second = 0; second < 60; second += 30) {
+			setClock(START_MILLIS+minute*60000L+second*1000L);
+			poller.tick(DateTimeServices.getCronInstant());
+		}
+	}
+	
+	/**
+	 * @param minutes Minutes after the start time.
+	 * @return The times in epoch milliseconds of those minutes.
+	 */
+	private static List<Long> minutes(int... minutes) {
+		List<Long> millis = new ArrayList<Long>();
+		for(int m : minutes) {
+			millis.add(START_MILLIS+m*60000L);
+		}
+		return millis;
+	}
+	
+	private static void setClock(long millis) {
+		DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli(millis), ZoneId.of("UTC")));
+	}
+	
+	/**
+	 * A {@link PollingCronScheduler} that records due {@link CronJob}s and misfires instead of executing them.
+	 */
+	private static class RecordingPoller extends PollingCronScheduler {
+		
+		private final List<Long> fired = new ArrayList<Long>();
+		private int misfires = 0;
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			fired.add(dueMillis);
+		}
+		
+		@Override
+		void misfire(CronJobGroup g, ZonedDateTime missed, long until) {
+			misfires++;
+		}
+	
+	}
+
+}
@@ -0,0 +1,96 @@
+package net.aionstudios.horae;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import net.aionstudios.horae.service.DateTimeServices;
+
+/**
+ * Checks that {@link CronJob}s filed in the hour and day wheels of the {@link TimingWheelCronScheduler} fire in the minute they are
+ * cascaded into, rather than being counted as misfires a minute later.
+ * 
+ * @author Winter Roberts
+ *
+ */
+public class TimingWheelCronSchedulerTest {
+	
+	/* 2030-01-01T10:30Z */
+	private static final long START_MILLIS = 1893493800000L;
+	
+	@AfterEach
+	public void restoreClock() {
+		DateTimeServices.setClock(Clock.systemDefaultZone());
+	}
+	
+	@Test
+	public void hourlyFiresEveryHour() {
+		List<Long> fired = run("0 * * * *", 3*1440);
+		assertEquals(72, fired.size());
+		for(int i = 0; i < fired.size(); i++) {
+			assertEquals(START_MILLIS+30*60000L+i*3600000L, (long) fired.get(i));
+		}
+	}
+	
+	@Test
+	public void midnightFiresEveryDay() {
+		List<Long> fired = run("0 0 * * *", 10*1440);
+		assertEquals(10, fired.size());
+		for(int i = 0; i < fired.size(); i++) {
+			assertEquals(START_MILLIS+810*60000L+i*86400000L, (long) fired.get(i));
+		}
+	}
+	
+	/**
+	 * Advances a {@link RecordingWheel} a minute at a time from the start time.
+	 * 
+	 * @param expression The cron expression of the only {@link CronJob}.
+	 * @param minutes The number of minutes to advance.
+	 * @return The times in epoch milliseconds at which the {@link CronJob} fired, after checking that it never misfired.
+	 */
+	private List<Long> run(String expression, int minutes) {
+		DateTimeServices.setClock(Clock.fixed(Instant.ofEpochMilli(START_MILLIS), ZoneId.of("UTC")));
+		RecordingWheel wheel = new RecordingWheel();
+		long minute = Math.floorDiv(START_MILLIS, 60000L);
+		wheel.reset(minute);
+		CronJob j = new CronJob("job", CronDateTime.parse(expression)) {
+			@Override public void run() {}
+		};
+		j.setMisfirePolicy(CronMisfirePolicy.SKIP);
+		wheel.schedule(j);
+		for(int i = 1; i <= minutes; i++) {
+			wheel.advanceTo(minute+i);
+		}
+		assertEquals(0, wheel.misfires);
+		return wheel.fired;
+	}
+	
+	/**
+	 * A {@link TimingWheelCronScheduler} that records due {@link CronJob}s and misfires instead of executing them.
+	 */
+	private static class RecordingWheel extends TimingWheelCronScheduler {
+		
+		private final List<Long> fired = new ArrayList<Long>();
+		private int misfires = 0;
+		
+		@Override
+		void fire(CronJob j, long dueMillis) {
+			fired.add(dueMillis);
+		}
+		
+		@Override
+		void misfire(CronJobGroup g, ZonedDateTime missed, long until) {
+			misfires++;
+		}
+	
+	}
+
+}